@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom.benchmarks;
+
+import org.apache.maven.model.*;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Generator of synthetic pom hierarchies. Generated content is deterministic
+ * for the same parameters, every level repeats some sections of its parent to
+ * produce duplicated siblings in the merged result.
+ */
+public final class PomHierarchyGenerator {
+
+  private final int depth;
+  private final int dependencies;
+  private final int plugins;
+  private final int profiles;
+
+  /**
+   * Constructor.
+   *
+   * @param depth number of models in hierarchy, must be positive
+   * @param dependencies number of dependencies and managed dependencies in
+   * every model
+   * @param plugins number of build plugins in every model
+   * @param profiles number of profiles in every model
+   */
+  public PomHierarchyGenerator(final int depth, final int dependencies, final int plugins, final int profiles) {
+    if (depth <= 0) {
+      throw new IllegalArgumentException("Depth must be positive");
+    }
+    this.depth = depth;
+    this.dependencies = dependencies;
+    this.plugins = plugins;
+    this.profiles = profiles;
+  }
+
+  /**
+   * Generate hierarchy.
+   *
+   * @return models of hierarchy, the root is the first one
+   */
+  public Model[] generate() {
+    final Model[] result = new Model[this.depth];
+    for (int level = 0; level < this.depth; level++) {
+      result[level] = makeModel(level, level == 0 ? null : result[level - 1]);
+    }
+    return result;
+  }
+
+  private Model makeModel(final int level, final Model parent) {
+    final Model result = new Model();
+    result.setModelVersion("4.0.0");
+    result.setGroupId("com.generated.level" + level);
+    result.setArtifactId("artifact-level" + level);
+    result.setVersion("1.0." + level);
+    result.setPackaging(level == this.depth - 1 ? "jar" : "pom");
+    result.setName("Level " + level);
+    result.setDescription("Generated model for level " + level);
+
+    if (parent != null) {
+      final Parent p = new Parent();
+      p.setGroupId(parent.getGroupId());
+      p.setArtifactId(parent.getArtifactId());
+      p.setVersion(parent.getVersion());
+      result.setParent(p);
+    }
+
+    final Developer developer = new Developer();
+    developer.setId("developer");
+    developer.setName("Common Developer");
+    developer.setEmail("developer@generated.com");
+    result.addDeveloper(developer);
+
+    final Repository repository = new Repository();
+    repository.setId("common-repository");
+    repository.setUrl("https://repo.generated.com/maven2");
+    result.addRepository(repository);
+
+    for (int i = 0; i < 4; i++) {
+      result.addModule("module" + level + '_' + i);
+      result.addProperty("property" + level + '_' + i, "value" + i);
+    }
+
+    final DependencyManagement management = new DependencyManagement();
+    for (int i = 0; i < this.dependencies; i++) {
+      result.addDependency(makeDependency(level, i));
+      management.addDependency(makeDependency(level + 1000, i));
+    }
+    result.setDependencyManagement(management);
+
+    final Build build = new Build();
+    for (int i = 0; i < this.plugins; i++) {
+      build.addPlugin(makePlugin(i));
+    }
+    result.setBuild(build);
+
+    for (int i = 0; i < this.profiles; i++) {
+      final Profile profile = new Profile();
+      profile.setId("profile" + i);
+      profile.addModule("profile-module" + i);
+      for (int d = 0; d < Math.max(1, this.dependencies / 10); d++) {
+        profile.addDependency(makeDependency(level, d));
+      }
+      result.addProfile(profile);
+    }
+
+    return result;
+  }
+
+  private static Dependency makeDependency(final int level, final int index) {
+    final Dependency result = new Dependency();
+    // every third dependency is the same for all levels
+    result.setGroupId(index % 3 == 0 ? "com.common" : "com.generated.level" + level);
+    result.setArtifactId("dependency" + index);
+    result.setVersion("2." + index);
+    if (index % 5 == 0) {
+      result.setScope("test");
+    }
+    if (index % 7 == 0) {
+      result.setScope("system");
+      result.setSystemPath("/lib/dependency" + index + ".jar");
+    }
+    if (index % 4 == 0) {
+      final Exclusion exclusion = new Exclusion();
+      exclusion.setGroupId("com.excluded");
+      exclusion.setArtifactId("excluded" + index);
+      result.addExclusion(exclusion);
+    }
+    return result;
+  }
+
+  private static Plugin makePlugin(final int index) {
+    final Plugin result = new Plugin();
+    result.setGroupId("com.generated.plugins");
+    result.setArtifactId("plugin" + index);
+    result.setVersion("3." + index);
+
+    final Xpp3Dom configuration = new Xpp3Dom("configuration");
+    for (int i = 0; i < 5; i++) {
+      final Xpp3Dom item = new Xpp3Dom("item" + i);
+      item.setValue("value" + i);
+      configuration.addChild(item);
+    }
+    result.setConfiguration(configuration);
+
+    final PluginExecution execution = new PluginExecution();
+    execution.setId("execution" + index);
+    execution.setPhase("package");
+    execution.addGoal("goal" + index);
+    result.addExecution(execution);
+    return result;
+  }
+}
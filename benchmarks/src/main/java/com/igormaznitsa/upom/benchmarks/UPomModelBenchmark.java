@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom.benchmarks;
+
+import com.igormaznitsa.upom.DependencyPattern;
+import com.igormaznitsa.upom.DomXmlEngine;
+import com.igormaznitsa.upom.UPomModel;
+import com.igormaznitsa.upom.XmlEngines;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for hot paths of uber-pom generation. Operations which change
+ * a model are measured together with cloning of the model, the clone
+ * benchmark gives the cost to be subtracted. Serialization doesn't change
+ * the model and works with the same merged instance.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UPomModelBenchmark {
+
+  private static final String[] REMOVE_PATHS = new String[]{
+    "parent",
+    "modules",
+    "developers/developer/email",
+    "build/plugins/plugin/configuration",
+    "profiles/profile/modules"
+  };
+
+  private static final String[] KEEP_PATHS = new String[]{
+    "description",
+    "developers",
+    "dependencies/dependency"
+  };
+
+  @Param({"3", "8"})
+  public int depth;
+
+  @Param({"20", "500"})
+  public int dependencies;
+
+  @Param({"5", "40"})
+  public int plugins;
+
+  @Param({"0", "10"})
+  public int profiles;
+
+  private Model[] hierarchy;
+  private Model merged;
+  private UPomModel mergedModel;
+  private List<DependencyPattern> patterns;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    this.hierarchy = new PomHierarchyGenerator(this.depth, this.dependencies, this.plugins, this.profiles).generate();
+    this.mergedModel = merge();
+    this.merged = this.mergedModel.getModel();
+
+    this.patterns = new ArrayList<DependencyPattern>();
+    final DependencyPattern testScope = new DependencyPattern();
+    testScope.setScope("test");
+    this.patterns.add(testScope);
+    final DependencyPattern system = new DependencyPattern();
+    system.setSystemPath("*");
+    this.patterns.add(system);
+    final DependencyPattern common = new DependencyPattern();
+    common.setGroupId("com.comm?n");
+    common.setArtifactId("dependency1*");
+    this.patterns.add(common);
+  }
+
+  private UPomModel merge() throws Exception {
+    final UPomModel result = new UPomModel(this.hierarchy[0]);
+    for (int i = 1; i < this.hierarchy.length; i++) {
+      result.merge(new UPomModel(this.hierarchy[i]));
+    }
+    return result;
+  }
+
+  @Benchmark
+  public UPomModel cloneMerged() {
+    return new UPomModel(this.merged);
+  }
+
+  @Benchmark
+  public UPomModel mergeHierarchy() throws Exception {
+    return merge();
+  }
+
+  @Benchmark
+  public UPomModel removeAndSet() throws Exception {
+    final UPomModel result = new UPomModel(this.merged);
+    for (final String path : REMOVE_PATHS) {
+      result.remove(path);
+    }
+    result.set("description", "New description");
+    result.set("properties/generated", "true");
+    result.set("developers/developer/name", "Somebody");
+    return result;
+  }
+
+  @Benchmark
+  public UPomModel saveAndRestoreState() throws Exception {
+    final UPomModel last = new UPomModel(this.hierarchy[this.hierarchy.length - 1]);
+    last.saveState(KEEP_PATHS);
+    final UPomModel result = new UPomModel(this.merged);
+    result.restoreStateFrom(last);
+    return result;
+  }
+
+  @Benchmark
+  public List<Dependency> removeDependencies() {
+    return new UPomModel(this.merged).removeDependencies(this.patterns);
+  }
+
+  @Benchmark
+  public String asXmlJanitorOff() throws Exception {
+    return this.mergedModel.asXML(null, false);
+  }
+
+  @Benchmark
+  public String asXmlJanitorOn() throws Exception {
+    return this.mergedModel.asXML(null, true);
+  }
+
+  @Benchmark
+  public String asXmlJanitorDom() throws Exception {
+    return this.mergedModel.asXML(null, true, XmlEngines.find(DomXmlEngine.NAME));
+  }
+
+  @Benchmark
+  public String asXmlJanitorModel() throws Exception {
+    final UPomModel result = new UPomModel(this.merged);
+    result.removeDuplicatedSiblings(null);
+    return result.asXML(null, false);
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Request to make uber-pom sent by the mojo to the daemon. It is written as
+ * plain data, without java serialization.
+ */
+final class DaemonRequest {
+
+  static final String MAGIC = "upom-daemon-7";
+
+  private static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+  final String token;
+  final String[] pomFiles;
+  final String uberPomFile;
+  final boolean removeSiblingDuplications;
+  final boolean debug;
+  final String[] keep;
+  final String[] remove;
+  final Properties set;
+  final List<DependencyPattern> removeDependencies;
+  final MergeEngine mergeEngine;
+  final boolean parallelDependencyFiltering;
+  final boolean parallelSiblingJanitor;
+  final String xmlEngine;
+  final boolean modelSiblingJanitor;
+
+  DaemonRequest(
+          final String token,
+          final String[] pomFiles,
+          final String uberPomFile,
+          final boolean removeSiblingDuplications,
+          final boolean debug,
+          final String[] keep,
+          final String[] remove,
+          final Properties set,
+          final List<DependencyPattern> removeDependencies,
+          final MergeEngine mergeEngine,
+          final boolean parallelDependencyFiltering,
+          final boolean parallelSiblingJanitor,
+          final String xmlEngine,
+          final boolean modelSiblingJanitor
+  ) {
+    this.token = token;
+    this.pomFiles = pomFiles;
+    this.uberPomFile = uberPomFile;
+    this.removeSiblingDuplications = removeSiblingDuplications;
+    this.debug = debug;
+    this.keep = keep;
+    this.remove = remove;
+    this.set = set;
+    this.removeDependencies = removeDependencies;
+    this.mergeEngine = mergeEngine;
+    this.parallelDependencyFiltering = parallelDependencyFiltering;
+    this.parallelSiblingJanitor = parallelSiblingJanitor;
+    this.xmlEngine = xmlEngine;
+    this.modelSiblingJanitor = modelSiblingJanitor;
+  }
+
+  static void writeString(final DataOutputStream out, final String text) throws IOException {
+    if (text == null) {
+      out.writeInt(-1);
+    } else {
+      final byte[] data = text.getBytes("UTF-8");
+      out.writeInt(data.length);
+      out.write(data);
+    }
+  }
+
+  static String readString(final DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > MAX_STRING_LENGTH) {
+      throw new IOException("Too long string : " + length);
+    }
+    final byte[] data = new byte[length];
+    in.readFully(data);
+    return new String(data, "UTF-8");
+  }
+
+  private static void writeStrings(final DataOutputStream out, final String[] array) throws IOException {
+    if (array == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(array.length);
+      for (final String s : array) {
+        writeString(out, s);
+      }
+    }
+  }
+
+  private static String[] readStrings(final DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > MAX_STRING_LENGTH) {
+      throw new IOException("Too long array : " + length);
+    }
+    final String[] result = new String[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = readString(in);
+    }
+    return result;
+  }
+
+  void write(final DataOutputStream out) throws IOException {
+    writeString(out, MAGIC);
+    writeString(out, this.token);
+    writeStrings(out, this.pomFiles);
+    writeString(out, this.uberPomFile);
+    out.writeBoolean(this.removeSiblingDuplications);
+    out.writeBoolean(this.debug);
+    writeStrings(out, this.keep);
+    writeStrings(out, this.remove);
+    if (this.set == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(this.set.size());
+      for (final String key : this.set.stringPropertyNames()) {
+        writeString(out, key);
+        writeString(out, this.set.getProperty(key));
+      }
+    }
+    out.writeInt(this.removeDependencies.size());
+    for (final DependencyPattern p : this.removeDependencies) {
+      writeStrings(out, new String[]{p.getGroupId(), p.getArtifactId(), p.getVersion(), p.getType(),
+        p.getClassifier(), p.getScope(), p.getOptional(), p.getSystemPath()});
+    }
+    writeString(out, this.mergeEngine.name());
+    out.writeBoolean(this.parallelDependencyFiltering);
+    out.writeBoolean(this.parallelSiblingJanitor);
+    writeString(out, this.xmlEngine);
+    out.writeBoolean(this.modelSiblingJanitor);
+    out.flush();
+  }
+
+  static DaemonRequest read(final DataInputStream in) throws IOException {
+    if (!MAGIC.equals(readString(in))) {
+      throw new IOException("Unsupported request format");
+    }
+    final String token = readString(in);
+    final String[] pomFiles = readStrings(in);
+    final String uberPomFile = readString(in);
+    final boolean removeSiblingDuplications = in.readBoolean();
+    final boolean debug = in.readBoolean();
+    final String[] keep = readStrings(in);
+    final String[] remove = readStrings(in);
+
+    final int setSize = in.readInt();
+    Properties set = null;
+    if (setSize >= 0) {
+      set = new Properties();
+      for (int i = 0; i < setSize; i++) {
+        final String key = readString(in);
+        final String value = readString(in);
+        if (key != null && value != null) {
+          set.setProperty(key, value);
+        }
+      }
+    }
+
+    final int patterns = in.readInt();
+    if (patterns < 0 || patterns > MAX_STRING_LENGTH) {
+      throw new IOException("Wrong number of dependency patterns : " + patterns);
+    }
+    final List<DependencyPattern> removeDependencies = new ArrayList<DependencyPattern>(patterns);
+    for (int i = 0; i < patterns; i++) {
+      final String[] fields = readStrings(in);
+      if (fields == null || fields.length != 8) {
+        throw new IOException("Wrong dependency pattern");
+      }
+      final DependencyPattern p = new DependencyPattern();
+      p.setGroupId(fields[0]);
+      p.setArtifactId(fields[1]);
+      p.setVersion(fields[2]);
+      p.setType(fields[3]);
+      p.setClassifier(fields[4]);
+      p.setScope(fields[5]);
+      p.setOptional(fields[6]);
+      p.setSystemPath(fields[7]);
+      removeDependencies.add(p);
+    }
+
+    final MergeEngine mergeEngine;
+    try {
+      mergeEngine = MergeEngine.valueOf(String.valueOf(readString(in)));
+    } catch (IllegalArgumentException ex) {
+      throw new IOException("Unsupported merge engine");
+    }
+    final boolean parallelDependencyFiltering = in.readBoolean();
+    final boolean parallelSiblingJanitor = in.readBoolean();
+    final String xmlEngine = readString(in);
+    final boolean modelSiblingJanitor = in.readBoolean();
+
+    if (pomFiles == null || pomFiles.length == 0 || uberPomFile == null) {
+      throw new IOException("Request doesn't contain files");
+    }
+
+    return new DaemonRequest(token, pomFiles, uberPomFile, removeSiblingDuplications, debug, keep, remove, set, removeDependencies, mergeEngine, parallelDependencyFiltering, parallelSiblingJanitor, xmlEngine,
+            modelSiblingJanitor);
+  }
+
+  /**
+   * Make key of processing rules, requests with the same key can share
+   * compiled rules.
+   *
+   * @return key of the rules, must not be null
+   */
+  String makeRulesKey() {
+    final Fingerprint result = new Fingerprint();
+    result.add(Integer.toString(this.removeDependencies.size()));
+    for (final DependencyPattern p : this.removeDependencies) {
+      result.add(p.getGroupId()).add(p.getArtifactId()).add(p.getVersion()).add(p.getType())
+              .add(p.getClassifier()).add(p.getScope()).add(p.getOptional()).add(p.getSystemPath());
+    }
+    return result.toHex();
+  }
+}
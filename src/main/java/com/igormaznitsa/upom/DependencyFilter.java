@@ -0,0 +1,246 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.BuildBase;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginManagement;
+import org.apache.maven.model.Profile;
+
+/**
+ * Filter of dependencies in all containers of a model: dependencies,
+ * dependency management, plugin dependencies in build and plugin
+ * management, and the same containers of every profile. The model is walked
+ * once, changed objects are replaced by shallow copies so that objects shared
+ * with other models are never changed. Big lists can be matched in parallel.
+ */
+final class DependencyFilter {
+
+  private static final int CHUNK_SIZE = 1024;
+
+  private final DependencyPatternMatcher matcher;
+  private final ExecutorService executor;
+  private final DependencyRemovalReport report = new DependencyRemovalReport();
+
+  /**
+   * Constructor.
+   *
+   * @param matcher matcher of dependencies to be removed, must not be null
+   * @param executor executor to match big lists in parallel, can be null
+   */
+  DependencyFilter(final DependencyPatternMatcher matcher, final ExecutorService executor) {
+    this.matcher = matcher;
+    this.executor = executor;
+  }
+
+  DependencyRemovalReport getReport() {
+    return this.report;
+  }
+
+  /**
+   * Filter the model, top level sections of the model are replaced if they
+   * contain removed dependencies.
+   *
+   * @param model model to be filtered, must not be null
+   */
+  void filter(final Model model) {
+    final List<Dependency> dependencies = filterList("dependencies", model.getDependencies());
+    if (dependencies != null) {
+      model.setDependencies(dependencies);
+    }
+    model.setDependencyManagement(filterManagement("dependencyManagement/", model.getDependencyManagement()));
+    model.setBuild(filterBuild("build/", model.getBuild()));
+
+    List<Profile> profiles = null;
+    for (int i = 0; i < model.getProfiles().size(); i++) {
+      final Profile profile = model.getProfiles().get(i);
+      final Profile filtered = filterProfile("profiles/profile[" + profile.getId() + "]/", profile);
+      if (filtered != profile) {
+        if (profiles == null) {
+          profiles = new ArrayList<Profile>(model.getProfiles());
+        }
+        profiles.set(i, filtered);
+      }
+    }
+    if (profiles != null) {
+      model.setProfiles(profiles);
+    }
+  }
+
+  private Profile filterProfile(final String prefix, final Profile profile) {
+    final List<Dependency> dependencies = filterList(prefix + "dependencies", profile.getDependencies());
+    final DependencyManagement management = filterManagement(prefix + "dependencyManagement/", profile.getDependencyManagement());
+    final BuildBase build = filterBuild(prefix + "build/", profile.getBuild());
+
+    if (dependencies == null && management == profile.getDependencyManagement() && build == profile.getBuild()) {
+      return profile;
+    }
+    final Profile result = ModelAccessors.shallowCopy(profile);
+    if (dependencies != null) {
+      result.setDependencies(dependencies);
+    }
+    result.setDependencyManagement(management);
+    result.setBuild(build);
+    return result;
+  }
+
+  private DependencyManagement filterManagement(final String prefix, final DependencyManagement management) {
+    if (management == null) {
+      return null;
+    }
+    final List<Dependency> dependencies = filterList(prefix + "dependencies", management.getDependencies());
+    if (dependencies == null) {
+      return management;
+    }
+    final DependencyManagement result = ModelAccessors.shallowCopy(management);
+    result.setDependencies(dependencies);
+    return result;
+  }
+
+  private <T extends BuildBase> T filterBuild(final String prefix, final T build) {
+    if (build == null) {
+      return null;
+    }
+    final List<Plugin> plugins = filterPlugins(prefix + "plugins/", build.getPlugins());
+    final PluginManagement management = build.getPluginManagement();
+    final List<Plugin> managedPlugins = management == null ? null : filterPlugins(prefix + "pluginManagement/plugins/", management.getPlugins());
+
+    if (plugins == null && managedPlugins == null) {
+      return build;
+    }
+    final T result = ModelAccessors.shallowCopy(build);
+    if (plugins != null) {
+      result.setPlugins(plugins);
+      result.flushPluginMap();
+    }
+    if (managedPlugins != null) {
+      final PluginManagement newManagement = ModelAccessors.shallowCopy(management);
+      newManagement.setPlugins(managedPlugins);
+      newManagement.flushPluginMap();
+      result.setPluginManagement(newManagement);
+    }
+    return result;
+  }
+
+  private List<Plugin> filterPlugins(final String prefix, final List<Plugin> plugins) {
+    List<Plugin> result = null;
+    for (int i = 0; i < plugins.size(); i++) {
+      final Plugin plugin = plugins.get(i);
+      final List<Dependency> dependencies = filterList(prefix + "plugin[" + plugin.getKey() + "]/dependencies", plugin.getDependencies());
+      if (dependencies != null) {
+        final Plugin copy = ModelAccessors.shallowCopy(plugin);
+        copy.setDependencies(dependencies);
+        if (result == null) {
+          result = new ArrayList<Plugin>(plugins);
+        }
+        result.set(i, copy);
+      }
+    }
+    return result;
+  }
+
+  private boolean[] match(final List<Dependency> dependencies, final int from, final int to) {
+    final boolean[] result = new boolean[to - from];
+    for (int i = from; i < to; i++) {
+      result[i - from] = this.matcher.matches(dependencies.get(i));
+    }
+    return result;
+  }
+
+  private boolean[] matchInParallel(final List<Dependency> dependencies) {
+    final List<Future<boolean[]>> chunks = new ArrayList<Future<boolean[]>>();
+    for (int i = 0; i < dependencies.size(); i += CHUNK_SIZE) {
+      final int from = i;
+      final int to = Math.min(dependencies.size(), i + CHUNK_SIZE);
+      chunks.add(this.executor.submit(new Callable<boolean[]>() {
+        @Override
+        public boolean[] call() {
+          return match(dependencies, from, to);
+        }
+      }));
+    }
+
+    final boolean[] result = new boolean[dependencies.size()];
+    int offset = 0;
+    try {
+      for (final Future<boolean[]> f : chunks) {
+        final boolean[] chunk = f.get();
+        System.arraycopy(chunk, 0, result, offset, chunk.length);
+        offset += chunk.length;
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted dependency filtering", ex);
+    } catch (ExecutionException ex) {
+      final Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Can't filter dependencies", cause);
+    } finally {
+      for (final Future<boolean[]> f : chunks) {
+        f.cancel(true);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Filter list of dependencies.
+   *
+   * @param container path of the container to be shown in the report
+   * @param dependencies list to be filtered, must not be null
+   * @return list of kept dependencies or null if nothing has been removed
+   */
+  private List<Dependency> filterList(final String container, final List<Dependency> dependencies) {
+    if (dependencies.isEmpty()) {
+      return null;
+    }
+    final boolean[] matched = this.executor != null && dependencies.size() > CHUNK_SIZE
+            ? matchInParallel(dependencies)
+            : match(dependencies, 0, dependencies.size());
+
+    List<Dependency> kept = null;
+    List<Dependency> removed = null;
+    for (int i = 0; i < matched.length; i++) {
+      if (matched[i]) {
+        if (kept == null) {
+          kept = new ArrayList<Dependency>(dependencies.subList(0, i));
+          removed = new ArrayList<Dependency>();
+        }
+        removed.add(dependencies.get(i));
+      } else if (kept != null) {
+        kept.add(dependencies.get(i));
+      }
+    }
+    if (removed != null) {
+      this.report.add(container, removed);
+    }
+    return kept;
+  }
+}
@@ -15,7 +15,6 @@
  */
 package com.igormaznitsa.upom;
 
-import java.util.regex.Pattern;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.plugins.annotations.Parameter;
 
@@ -74,14 +73,7 @@ public class DependencyPattern {
   @Parameter(name = "classifier")
   private String classifier = null;
 
-  private Pattern groupIdPattern;
-  private Pattern artifactIdPattern;
-  private Pattern versionPattern;
-  private Pattern scopePattern;
-  private Pattern optionalPattern;
-  private Pattern systemPathPattern;
-  private Pattern typePattern;
-  private Pattern classifierPattern;
+  private volatile Matchers matchers;
 
   public String getClassifier() {
     return this.classifier;
@@ -89,6 +81,7 @@ public class DependencyPattern {
 
   public void setClassifier(final String value) {
     this.classifier = value;
+    this.matchers = null;
   }
 
   public String getType() {
@@ -97,6 +90,7 @@ public class DependencyPattern {
 
   public void setType(final String value) {
     this.type = value;
+    this.matchers = null;
   }
 
   public String getGroupId() {
@@ -105,6 +99,7 @@ public class DependencyPattern {
 
   public void setGroupId(final String value) {
     this.groupId = value;
+    this.matchers = null;
   }
 
   public String getArtifactId() {
@@ -113,6 +108,7 @@ public class DependencyPattern {
 
   public void setArtifactId(final String value) {
     this.artifactId = value;
+    this.matchers = null;
   }
 
   public String getVersion() {
@@ -121,6 +117,7 @@ public class DependencyPattern {
 
   public void setVersion(final String value) {
     this.version = value;
+    this.matchers = null;
   }
 
   public String getScope() {
@@ -129,6 +126,7 @@ public class DependencyPattern {
 
   public void setScope(final String value) {
     this.scope = value;
+    this.matchers = null;
   }
 
   public String getOptional() {
@@ -137,6 +135,7 @@ public class DependencyPattern {
 
   public void setOptional(final String value) {
     this.optional = value;
+    this.matchers = null;
   }
 
   public String getSystemPath() {
@@ -145,6 +144,7 @@ public class DependencyPattern {
 
   public void setSystemPath(final String value) {
     this.systemPath = value;
+    this.matchers = null;
   }
 
   public boolean maths(final Dependency dependency) {
@@ -152,56 +152,56 @@ public class DependencyPattern {
       return false;
     }
 
-    ensurePatterns();
+    final Matchers m = ensurePatterns();
 
     int counter = 0;
     int totalCounter = 0;
 
     if (this.groupId != null) {
       totalCounter++;
-      if (dependency.getGroupId() != null && this.groupIdPattern.matcher(dependency.getGroupId()).matches()) {
+      if (dependency.getGroupId() != null && m.groupId.matches(dependency.getGroupId())) {
         counter++;
       }
     }
     if (this.artifactId != null) {
       totalCounter++;
-      if (dependency.getArtifactId() != null && this.artifactIdPattern.matcher(dependency.getArtifactId()).matches()) {
+      if (dependency.getArtifactId() != null && m.artifactId.matches(dependency.getArtifactId())) {
         counter++;
       }
     }
     if (this.version != null) {
       totalCounter++;
-      if (dependency.getVersion() != null && this.versionPattern.matcher(dependency.getVersion()).matches()) {
+      if (dependency.getVersion() != null && m.version.matches(dependency.getVersion())) {
         counter++;
       }
     }
     if (this.classifier != null) {
       totalCounter++;
-      if (dependency.getClassifier() != null && this.classifierPattern.matcher(dependency.getClassifier()).matches()) {
+      if (dependency.getClassifier() != null && m.classifier.matches(dependency.getClassifier())) {
         counter++;
       }
     }
     if (this.type != null) {
       totalCounter++;
-      if (dependency.getType() != null && this.typePattern.matcher(dependency.getType()).matches()) {
+      if (dependency.getType() != null && m.type.matches(dependency.getType())) {
         counter++;
       }
     }
     if (this.optional != null) {
       totalCounter++;
-      if (dependency.getOptional() != null && this.optionalPattern.matcher(dependency.getOptional()).matches()) {
+      if (dependency.getOptional() != null && m.optional.matches(dependency.getOptional())) {
         counter++;
       }
     }
     if (this.systemPath != null) {
       totalCounter++;
-      if (dependency.getSystemPath() != null && this.systemPathPattern.matcher(dependency.getSystemPath()).matches()) {
+      if (dependency.getSystemPath() != null && m.systemPath.matches(dependency.getSystemPath())) {
         counter++;
       }
     }
     if (this.scope != null) {
       totalCounter++;
-      if (dependency.getScope() != null && this.scopePattern.matcher(dependency.getScope()).matches()) {
+      if (dependency.getScope() != null && m.scope.matches(dependency.getScope())) {
         counter++;
       }
     }
@@ -209,55 +209,67 @@ public class DependencyPattern {
     return totalCounter > 0 && totalCounter == counter;
   }
 
-  private void ensurePatterns() {
-    if (this.artifactIdPattern == null) {
-      this.artifactIdPattern = makePattern(this.artifactId);
-    }
-    if (this.groupIdPattern == null) {
-      this.groupIdPattern = makePattern(this.groupId);
-    }
-    if (this.optionalPattern == null) {
-      this.optionalPattern = makePattern(this.optional);
-    }
-    if (this.scopePattern == null) {
-      this.scopePattern = makePattern(this.scope);
-    }
-    if (this.systemPathPattern == null) {
-      this.systemPathPattern = makePattern(this.systemPath);
-    }
-    if (this.versionPattern == null) {
-      this.versionPattern = makePattern(this.version);
-    }
-    if (this.classifierPattern == null) {
-      this.classifierPattern = makePattern(this.classifier);
-    }
-    if (this.typePattern == null) {
-      this.typePattern = makePattern(this.type);
+  private Matchers ensurePatterns() {
+    Matchers result = this.matchers;
+    if (result == null) {
+      synchronized (this) {
+        result = this.matchers;
+        if (result == null) {
+          result = new Matchers(this);
+          this.matchers = result;
+        }
+      }
     }
+    return result;
   }
 
-  private static Pattern makePattern(final String text) {
-    if (text == null) {
-      return Pattern.compile(".*");
-    }
+  private static GlobMatcher makePattern(final String text) {
+    return new GlobMatcher(text == null ? "*" : text);
+  }
 
-    final StringBuilder builder = new StringBuilder();
-
-    for (final char c : text.toCharArray()) {
-      switch (c) {
-        case '*':
-          builder.append(".*");
-          break;
-        case '?':
-          builder.append(".");
-          break;
-        default:
-          builder.append(Pattern.quote(Character.toString(c)));
-          break;
-      }
-    }
+  /**
+   * Check that all qualifiers of the pattern are undefined, such pattern
+   * doesn't match any dependency.
+   *
+   * @return true if no one qualifier is defined
+   * @since 1.0.4
+   */
+  public boolean isEmpty() {
+    return this.groupId == null
+            && this.artifactId == null
+            && this.version == null
+            && this.scope == null
+            && this.optional == null
+            && this.systemPath == null
+            && this.type == null
+            && this.classifier == null;
+  }
+
+  GlobMatcher getGroupIdMatcher() {
+    return ensurePatterns().groupId;
+  }
 
-    return Pattern.compile(builder.toString());
+  private static final class Matchers {
+
+    private final GlobMatcher groupId;
+    private final GlobMatcher artifactId;
+    private final GlobMatcher version;
+    private final GlobMatcher scope;
+    private final GlobMatcher optional;
+    private final GlobMatcher systemPath;
+    private final GlobMatcher type;
+    private final GlobMatcher classifier;
+
+    Matchers(final DependencyPattern pattern) {
+      this.groupId = makePattern(pattern.groupId);
+      this.artifactId = makePattern(pattern.artifactId);
+      this.version = makePattern(pattern.version);
+      this.scope = makePattern(pattern.scope);
+      this.optional = makePattern(pattern.optional);
+      this.systemPath = makePattern(pattern.systemPath);
+      this.type = makePattern(pattern.type);
+      this.classifier = makePattern(pattern.classifier);
+    }
   }
 
 }
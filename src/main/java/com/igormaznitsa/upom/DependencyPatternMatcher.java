@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.model.Dependency;
+
+/**
+ * Matcher for whole list of dependency patterns compiled once. Patterns are
+ * indexed in a trie by literal prefix of their group ID, so that a
+ * dependency is checked only by patterns which can match its group ID.
+ *
+ * @since 1.0.4
+ */
+public final class DependencyPatternMatcher {
+
+  private final Node root = new Node();
+  private final List<DependencyPattern> unindexed = new ArrayList<DependencyPattern>();
+  private final boolean empty;
+
+  public DependencyPatternMatcher(final List<DependencyPattern> patterns) {
+    int counter = 0;
+    for (final DependencyPattern p : patterns) {
+      if (p.isEmpty()) {
+        continue;
+      }
+      counter++;
+      // also compiles all matchers of the pattern, so that they are ready before filtering
+      final GlobMatcher groupIdMatcher = p.getGroupIdMatcher();
+      final String prefix = p.getGroupId() == null ? "" : groupIdMatcher.getLiteralPrefix();
+      if (prefix.length() == 0) {
+        this.unindexed.add(p);
+      } else {
+        Node node = this.root;
+        for (int i = 0; i < prefix.length(); i++) {
+          node = node.child(prefix.charAt(i));
+        }
+        node.patterns.add(p);
+      }
+    }
+    this.empty = counter == 0;
+  }
+
+  /**
+   * Check that there is no pattern which can match anything.
+   *
+   * @return true if the matcher never matches
+   */
+  public boolean isEmpty() {
+    return this.empty;
+  }
+
+  /**
+   * Find the first pattern which matches dependency.
+   *
+   * @param dependency dependency to be checked, can be null
+   * @return found pattern or null
+   */
+  public DependencyPattern find(final Dependency dependency) {
+    if (dependency == null || this.empty) {
+      return null;
+    }
+
+    final String groupId = dependency.getGroupId();
+    if (groupId != null) {
+      Node node = this.root;
+      for (int i = 0; i < groupId.length() && node != null; i++) {
+        node = node.children == null ? null : node.children.get(groupId.charAt(i));
+        if (node != null) {
+          for (final DependencyPattern p : node.patterns) {
+            if (p.maths(dependency)) {
+              return p;
+            }
+          }
+        }
+      }
+    }
+
+    for (final DependencyPattern p : this.unindexed) {
+      if (p.maths(dependency)) {
+        return p;
+      }
+    }
+    return null;
+  }
+
+  public boolean matches(final Dependency dependency) {
+    return find(dependency) != null;
+  }
+
+  private static final class Node {
+
+    private Map<Character, Node> children;
+    private final List<DependencyPattern> patterns = new ArrayList<DependencyPattern>(1);
+
+    Node child(final char c) {
+      if (this.children == null) {
+        this.children = new HashMap<Character, Node>();
+      }
+      Node result = this.children.get(c);
+      if (result == null) {
+        result = new Node();
+        this.children.put(c, result);
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.maven.model.Dependency;
+
+/**
+ * Report of dependencies removed from a model. Removed dependencies are
+ * grouped by their containers, a container is named by its path in the
+ * model, for instance 'dependencies', 'dependencyManagement/dependencies',
+ * 'profiles/profile[id]/dependencies' or
+ * 'build/plugins/plugin[groupId:artifactId]/dependencies'.
+ *
+ * @since 1.0.4
+ */
+public final class DependencyRemovalReport {
+
+  private final Map<String, List<Dependency>> removed = new LinkedHashMap<String, List<Dependency>>();
+
+  void add(final String container, final List<Dependency> dependencies) {
+    if (!dependencies.isEmpty()) {
+      List<Dependency> list = this.removed.get(container);
+      if (list == null) {
+        list = new ArrayList<Dependency>();
+        this.removed.put(container, list);
+      }
+      list.addAll(dependencies);
+    }
+  }
+
+  /**
+   * Get containers which dependencies have been removed.
+   *
+   * @return unmodifiable set of container paths in walk order
+   */
+  public Set<String> getContainers() {
+    return Collections.unmodifiableSet(this.removed.keySet());
+  }
+
+  /**
+   * Get dependencies removed from a container.
+   *
+   * @param container path of the container
+   * @return unmodifiable list of removed dependencies, empty if nothing has
+   * been removed from the container
+   */
+  public List<Dependency> getRemoved(final String container) {
+    final List<Dependency> result = this.removed.get(container);
+    return result == null ? Collections.<Dependency>emptyList() : Collections.unmodifiableList(result);
+  }
+
+  /**
+   * Get all removed dependencies.
+   *
+   * @return list of removed dependencies in walk order
+   */
+  public List<Dependency> getAllRemoved() {
+    final List<Dependency> result = new ArrayList<Dependency>();
+    for (final List<Dependency> list : this.removed.values()) {
+      result.addAll(list);
+    }
+    return result;
+  }
+
+  public boolean isEmpty() {
+    return this.removed.isEmpty();
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.apache.maven.plugin.logging.Log;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * XML engine which loads whole document into DOM of the JDK. Factories are
+ * looked up once, document builders and transformers are kept per thread
+ * and reset before use. The executor is not used.
+ *
+ * @since 1.0.4
+ */
+public final class DomXmlEngine implements XmlEngine {
+
+  public static final String NAME = "dom";
+
+  private static final DocumentBuilderFactory BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+  private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+
+  private static final ThreadLocal<DocumentBuilder> BUILDER = new ThreadLocal<DocumentBuilder>() {
+    @Override
+    protected DocumentBuilder initialValue() {
+      try {
+        synchronized (BUILDER_FACTORY) {
+          return BUILDER_FACTORY.newDocumentBuilder();
+        }
+      } catch (ParserConfigurationException ex) {
+        throw new IllegalStateException("Can't create document builder", ex);
+      }
+    }
+  };
+
+  private static final ThreadLocal<Transformer> TRANSFORMER = new ThreadLocal<Transformer>() {
+    @Override
+    protected Transformer initialValue() {
+      try {
+        synchronized (TRANSFORMER_FACTORY) {
+          return TRANSFORMER_FACTORY.newTransformer();
+        }
+      } catch (TransformerConfigurationException ex) {
+        throw new IllegalStateException("Can't create transformer", ex);
+      }
+    }
+  };
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public void removeDuplicatedSiblings(final Log log, final Reader in, final Writer out, final ExecutorService executor) throws Exception {
+    final DocumentBuilder builder = BUILDER.get();
+    builder.reset();
+    final Document document = builder.parse(new InputSource(in));
+
+    final List<String> path = new ArrayList<String>();
+    path.add(document.getNodeName());
+    clean(log, document, path);
+
+    final Transformer transformer = TRANSFORMER.get();
+    transformer.reset();
+    transformer.transform(new DOMSource(document), new StreamResult(out));
+  }
+
+  private static String pathToString(final List<String> path) {
+    final StringBuilder result = new StringBuilder();
+    for (final String s : path) {
+      if (result.length() > 0) {
+        result.append('/');
+      }
+      result.append(s);
+    }
+    return result.toString();
+  }
+
+  private static void clean(final Log log, final Node node, final List<String> path) {
+    // equal elements have the same name and text, so only such siblings are compared
+    final Map<String, List<Node>> siblings = new HashMap<String, List<Node>>();
+    Node child = node.getFirstChild();
+    while (child != null) {
+      final Node next = child.getNextSibling();
+      if (child.getNodeType() == Node.ELEMENT_NODE) {
+        path.add(child.getNodeName());
+        clean(log, child, path);
+
+        final String key = child.getNodeName() + '\u0000' + child.getTextContent();
+        List<Node> same = siblings.get(key);
+        if (same == null) {
+          same = new ArrayList<Node>(1);
+          siblings.put(key, same);
+        }
+        boolean duplicated = false;
+        for (final Node n : same) {
+          if (n.isEqualNode(child)) {
+            duplicated = true;
+            break;
+          }
+        }
+        if (duplicated) {
+          if (log != null) {
+            log.warn("Removing duplicated element : " + pathToString(path));
+          }
+          node.removeChild(child);
+        } else {
+          same.add(child);
+        }
+        path.remove(path.size() - 1);
+      }
+      child = next;
+    }
+  }
+}
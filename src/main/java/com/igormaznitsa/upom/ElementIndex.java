@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of collection elements for path predicates. It keeps snapshot of
+ * the collection and lazily built tables of field values, so that a
+ * predicate with literal value selects elements through hash lookup and a
+ * predicate with wildcards scans prepared values without reflection. Removed
+ * elements are only marked, the snapshot is never changed.
+ */
+final class ElementIndex {
+
+  private final Object[] elements;
+  private final Set<Object> removed = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+  private final Map<String, FieldValues> fields = new HashMap<String, FieldValues>();
+
+  ElementIndex(final Collection<?> collection) {
+    this.elements = collection.toArray();
+  }
+
+  private FieldValues getValues(final ModelPath.Predicate predicate) throws Exception {
+    FieldValues result = this.fields.get(predicate.lowerCaseField());
+    if (result == null) {
+      result = new FieldValues(this.elements, predicate);
+      this.fields.put(predicate.lowerCaseField(), result);
+    }
+    return result;
+  }
+
+  /**
+   * Select elements which match all predicates.
+   *
+   * @param predicates predicates of a step, must not be empty
+   * @return selected elements in collection order, must not be null
+   * @throws Exception if a field value can't be read
+   */
+  List<Object> select(final ModelPath.Predicate[] predicates) throws Exception {
+    // the first literal predicate makes the smallest set of candidates
+    ModelPath.Predicate indexed = predicates[0];
+    for (final ModelPath.Predicate p : predicates) {
+      if (p.value().isLiteral()) {
+        indexed = p;
+        break;
+      }
+    }
+
+    final BitSet candidates = getValues(indexed).select(indexed);
+    final List<Object> result = new ArrayList<Object>(candidates.cardinality());
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      final Object element = this.elements[i];
+      if (this.removed.contains(element)) {
+        continue;
+      }
+      boolean matches = true;
+      for (final ModelPath.Predicate p : predicates) {
+        if (p != indexed && !p.matches(element)) {
+          matches = false;
+          break;
+        }
+      }
+      if (matches) {
+        result.add(element);
+      }
+    }
+    return result;
+  }
+
+  void markRemoved(final Collection<?> removedElements) {
+    this.removed.addAll(removedElements);
+  }
+
+  /**
+   * Drop table of values of a field, it must be called if the field of any
+   * element has been changed.
+   *
+   * @param lowerCaseField lower case name of the field
+   */
+  void dropField(final String lowerCaseField) {
+    this.fields.remove(lowerCaseField);
+  }
+
+  private static final class FieldValues {
+
+    private final String[] values;
+    private final Map<String, List<Integer>> positions = new HashMap<String, List<Integer>>();
+
+    FieldValues(final Object[] elements, final ModelPath.Predicate predicate) throws Exception {
+      this.values = new String[elements.length];
+      for (int i = 0; i < elements.length; i++) {
+        final String value = predicate.read(elements[i]);
+        this.values[i] = value;
+        List<Integer> list = this.positions.get(value);
+        if (list == null) {
+          list = new ArrayList<Integer>(1);
+          this.positions.put(value, list);
+        }
+        list.add(i);
+      }
+    }
+
+    BitSet select(final ModelPath.Predicate predicate) {
+      final BitSet result = new BitSet(this.values.length);
+      if (predicate.value().isLiteral()) {
+        final List<Integer> found = this.positions.get(predicate.value().getLiteralPrefix());
+        if (found != null) {
+          for (final Integer i : found) {
+            result.set(i);
+          }
+        }
+      } else {
+        for (int i = 0; i < this.values.length; i++) {
+          if (predicate.matchesValue(this.values[i])) {
+            result.set(i);
+          }
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+
+/**
+ * Accumulates SHA-1 digest of texts and maven models to detect changes.
+ */
+final class Fingerprint {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final MessageDigest digest;
+
+  Fingerprint() {
+    try {
+      this.digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new Error("SHA-1 must be supported by JVM", ex);
+    }
+  }
+
+  Fingerprint add(final String text) {
+    if (text == null) {
+      this.digest.update((byte) 0);
+    } else {
+      try {
+        final byte[] data = text.getBytes("UTF-8");
+        this.digest.update((byte) 1);
+        this.digest.update((byte) (data.length >>> 24));
+        this.digest.update((byte) (data.length >>> 16));
+        this.digest.update((byte) (data.length >>> 8));
+        this.digest.update((byte) data.length);
+        this.digest.update(data);
+      } catch (UnsupportedEncodingException ex) {
+        throw new Error("UTF-8 must be supported by JVM", ex);
+      }
+    }
+    return this;
+  }
+
+  Fingerprint add(final String[] texts) {
+    if (texts == null) {
+      this.add((String) null);
+    } else {
+      this.add(Integer.toString(texts.length));
+      for (final String s : texts) {
+        this.add(s);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Add serialized form of a model.
+   *
+   * @param model model to be added, must not be null
+   * @return the fingerprint
+   * @throws IOException if the model can't be serialized
+   */
+  Fingerprint add(final Model model) throws IOException {
+    this.digest.update((byte) 2);
+    final Writer writer = new OutputStreamWriter(new DigestOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, this.digest), "UTF-8");
+    new MavenXpp3Writer().write(writer, model);
+    writer.flush();
+    return this;
+  }
+
+  String toHex() {
+    final byte[] data = this.digest.digest();
+    final StringBuilder result = new StringBuilder(data.length * 2);
+    for (final byte b : data) {
+      result.append(HEX[(b >>> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+    return result.toString();
+  }
+}
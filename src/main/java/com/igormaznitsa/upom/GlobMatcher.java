@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+/**
+ * Matcher of wildcard patterns where '*' means any number of any chars and
+ * '?' means any single char. Patterns without wildcards and patterns with
+ * only trailing '*' are checked without backtracking.
+ *
+ * @since 1.0.4
+ */
+final class GlobMatcher {
+
+  private static final int KIND_ANY = 0;
+  private static final int KIND_EQUALS = 1;
+  private static final int KIND_PREFIX = 2;
+  private static final int KIND_GLOB = 3;
+
+  private final String pattern;
+  private final int kind;
+  private final String literal;
+
+  GlobMatcher(final String pattern) {
+    this.pattern = pattern;
+    final int firstWildcard = findWildcard(pattern);
+    if (firstWildcard < 0) {
+      this.kind = KIND_EQUALS;
+      this.literal = pattern;
+    } else if (isAllStars(pattern, firstWildcard)) {
+      this.kind = firstWildcard == 0 ? KIND_ANY : KIND_PREFIX;
+      this.literal = pattern.substring(0, firstWildcard);
+    } else {
+      this.kind = KIND_GLOB;
+      this.literal = pattern.substring(0, firstWildcard);
+    }
+  }
+
+  private static int findWildcard(final String text) {
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      if (c == '*' || c == '?') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isAllStars(final String text, final int from) {
+    for (int i = from; i < text.length(); i++) {
+      if (text.charAt(i) != '*') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get literal prefix of the pattern, chars before the first wildcard.
+   *
+   * @return literal prefix, can be empty but not null
+   */
+  String getLiteralPrefix() {
+    return this.literal;
+  }
+
+  /**
+   * Check that the pattern doesn't contain wildcards.
+   *
+   * @return true if the pattern matches only the same text
+   */
+  boolean isLiteral() {
+    return this.kind == KIND_EQUALS;
+  }
+
+  /**
+   * Check that the pattern matches any text.
+   *
+   * @return true if the pattern contains only '*'
+   */
+  boolean isAny() {
+    return this.kind == KIND_ANY;
+  }
+
+  boolean matches(final String text) {
+    switch (this.kind) {
+      case KIND_ANY:
+        return true;
+      case KIND_EQUALS:
+        return this.literal.equals(text);
+      case KIND_PREFIX:
+        return text.startsWith(this.literal);
+      default:
+        return text.startsWith(this.literal) && matchGlob(text);
+    }
+  }
+
+  private boolean matchGlob(final String text) {
+    final String p = this.pattern;
+    int ti = this.literal.length();
+    int pi = ti;
+    int starPattern = -1;
+    int starText = -1;
+
+    while (ti < text.length()) {
+      if (pi < p.length() && (p.charAt(pi) == '?' || (p.charAt(pi) != '*' && p.charAt(pi) == text.charAt(ti)))) {
+        pi++;
+        ti++;
+      } else if (pi < p.length() && p.charAt(pi) == '*') {
+        starPattern = pi++;
+        starText = ti;
+      } else if (starPattern >= 0) {
+        pi = starPattern + 1;
+        ti = ++starText;
+      } else {
+        return false;
+      }
+    }
+
+    while (pi < p.length() && p.charAt(pi) == '*') {
+      pi++;
+    }
+    return pi == p.length();
+  }
+
+  @Override
+  public String toString() {
+    return this.pattern;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Pairs of model getters and project setters to inject model values into a
+ * project. A plan is made once for a pair of project and model classes and
+ * cached for JVM lifetime.
+ */
+final class InjectionPlan {
+
+  private static final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, InjectionPlan>> PLANS = new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, InjectionPlan>>();
+
+  private final List<Step> steps;
+
+  private InjectionPlan(final List<Step> steps) {
+    this.steps = steps;
+  }
+
+  /**
+   * Get plan for classes of a project and a model.
+   *
+   * @param projectClass class of the project, must not be null
+   * @param modelClass class of the model, must not be null
+   * @return the plan, must not be null
+   */
+  static InjectionPlan find(final Class<?> projectClass, final Class<?> modelClass) {
+    ConcurrentMap<Class<?>, InjectionPlan> plans = PLANS.get(projectClass);
+    if (plans == null) {
+      final ConcurrentMap<Class<?>, InjectionPlan> newPlans = new ConcurrentHashMap<Class<?>, InjectionPlan>();
+      plans = PLANS.putIfAbsent(projectClass, newPlans);
+      if (plans == null) {
+        plans = newPlans;
+      }
+    }
+
+    InjectionPlan result = plans.get(modelClass);
+    if (result == null) {
+      result = make(projectClass, modelClass);
+      final InjectionPlan alreadyMade = plans.putIfAbsent(modelClass, result);
+      if (alreadyMade != null) {
+        result = alreadyMade;
+      }
+    }
+    return result;
+  }
+
+  private static Map<String, Method> findGetters(final Class<?> klazz) {
+    final Map<String, Method> result = new HashMap<String, Method>();
+    for (final Method m : klazz.getMethods()) {
+      if (m.getParameterTypes().length != 0) {
+        continue;
+      }
+      final String name = m.getName();
+      final String key;
+      if (name.startsWith("get")) {
+        key = name.substring(3);
+      } else if (name.startsWith("is")) {
+        key = name.substring(2);
+      } else {
+        continue;
+      }
+      final String normalized = key.toLowerCase(Locale.ENGLISH);
+      if (!result.containsKey(normalized)) {
+        result.put(normalized, m);
+      }
+    }
+    return result;
+  }
+
+  private static InjectionPlan make(final Class<?> projectClass, final Class<?> modelClass) {
+    final Map<String, Method> modelGetters = findGetters(modelClass);
+    final Map<String, Method> projectGetters = findGetters(projectClass);
+
+    final List<Step> steps = new ArrayList<Step>();
+    for (final Method setter : projectClass.getMethods()) {
+      if (Modifier.isAbstract(setter.getModifiers()) || Modifier.isStatic(setter.getModifiers())) {
+        continue;
+      }
+
+      final String methodName = setter.getName();
+      final Class<?>[] setterParams = setter.getParameterTypes();
+      if (setterParams.length == 1 && methodName.startsWith("set")) {
+        final String paramName = methodName.substring(3).toLowerCase(Locale.ENGLISH);
+        if (paramName.equals("build")) {
+          continue;
+        }
+
+        final Method getter = modelGetters.get(paramName);
+        if (getter != null && setterParams[0].isAssignableFrom(getter.getReturnType())) {
+          steps.add(new Step(getter, setter, projectGetters.get(paramName)));
+        }
+      }
+    }
+    return new InjectionPlan(steps);
+  }
+
+  /**
+   * Inject values of the model into the project.
+   *
+   * @param log log to print injected values, must not be null
+   * @param model source model, must not be null
+   * @param project target project, must not be null
+   * @param onlyChanged inject only values which are not equal to the current
+   * project values
+   * @throws Exception if a value can't be injected
+   */
+  void inject(final Log log, final Object model, final Object project, final boolean onlyChanged) throws Exception {
+    for (final Step s : this.steps) {
+      final Object value = s.getter.invoke(model);
+      if (value == null) {
+        log.debug(s.getter.getName() + "() X-> " + s.setter.getName() + "()");
+      } else if (onlyChanged && s.projectGetter != null && value.equals(s.projectGetter.invoke(project))) {
+        log.debug(s.getter.getName() + "() == " + s.setter.getName() + "()");
+      } else {
+        log.debug(s.getter.getName() + "() --> " + s.setter.getName() + "()");
+        s.setter.invoke(project, value);
+      }
+    }
+  }
+
+  private static final class Step {
+
+    private final Method getter;
+    private final Method setter;
+    private final Method projectGetter;
+
+    Step(final Method getter, final Method setter, final Method projectGetter) {
+      this.getter = getter;
+      this.setter = setter;
+      this.projectGetter = projectGetter;
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Developer;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.ModelBase;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginContainer;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.merge.ModelMerger;
+
+/**
+ * Model merger which merges big lists through hash index of their management
+ * keys (dependency management key, plugin key, execution id, profile id,
+ * developer id) in linear time. Plugins with the same key are replaced by the
+ * dominant one as ModelMerger does, other elements with the same key are
+ * replaced only if they have the same content, so that repeated declarations
+ * are not duplicated. Other sections are merged by ModelMerger. The merger
+ * has no state and can be shared between threads.
+ *
+ * @since 1.0.4
+ */
+final class KeyedModelMerger extends ModelMerger {
+
+  private abstract static class KeyFunction<T> {
+
+    private final boolean keyIsIdentity;
+
+    KeyFunction(final boolean keyIsIdentity) {
+      this.keyIsIdentity = keyIsIdentity;
+    }
+
+    abstract Object keyOf(T element);
+
+    boolean isSame(final T first, final T second) {
+      return this.keyIsIdentity || ModelAccessors.sameContent(first, second);
+    }
+  }
+
+  private static final KeyFunction<Dependency> DEPENDENCY_KEY = new KeyFunction<Dependency>(false) {
+    @Override
+    Object keyOf(final Dependency element) {
+      return element.getManagementKey();
+    }
+  };
+
+  private static final KeyFunction<Plugin> PLUGIN_KEY = new KeyFunction<Plugin>(true) {
+    @Override
+    Object keyOf(final Plugin element) {
+      return element.getKey();
+    }
+  };
+
+  private static final KeyFunction<PluginExecution> EXECUTION_KEY = new KeyFunction<PluginExecution>(false) {
+    @Override
+    Object keyOf(final PluginExecution element) {
+      return element.getId();
+    }
+  };
+
+  private static final KeyFunction<Profile> PROFILE_KEY = new KeyFunction<Profile>(false) {
+    @Override
+    Object keyOf(final Profile element) {
+      return element.getId();
+    }
+  };
+
+  private static final KeyFunction<Developer> DEVELOPER_KEY = new KeyFunction<Developer>(false) {
+    @Override
+    Object keyOf(final Developer element) {
+      return Arrays.asList(element.getId(), element.getName(), element.getEmail());
+    }
+  };
+
+  /**
+   * Merge two lists. Elements are indexed by their keys, elements with the
+   * same key are chained through their positions, so that search of the same
+   * element checks only elements with the same key.
+   *
+   * @param <T> type of elements
+   * @param target target list, must not be null
+   * @param source source list, must not be null
+   * @param sourceDominant true if the source element replaces the same
+   * target element
+   * @param keys key function, must not be null
+   * @return merged list, must not be null
+   */
+  private static <T> List<T> mergeList(final List<T> target, final List<T> source, final boolean sourceDominant, final KeyFunction<T> keys) {
+    final int size = target.size() + source.size();
+    final List<T> result = new ArrayList<T>(size);
+    final Map<Object, Integer> lastWithKey = new HashMap<Object, Integer>(size * 4 / 3 + 1);
+    final int[] previousWithKey = new int[size];
+
+    for (int i = 0; i < size; i++) {
+      final boolean fromSource = i >= target.size();
+      final T element = fromSource ? source.get(i - target.size()) : target.get(i);
+      final Object key = keys.keyOf(element);
+      final Integer last = lastWithKey.get(key);
+
+      int same = -1;
+      for (int p = last == null ? -1 : last; p >= 0; p = previousWithKey[p]) {
+        if (keys.isSame(result.get(p), element)) {
+          same = p;
+          break;
+        }
+      }
+
+      if (same < 0) {
+        final int position = result.size();
+        result.add(element);
+        previousWithKey[position] = last == null ? -1 : last;
+        lastWithKey.put(key, position);
+      } else if (sourceDominant || !fromSource) {
+        result.set(same, element);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  protected void mergeModelBase_Dependencies(final ModelBase target, final ModelBase source, final boolean sourceDominant, final Map<Object, Object> context) {
+    if (!source.getDependencies().isEmpty()) {
+      target.setDependencies(mergeList(target.getDependencies(), source.getDependencies(), sourceDominant, DEPENDENCY_KEY));
+    }
+  }
+
+  @Override
+  protected void mergeDependencyManagement_Dependencies(final DependencyManagement target, final DependencyManagement source, final boolean sourceDominant, final Map<Object, Object> context) {
+    if (!source.getDependencies().isEmpty()) {
+      target.setDependencies(mergeList(target.getDependencies(), source.getDependencies(), sourceDominant, DEPENDENCY_KEY));
+    }
+  }
+
+  @Override
+  protected void mergePluginContainer_Plugins(final PluginContainer target, final PluginContainer source, final boolean sourceDominant, final Map<Object, Object> context) {
+    if (!source.getPlugins().isEmpty()) {
+      target.setPlugins(mergeList(target.getPlugins(), source.getPlugins(), sourceDominant, PLUGIN_KEY));
+    }
+  }
+
+  @Override
+  protected void mergePlugin_Dependencies(final Plugin target, final Plugin source, final boolean sourceDominant, final Map<Object, Object> context) {
+    if (!source.getDependencies().isEmpty()) {
+      target.setDependencies(mergeList(target.getDependencies(), source.getDependencies(), sourceDominant, DEPENDENCY_KEY));
+    }
+  }
+
+  @Override
+  protected void mergePlugin_Executions(final Plugin target, final Plugin source, final boolean sourceDominant, final Map<Object, Object> context) {
+    if (!source.getExecutions().isEmpty()) {
+      target.setExecutions(mergeList(target.getExecutions(), source.getExecutions(), sourceDominant, EXECUTION_KEY));
+    }
+  }
+
+  @Override
+  protected void mergeModel_Profiles(final Model target, final Model source, final boolean sourceDominant, final Map<Object, Object> context) {
+    if (!source.getProfiles().isEmpty()) {
+      target.setProfiles(mergeList(target.getProfiles(), source.getProfiles(), sourceDominant, PROFILE_KEY));
+    }
+  }
+
+  @Override
+  protected void mergeModel_Developers(final Model target, final Model source, final boolean sourceDominant, final Map<Object, Object> context) {
+    if (!source.getDevelopers().isEmpty()) {
+      target.setDevelopers(mergeList(target.getDevelopers(), source.getDevelopers(), sourceDominant, DEVELOPER_KEY));
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import org.apache.maven.model.merge.ModelMerger;
+
+/**
+ * Engine used to merge models of a hierarchy.
+ *
+ * @since 1.0.4
+ */
+public enum MergeEngine {
+  /**
+   * Generic ModelMerger from maven-model.
+   */
+  MODEL_MERGER(new ModelMerger()),
+  /**
+   * Merger which merges lists through hash index of management keys, it is
+   * faster for big dependency management and plugin lists. Repeated equal
+   * list elements are not duplicated.
+   */
+  KEYED(new KeyedModelMerger());
+
+  private final ModelMerger merger;
+
+  private MergeEngine(final ModelMerger merger) {
+    this.merger = merger;
+  }
+
+  ModelMerger getMerger() {
+    return this.merger;
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import org.apache.maven.model.Model;
+
+/**
+ * Cache of merged prefixes of pom hierarchies, it allows modules with the
+ * same parent chain to merge only their own pom. A prefix is identified by
+ * the chain of identities and content hashes of its models. Content hash of
+ * a model instance is calculated only once, because original models are not
+ * changed during a session.
+ * <p>
+ * The cache is used by parallel builds, every prefix is merged only once
+ * and threads requesting the same prefix wait for the merging thread.
+ * Content hashes are kept in striped weak tables to decrease contention.
+ */
+final class MergedPrefixCache {
+
+  private static final int HASH_STRIPES = 16;
+
+  private static final Map<Object, MergedPrefixCache[]> SESSIONS = new WeakHashMap<Object, MergedPrefixCache[]>();
+
+  private final ConcurrentMap<String, FutureTask<Model>> prefixes = new ConcurrentHashMap<String, FutureTask<Model>>();
+  private final List<Map<Model, String>> contentHashes = new ArrayList<Map<Model, String>>(HASH_STRIPES);
+
+  private final MergeEngine engine;
+
+  MergedPrefixCache() {
+    this(MergeEngine.MODEL_MERGER);
+  }
+
+  MergedPrefixCache(final MergeEngine engine) {
+    this.engine = engine;
+    for (int i = 0; i < HASH_STRIPES; i++) {
+      this.contentHashes.add(new WeakHashMap<Model, String>());
+    }
+  }
+
+  /**
+   * Get cache for a session, the cache lives while the session object is
+   * reachable.
+   *
+   * @param session session object, must not be null
+   * @param engine engine to merge models, must not be null
+   * @return cache for the session and the engine, must not be null
+   */
+  static MergedPrefixCache forSession(final Object session, final MergeEngine engine) {
+    synchronized (SESSIONS) {
+      MergedPrefixCache[] caches = SESSIONS.get(session);
+      if (caches == null) {
+        caches = new MergedPrefixCache[MergeEngine.values().length];
+        SESSIONS.put(session, caches);
+      }
+      MergedPrefixCache result = caches[engine.ordinal()];
+      if (result == null) {
+        result = new MergedPrefixCache(engine);
+        caches[engine.ordinal()] = result;
+      }
+      return result;
+    }
+  }
+
+  private String contentHash(final Model model) throws IOException {
+    final Map<Model, String> stripe = this.contentHashes.get((System.identityHashCode(model) & 0x7FFFFFFF) % HASH_STRIPES);
+    String result;
+    synchronized (stripe) {
+      result = stripe.get(model);
+    }
+    if (result == null) {
+      result = new Fingerprint().add(model).toHex();
+      synchronized (stripe) {
+        stripe.put(model, result);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Make keys for all prefixes of a hierarchy.
+   *
+   * @param hierarchy models from the root, must not be null
+   * @return array of keys, the key with index N is for the prefix which ends
+   * with the model N
+   * @throws IOException if a model can't be serialized
+   */
+  String[] makeKeys(final Model[] hierarchy) throws IOException {
+    final String[] result = new String[hierarchy.length];
+    String key = null;
+    for (int i = 0; i < hierarchy.length; i++) {
+      final Model model = hierarchy[i];
+      key = new Fingerprint()
+              .add(key)
+              .add(model.getGroupId())
+              .add(model.getArtifactId())
+              .add(model.getVersion())
+              .add(contentHash(model))
+              .toHex();
+      result[i] = key;
+    }
+    return result;
+  }
+
+  /**
+   * Get merged prefix of hierarchy, missing prefixes are merged and saved.
+   * The result model is shared and must not be changed.
+   *
+   * @param hierarchy models from the root, must not be null
+   * @param keys keys of prefixes made for the hierarchy, must not be null
+   * @param index index of the last model in the prefix
+   * @return the merged prefix, must not be null
+   * @throws Exception if the prefix can't be merged
+   */
+  Model getMerged(final Model[] hierarchy, final String[] keys, final int index) throws Exception {
+    return getMerged(hierarchy, keys, index, null);
+  }
+
+  /**
+   * Get merged prefix of hierarchy, missing prefixes are loaded from the
+   * persistent store or merged and saved. The result model is shared and
+   * must not be changed.
+   *
+   * @param hierarchy models from the root, must not be null
+   * @param keys keys of prefixes made for the hierarchy, must not be null
+   * @param index index of the last model in the prefix
+   * @param store persistent store of merged prefixes, can be null
+   * @return the merged prefix, must not be null
+   * @throws Exception if the prefix can't be merged
+   */
+  Model getMerged(final Model[] hierarchy, final String[] keys, final int index, final PrefixSnapshotStore store) throws Exception {
+    return getMerged(hierarchy, keys, index, store, null);
+  }
+
+  /**
+   * Get merged prefix of hierarchy, missing prefixes are loaded from the
+   * persistent store or merged and saved. Strings of new prefixes are
+   * interned if interner is provided. The result model is shared and must not
+   * be changed.
+   *
+   * @param hierarchy models from the root, must not be null
+   * @param keys keys of prefixes made for the hierarchy, must not be null
+   * @param index index of the last model in the prefix
+   * @param store persistent store of merged prefixes, can be null
+   * @param interner interner of strings for new prefixes, can be null
+   * @return the merged prefix, must not be null
+   * @throws Exception if the prefix can't be merged
+   */
+  Model getMerged(final Model[] hierarchy, final String[] keys, final int index, final PrefixSnapshotStore store, final ModelInterner interner) throws Exception {
+    FutureTask<Model> task = this.prefixes.get(keys[index]);
+    if (task == null) {
+      final FutureTask<Model> newTask = new FutureTask<Model>(new Callable<Model>() {
+        @Override
+        public Model call() throws Exception {
+          if (index == 0) {
+            return hierarchy[0];
+          }
+          final String storeKey = engine.name().toLowerCase(Locale.ENGLISH) + '-' + keys[index];
+          if (store != null) {
+            final Model loaded = store.load(storeKey);
+            if (loaded != null) {
+              return interner == null ? loaded : interner.internStrings(loaded);
+            }
+          }
+          final UPomModel merged = UPomModel.wrap(getMerged(hierarchy, keys, index - 1, store, interner)).merge(UPomModel.wrap(hierarchy[index]), engine);
+          final Model result;
+          if (interner == null) {
+            result = merged.peekModel();
+          } else {
+            // detached, so that shared sections of the hierarchy are not changed
+            result = interner.internStrings(merged.getModel());
+          }
+          if (store != null) {
+            store.save(storeKey, result);
+          }
+          return result;
+        }
+      });
+      task = this.prefixes.putIfAbsent(keys[index], newTask);
+      if (task == null) {
+        task = newTask;
+        newTask.run();
+      }
+    }
+
+    try {
+      return task.get();
+    } catch (ExecutionException ex) {
+      this.prefixes.remove(keys[index], task);
+      final Throwable cause = ex.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw ex;
+      }
+    }
+  }
+
+  /**
+   * Merge all models of a hierarchy except the last one, if the hierarchy
+   * contains only one model then it is returned. Merged prefixes are taken
+   * from the cache.
+   *
+   * @param hierarchy models from the root, must not be null
+   * @return merged parents to be changed, must not be null
+   * @throws Exception if the parents can't be merged
+   */
+  UPomModel mergeParents(final Model[] hierarchy) throws Exception {
+    final int parents = hierarchy.length - 1;
+    if (parents < 2) {
+      return UPomModel.wrap(hierarchy[0]);
+    }
+    final Model[] parentModels = Arrays.copyOf(hierarchy, parents);
+    return UPomModel.wrap(getMerged(parentModels, makeKeys(parentModels), parents - 1));
+  }
+
+  int size() {
+    return this.prefixes.size();
+  }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JVM wide cache of reflection lookups made by name for model classes. Names
+ * are case insensitive, the first found member is returned for a name as it
+ * was made by linear scan before.
+ */
+final class ModelAccessors {
+
+  private static final String MAVEN_MODEL_PACKAGE_PREFIX = "org.apache.maven.model.";
+
+  private static final Object NOT_FOUND = new Object();
+
+  // lazily calculated caches and input locations, they don't describe content
+  private static final Set<String> DERIVED_FIELDS = new HashSet<String>(Arrays.asList(
+          "Plugin.key", "Plugin.executionMap", "PluginContainer.pluginMap", "ReportPlugin.reportSetMap",
+          "Reporting.reportPluginMap"));
+  private static final String LOCATIONS_FIELD = "locations";
+
+  private static final ConcurrentMap<Class<?>, ConcurrentMap<String, Object>> METHODS = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, Object>>();
+  private static final ConcurrentMap<Class<?>, ConcurrentMap<String, Object>> FIELDS = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, Object>>();
+  private static final ConcurrentMap<Method, Object> ELEMENT_TYPES = new ConcurrentHashMap<Method, Object>();
+  private static final ConcurrentMap<Class<?>, List<Field>> INSTANCE_FIELDS = new ConcurrentHashMap<Class<?>, List<Field>>();
+
+  private ModelAccessors() {
+  }
+
+  private static ConcurrentMap<String, Object> tableFor(final ConcurrentMap<Class<?>, ConcurrentMap<String, Object>> tables, final Class<?> klazz) {
+    ConcurrentMap<String, Object> result = tables.get(klazz);
+    if (result == null) {
+      final ConcurrentMap<String, Object> newTable = new ConcurrentHashMap<String, Object>();
+      result = tables.putIfAbsent(klazz, newTable);
+      if (result == null) {
+        result = newTable;
+      }
+    }
+    return result;
+  }
+
+  private static String normalize(final String name) {
+    return name.toLowerCase(Locale.ENGLISH);
+  }
+
+  /**
+   * Find public method of class for its case insensitive name.
+   *
+   * @param klazz class to be scanned, must not be null
+   * @param methodName name of the method, must not be null
+   * @return found method or null
+   */
+  static Method findMethod(final Class<?> klazz, final String methodName) {
+    final ConcurrentMap<String, Object> table = tableFor(METHODS, klazz);
+    final String key = normalize(methodName);
+    Object result = table.get(key);
+    if (result == null) {
+      result = NOT_FOUND;
+      for (final Method m : klazz.getMethods()) {
+        if (Modifier.isPublic(m.getModifiers()) && m.getName().equalsIgnoreCase(methodName)) {
+          result = m;
+          break;
+        }
+      }
+      table.putIfAbsent(key, result);
+    }
+    return result == NOT_FOUND ? null : (Method) result;
+  }
+
+  /**
+   * Find declared field for its case insensitive name in the class or its
+   * super classes from the maven model package. Found field is accessible.
+   *
+   * @param klazz class to be scanned, must not be null
+   * @param fieldName name of the field, must not be null
+   * @return found field or null
+   */
+  static Field findDeclaredField(final Class<?> klazz, final String fieldName) {
+    final ConcurrentMap<String, Object> table = tableFor(FIELDS, klazz);
+    final String key = normalize(fieldName);
+    Object result = table.get(key);
+    if (result == null) {
+      result = NOT_FOUND;
+      Class<?> curr = klazz;
+      while (curr != null && curr.getName().startsWith(MAVEN_MODEL_PACKAGE_PREFIX)) {
+        for (final Field f : curr.getDeclaredFields()) {
+          if (f.getName().equalsIgnoreCase(fieldName)) {
+            f.setAccessible(true);
+            result = f;
+            break;
+          }
+        }
+        if (result != NOT_FOUND) {
+          break;
+        }
+        curr = curr.getSuperclass();
+      }
+      table.putIfAbsent(key, result);
+    }
+    return result == NOT_FOUND ? null : (Field) result;
+  }
+
+  /**
+   * Get lower case name of the first type argument of a method generic
+   * return type.
+   *
+   * @param getter method which result is a collection, must not be null
+   * @return lower case type name or null if the return type is not
+   * parameterized
+   */
+  static String findElementTypeName(final Method getter) {
+    Object result = ELEMENT_TYPES.get(getter);
+    if (result == null) {
+      result = NOT_FOUND;
+      final Type returnType = getter.getGenericReturnType();
+      if (returnType instanceof ParameterizedType) {
+        result = normalize(((ParameterizedType) returnType).getActualTypeArguments()[0].toString());
+      }
+      ELEMENT_TYPES.putIfAbsent(getter, result);
+    }
+    return result == NOT_FOUND ? null : (String) result;
+  }
+
+  /**
+   * Get all instance fields of the class and its super classes from the
+   * maven model package. Found fields are accessible.
+   *
+   * @param klazz class to be scanned, must not be null
+   * @return unmodifiable list of fields, must not be null
+   */
+  static List<Field> findInstanceFields(final Class<?> klazz) {
+    List<Field> result = INSTANCE_FIELDS.get(klazz);
+    if (result == null) {
+      final List<Field> found = new ArrayList<Field>();
+      Class<?> curr = klazz;
+      while (curr != null && curr.getName().startsWith(MAVEN_MODEL_PACKAGE_PREFIX)) {
+        for (final Field f : curr.getDeclaredFields()) {
+          if (!Modifier.isStatic(f.getModifiers()) && !Modifier.isFinal(f.getModifiers())) {
+            f.setAccessible(true);
+            found.add(f);
+          }
+        }
+        curr = curr.getSuperclass();
+      }
+      result = Collections.unmodifiableList(found);
+      INSTANCE_FIELDS.putIfAbsent(klazz, result);
+    }
+    return result;
+  }
+
+  /**
+   * Read value of a field found through the class.
+   *
+   * @param field accessible field, must not be null
+   * @param instance object which field should be read, must not be null
+   * @return the field value
+   */
+  static Object getValue(final Field field, final Object instance) {
+    try {
+      return field.get(instance);
+    } catch (IllegalAccessException ex) {
+      throw new IllegalStateException("Field must be accessible : " + field, ex);
+    }
+  }
+
+  /**
+   * Write value of a field found through the class.
+   *
+   * @param field accessible field, must not be null
+   * @param instance object which field should be written, must not be null
+   * @param value new value of the field
+   */
+  static void setValue(final Field field, final Object instance, final Object value) {
+    try {
+      field.set(instance, value);
+    } catch (IllegalAccessException ex) {
+      throw new IllegalStateException("Field must be accessible : " + field, ex);
+    }
+  }
+
+  /**
+   * Make shallow copy of a model object, fields of the copy refer the same
+   * values as the object.
+   *
+   * @param <T> type of the object
+   * @param object model object to be copied, must not be null
+   * @return the copy, must not be null
+   */
+  @SuppressWarnings("unchecked")
+  static <T> T shallowCopy(final T object) {
+    final T result;
+    try {
+      result = (T) object.getClass().getDeclaredConstructor().newInstance();
+    } catch (InvocationTargetException ex) {
+      final Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Can't make instance of " + object.getClass(), cause);
+    } catch (NoSuchMethodException ex) {
+      throw new IllegalStateException("Can't make instance of " + object.getClass(), ex);
+    } catch (InstantiationException ex) {
+      throw new IllegalStateException("Can't make instance of " + object.getClass(), ex);
+    } catch (IllegalAccessException ex) {
+      throw new IllegalStateException("Can't make instance of " + object.getClass(), ex);
+    }
+    for (final Field f : findInstanceFields(object.getClass())) {
+      setValue(f, result, getValue(f, object));
+    }
+    return result;
+  }
+
+  /**
+   * Check that class is from the maven model package.
+   *
+   * @param klazz class to be checked, must not be null
+   * @return true if the class is a model class
+   */
+  static boolean isModelClass(final Class<?> klazz) {
+    return klazz.getName().startsWith(MAVEN_MODEL_PACKAGE_PREFIX);
+  }
+
+  private static boolean isDerived(final Field field) {
+    return LOCATIONS_FIELD.equals(field.getName())
+            || DERIVED_FIELDS.contains(field.getDeclaringClass().getSimpleName() + '.' + field.getName());
+  }
+
+  /**
+   * Compare content of two model objects, model classes are compared field by
+   * field, collections element by element, other objects through equals.
+   * Lazily calculated caches of model classes are ignored.
+   *
+   * @param first the first object, can be null
+   * @param second the second object, can be null
+   * @return true if both objects describe the same content
+   */
+  static boolean sameContent(final Object first, final Object second) {
+    if (first == second) {
+      return true;
+    }
+    if (first == null || second == null || first.getClass() != second.getClass()) {
+      return false;
+    }
+    if (first instanceof List) {
+      final List<?> a = (List<?>) first;
+      final List<?> b = (List<?>) second;
+      if (a.size() != b.size()) {
+        return false;
+      }
+      final Iterator<?> ib = b.iterator();
+      for (final Object e : a) {
+        if (!sameContent(e, ib.next())) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (first instanceof Map) {
+      final Map<?, ?> a = (Map<?, ?>) first;
+      final Map<?, ?> b = (Map<?, ?>) second;
+      if (a.size() != b.size()) {
+        return false;
+      }
+      for (final Map.Entry<?, ?> e : a.entrySet()) {
+        if (!b.containsKey(e.getKey()) || !sameContent(e.getValue(), b.get(e.getKey()))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (first instanceof Collection || !isModelClass(first.getClass())) {
+      return first.equals(second);
+    }
+    for (final Field f : findInstanceFields(first.getClass())) {
+      if (!isDerived(f) && !sameContent(getValue(f, first), getValue(f, second))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Calculate hash code of model object content, objects with the same
+   * content have the same hash code.
+   *
+   * @param value object to be hashed, can be null
+   * @return hash code of the content
+   * @see #sameContent(Object, Object)
+   */
+  static int contentHash(final Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof List) {
+      int result = 1;
+      for (final Object e : (List<?>) value) {
+        result = 31 * result + contentHash(e);
+      }
+      return result;
+    }
+    if (value instanceof Map) {
+      int result = 0;
+      for (final Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+        result += (e.getKey() == null ? 0 : e.getKey().hashCode()) ^ contentHash(e.getValue());
+      }
+      return result;
+    }
+    if (value instanceof Collection || !isModelClass(value.getClass())) {
+      return value.hashCode();
+    }
+    int result = value.getClass().getName().hashCode();
+    for (final Field f : findInstanceFields(value.getClass())) {
+      if (!isDerived(f)) {
+        result = 31 * result + contentHash(getValue(f, value));
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Developer;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.License;
+import org.apache.maven.model.Model;
+
+/**
+ * Weak table of canonical strings and leaf model objects, it allows models
+ * of many modules to share equal values instead of keeping their own copies.
+ * Leaf objects are dependencies, exclusions, licenses and developers, they
+ * are compared by content. Canonical objects are shared between models and
+ * must not be changed. The table keeps objects only while they are used by
+ * some model. Interned models are remembered and deep copied by
+ * {@link UPomModel#wrap(Model)}, because the model merger identifies equal
+ * leaf objects as the same one. Models which are merged again can be
+ * interned only by their strings.
+ * <p>
+ * The table can be used by parallel builds, it is split into striped
+ * tables to decrease contention.
+ *
+ * @since 1.0.4
+ */
+public final class ModelInterner {
+
+  private static final int STRIPES = 16;
+  private static final int INITIAL_CAPACITY = 64;
+
+  private static final Set<Class<?>> LEAF_CLASSES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+          Dependency.class, Exclusion.class, License.class, Developer.class));
+
+  private static final Map<Object, ModelInterner> SESSIONS = new WeakHashMap<Object, ModelInterner>();
+  private static final Map<Model, Boolean> INTERNED = new WeakHashMap<Model, Boolean>();
+
+  private final List<Stripe> stripes = new ArrayList<Stripe>(STRIPES);
+
+  public ModelInterner() {
+    for (int i = 0; i < STRIPES; i++) {
+      this.stripes.add(new Stripe());
+    }
+  }
+
+  /**
+   * Get interner for a session, the interner lives while the session object
+   * is reachable.
+   *
+   * @param session session object, must not be null
+   * @return interner for the session, must not be null
+   */
+  public static ModelInterner forSession(final Object session) {
+    synchronized (SESSIONS) {
+      ModelInterner result = SESSIONS.get(session);
+      if (result == null) {
+        result = new ModelInterner();
+        SESSIONS.put(session, result);
+      }
+      return result;
+    }
+  }
+
+  private Stripe stripeFor(final int hash) {
+    return this.stripes.get((hash & 0x7FFFFFFF) % STRIPES);
+  }
+
+  /**
+   * Get canonical instance of a string.
+   *
+   * @param value string to be interned, can be null
+   * @return canonical equal string or null
+   */
+  public String intern(final String value) {
+    if (value == null) {
+      return null;
+    }
+    final int hash = value.hashCode();
+    final Stripe stripe = stripeFor(hash);
+    final Object found = stripe.find(value, hash);
+    return found == null ? (String) stripe.add(value, hash) : (String) found;
+  }
+
+  /**
+   * Check that model contains canonical leaf objects.
+   *
+   * @param model model to be checked, must not be null
+   * @return true if the model has been interned with leaf objects
+   */
+  public static boolean isInterned(final Model model) {
+    synchronized (INTERNED) {
+      return INTERNED.containsKey(model);
+    }
+  }
+
+  private Object internLeaf(final Object value) {
+    final int hash = ModelAccessors.contentHash(value);
+    final Stripe stripe = stripeFor(hash);
+    final Object found = stripe.find(value, hash);
+    if (found != null) {
+      return found;
+    }
+    // the value can be shared with another model, so that its copy is interned
+    final Method clone = ModelAccessors.findMethod(value.getClass(), "clone");
+    final Object copy;
+    try {
+      copy = clone == null ? ModelAccessors.shallowCopy(value) : clone.invoke(value);
+    } catch (Exception ex) {
+      throw new IllegalStateException("Can't copy " + value.getClass(), ex);
+    }
+    internFields(copy, true);
+    return stripe.add(copy, hash);
+  }
+
+  private Object internValue(final Object value, final boolean leaves) {
+    if (value instanceof String) {
+      return intern((String) value);
+    }
+    if (value != null && ModelAccessors.isModelClass(value.getClass())) {
+      if (leaves && LEAF_CLASSES.contains(value.getClass())) {
+        return internLeaf(value);
+      }
+      internFields(value, leaves);
+    }
+    return value;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void internFields(final Object instance, final boolean leaves) {
+    for (final Field f : ModelAccessors.findInstanceFields(instance.getClass())) {
+      final Object value = ModelAccessors.getValue(f, instance);
+      if (value instanceof List) {
+        final ListIterator<Object> iterator = ((List<Object>) value).listIterator();
+        while (iterator.hasNext()) {
+          final Object e = iterator.next();
+          final Object interned = internValue(e, leaves);
+          if (interned != e) {
+            iterator.set(interned);
+          }
+        }
+      } else if (value instanceof Map) {
+        for (final Map.Entry<Object, Object> e : ((Map<Object, Object>) value).entrySet()) {
+          if (e.getValue() instanceof String) {
+            e.setValue(intern((String) e.getValue()));
+          }
+        }
+      } else {
+        final Object interned = internValue(value, leaves);
+        if (interned != value) {
+          ModelAccessors.setValue(f, instance, interned);
+        }
+      }
+    }
+  }
+
+  /**
+   * Replace strings and leaf objects of a model by their canonical
+   * instances. The model is changed, so that it must not be shared with
+   * other models, but leaf objects found in it are not changed.
+   *
+   * @param model model to be interned, must not be null
+   * @return the model
+   */
+  public Model intern(final Model model) {
+    internFields(model, true);
+    synchronized (INTERNED) {
+      INTERNED.put(model, Boolean.TRUE);
+    }
+    return model;
+  }
+
+  /**
+   * Replace only strings of a model by their canonical instances, leaf
+   * objects are not shared, so that the model can be merged. The model is
+   * changed, so that it must not be shared with other models.
+   *
+   * @param model model to be interned, must not be null
+   * @return the model
+   */
+  public Model internStrings(final Model model) {
+    internFields(model, false);
+    return model;
+  }
+
+  /**
+   * Get number of alive canonical objects.
+   *
+   * @return number of objects in the table
+   */
+  public int size() {
+    int result = 0;
+    for (final Stripe s : this.stripes) {
+      result += s.size();
+    }
+    return result;
+  }
+
+  private static final class Entry extends WeakReference<Object> {
+
+    private final int hash;
+    private Entry next;
+
+    Entry(final Object value, final int hash, final Entry next, final ReferenceQueue<Object> queue) {
+      super(value, queue);
+      this.hash = hash;
+      this.next = next;
+    }
+  }
+
+  private static final class Stripe {
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private Entry[] table = new Entry[INITIAL_CAPACITY];
+    private int size;
+
+    private int indexFor(final int hash) {
+      return (hash & 0x7FFFFFFF) % this.table.length;
+    }
+
+    private void expunge() {
+      Reference<?> ref;
+      while ((ref = this.queue.poll()) != null) {
+        final Entry removed = (Entry) ref;
+        final int index = indexFor(removed.hash);
+        Entry prev = null;
+        for (Entry e = this.table[index]; e != null; e = e.next) {
+          if (e == removed) {
+            if (prev == null) {
+              this.table[index] = e.next;
+            } else {
+              prev.next = e.next;
+            }
+            this.size--;
+            break;
+          }
+          prev = e;
+        }
+      }
+    }
+
+    private Object lookup(final Object value, final int hash) {
+      for (Entry e = this.table[indexFor(hash)]; e != null; e = e.next) {
+        if (e.hash == hash) {
+          final Object found = e.get();
+          if (found != null && ModelAccessors.sameContent(found, value)) {
+            return found;
+          }
+        }
+      }
+      return null;
+    }
+
+    synchronized Object find(final Object value, final int hash) {
+      expunge();
+      return lookup(value, hash);
+    }
+
+    synchronized Object add(final Object value, final int hash) {
+      expunge();
+      final Object found = lookup(value, hash);
+      if (found != null) {
+        return found;
+      }
+      if (this.size >= this.table.length * 3 / 4) {
+        final Entry[] old = this.table;
+        this.table = new Entry[old.length * 2];
+        for (Entry e : old) {
+          while (e != null) {
+            final Entry next = e.next;
+            final int index = indexFor(e.hash);
+            e.next = this.table[index];
+            this.table[index] = e;
+            e = next;
+          }
+        }
+      }
+      final int index = indexFor(hash);
+      this.table[index] = new Entry(value, hash, this.table[index], this.queue);
+      this.size++;
+      return value;
+    }
+
+    synchronized int size() {
+      expunge();
+      return this.size;
+    }
+  }
+}
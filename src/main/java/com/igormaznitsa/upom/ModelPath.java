@@ -0,0 +1,308 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compiled form of a model path like "build/plugins". Every step keeps
+ * prepared accessor names and the last resolved accessor, so that repeated
+ * walks through the same model classes don't need any lookup.
+ * <p>
+ * A step which selects collection elements can contain predicates like
+ * "plugin[artifactId=maven-shade-*]" where the value is a wildcard pattern
+ * and the field '.' means the element itself, a step '*' selects any
+ * collection element or any map entry.
+ */
+final class ModelPath {
+
+  private static final int MAX_CACHED_PATHS = 4096;
+  private static final ConcurrentMap<String, ModelPath> COMPILED = new ConcurrentHashMap<String, ModelPath>();
+
+  private final String path;
+  private final Step[] steps;
+
+  private ModelPath(final String path) {
+    this.path = path;
+    final String[] names = split(path.trim());
+    this.steps = new Step[names.length];
+    final StringBuilder prefix = new StringBuilder();
+    for (int i = 0; i < names.length; i++) {
+      if (prefix.length() > 0) {
+        prefix.append('/');
+      }
+      prefix.append(names[i]);
+      this.steps[i] = new Step(names[i], prefix.toString());
+    }
+  }
+
+  private static String[] split(final String path) {
+    final List<String> result = new ArrayList<String>();
+    int depth = 0;
+    int start = 0;
+    for (int i = 0; i < path.length(); i++) {
+      final char c = path.charAt(i);
+      if (c == '[') {
+        depth++;
+      } else if (c == ']' && depth > 0) {
+        depth--;
+      } else if (c == '/' && depth == 0) {
+        result.add(path.substring(start, i));
+        start = i + 1;
+      }
+    }
+    result.add(path.substring(start));
+    return result.toArray(new String[result.size()]);
+  }
+
+  static ModelPath compile(final String path) {
+    ModelPath result = COMPILED.get(path);
+    if (result == null) {
+      result = new ModelPath(path);
+      if (COMPILED.size() < MAX_CACHED_PATHS) {
+        final ModelPath prev = COMPILED.putIfAbsent(path, result);
+        if (prev != null) {
+          result = prev;
+        }
+      }
+    }
+    return result;
+  }
+
+  int length() {
+    return this.steps.length;
+  }
+
+  Step step(final int index) {
+    return this.steps[index];
+  }
+
+  @Override
+  public String toString() {
+    return this.path;
+  }
+
+  static final class Step {
+
+    private static final Predicate[] NO_PREDICATES = new Predicate[0];
+
+    private final String name;
+    private final String baseName;
+    private final String lowerCaseName;
+    private final String pathPrefix;
+    private final String getterName;
+    private final String setterName;
+    private final boolean wildcard;
+    private final Predicate[] predicates;
+    private final String error;
+
+    private volatile Resolved lastGetter;
+    private volatile Resolved lastSetter;
+
+    private Step(final String name, final String pathPrefix) {
+      this.name = name;
+      this.pathPrefix = pathPrefix;
+
+      final int bracket = name.indexOf('[');
+      final List<Predicate> found = new ArrayList<Predicate>();
+      String foundError = null;
+      if (bracket < 0) {
+        this.baseName = name;
+      } else {
+        this.baseName = name.substring(0, bracket);
+        int pos = bracket;
+        while (pos < name.length() && foundError == null) {
+          final int end = name.indexOf(']', pos);
+          final int eq = name.indexOf('=', pos);
+          if (name.charAt(pos) != '[' || end < 0 || eq < 0 || eq > end || eq == pos + 1) {
+            foundError = "Wrong predicate in '" + pathPrefix + '\'';
+          } else {
+            found.add(new Predicate(name.substring(pos + 1, eq).trim(), name.substring(eq + 1, end)));
+            pos = end + 1;
+          }
+        }
+      }
+      this.predicates = found.isEmpty() ? NO_PREDICATES : found.toArray(new Predicate[found.size()]);
+      this.error = foundError;
+      this.wildcard = "*".equals(this.baseName);
+
+      this.lowerCaseName = this.baseName.toLowerCase(Locale.ENGLISH);
+      this.getterName = "get" + this.baseName;
+      this.setterName = "set" + this.baseName;
+    }
+
+    /**
+     * Full text of the step including predicates.
+     *
+     * @return text of the step, must not be null
+     */
+    String name() {
+      return this.name;
+    }
+
+    /**
+     * Name of the step without predicates.
+     *
+     * @return name of field or element type, must not be null
+     */
+    String baseName() {
+      return this.baseName;
+    }
+
+    String lowerCaseName() {
+      return this.lowerCaseName;
+    }
+
+    boolean isWildcard() {
+      return this.wildcard;
+    }
+
+    /**
+     * Check that the step selects only some collection elements or map
+     * entries.
+     *
+     * @return true if the step is wildcard or it has predicates
+     */
+    boolean isSelective() {
+      return this.wildcard || this.predicates.length > 0 || this.error != null;
+    }
+
+    Predicate[] predicates() {
+      return this.predicates;
+    }
+
+    /**
+     * Error of predicate parsing.
+     *
+     * @return error text or null if the step is correct
+     */
+    String error() {
+      return this.error;
+    }
+
+    /**
+     * Check that two steps can select the same value.
+     *
+     * @param other other step, must not be null
+     * @return true if the steps can overlap
+     */
+    boolean overlaps(final Step other) {
+      return this.wildcard || other.wildcard || this.lowerCaseName.equals(other.lowerCaseName);
+    }
+
+    /**
+     * Path from the root till the step (inclusive), used in messages.
+     *
+     * @return path prefix, must not be null
+     */
+    String pathPrefix() {
+      return this.pathPrefix;
+    }
+
+    Method getter(final Class<?> klazz) {
+      final Resolved resolved = this.lastGetter;
+      if (resolved != null && resolved.klazz == klazz) {
+        return resolved.method;
+      }
+      final Method result = ModelAccessors.findMethod(klazz, this.getterName);
+      this.lastGetter = new Resolved(klazz, result);
+      return result;
+    }
+
+    Method setter(final Class<?> klazz) {
+      final Resolved resolved = this.lastSetter;
+      if (resolved != null && resolved.klazz == klazz) {
+        return resolved.method;
+      }
+      final Method result = ModelAccessors.findMethod(klazz, this.setterName);
+      this.lastSetter = new Resolved(klazz, result);
+      return result;
+    }
+  }
+
+  /**
+   * Condition for a field of collection element.
+   */
+  static final class Predicate {
+
+    private static final String SELF = ".";
+
+    private final String field;
+    private final String lowerCaseField;
+    private final String getterName;
+    private final GlobMatcher value;
+
+    private Predicate(final String field, final String value) {
+      this.field = field;
+      this.lowerCaseField = field.toLowerCase(Locale.ENGLISH);
+      this.getterName = "get" + field;
+      this.value = new GlobMatcher(value);
+    }
+
+    String lowerCaseField() {
+      return this.lowerCaseField;
+    }
+
+    GlobMatcher value() {
+      return this.value;
+    }
+
+    /**
+     * Read text value of the predicate field from an element.
+     *
+     * @param element collection element, must not be null
+     * @return text value of the field, can be null
+     * @throws Exception if the value can't be read
+     */
+    String read(final Object element) throws Exception {
+      final Object result;
+      if (SELF.equals(this.field)) {
+        result = element;
+      } else {
+        final Method getter = ModelAccessors.findMethod(element.getClass(), this.getterName);
+        if (getter == null || getter.getParameterTypes().length != 0) {
+          throw new UPomException("Can't find field '" + this.field + "' in " + element.getClass().getSimpleName());
+        }
+        result = getter.invoke(element);
+      }
+      return result == null ? null : result.toString();
+    }
+
+    boolean matchesValue(final String text) {
+      return text == null ? this.value.isAny() : this.value.matches(text);
+    }
+
+    boolean matches(final Object element) throws Exception {
+      return matchesValue(read(element));
+    }
+  }
+
+  private static final class Resolved {
+
+    private final Class<?> klazz;
+    private final Method method;
+
+    private Resolved(final Class<?> klazz, final Method method) {
+      this.klazz = klazz;
+      this.method = method;
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginContainer;
+import org.apache.maven.model.ReportPlugin;
+import org.apache.maven.model.Reporting;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Removes duplicated sibling elements directly from model objects, so that
+ * the model is written without XML re-parsing. Lists of the model and
+ * children of configuration DOMs are cleaned after their elements, an
+ * element is removed if one of its previous siblings has the same content.
+ * Siblings are grouped by content hash, so that every list is cleaned in
+ * one pass.
+ */
+final class ModelSiblingJanitor {
+
+  private final Log log;
+  private final List<String> path = new ArrayList<String>();
+  private int removed;
+
+  private ModelSiblingJanitor(final Log log) {
+    this.log = log;
+  }
+
+  /**
+   * Remove duplicated sibling elements from a model.
+   *
+   * @param log log to print removed elements, can be null
+   * @param model model to be cleaned, will be changed, must not be null
+   * @return number of removed elements
+   */
+  static int process(final Log log, final Model model) {
+    final ModelSiblingJanitor janitor = new ModelSiblingJanitor(log);
+    janitor.path.add("project");
+    janitor.cleanObject(model);
+    return janitor.removed;
+  }
+
+  private static String makeItemName(final String listName) {
+    if (listName.endsWith("ies")) {
+      return listName.substring(0, listName.length() - 3) + 'y';
+    }
+    return listName.endsWith("s") ? listName.substring(0, listName.length() - 1) : listName;
+  }
+
+  private void report(final String name) {
+    this.removed++;
+    if (this.log != null) {
+      final StringBuilder buffer = new StringBuilder();
+      for (final String s : this.path) {
+        buffer.append(s).append('/');
+      }
+      this.log.warn("Removing duplicated element : " + buffer.append(name));
+    }
+  }
+
+  private static boolean isDuplicated(final Map<Integer, List<Object>> siblings, final Object value) {
+    final Integer hash = ModelAccessors.contentHash(value);
+    List<Object> same = siblings.get(hash);
+    if (same == null) {
+      same = new ArrayList<Object>(1);
+      siblings.put(hash, same);
+    } else {
+      for (final Object s : same) {
+        if (ModelAccessors.sameContent(s, value)) {
+          return true;
+        }
+      }
+    }
+    same.add(value);
+    return false;
+  }
+
+  private void cleanValue(final Object value, final String name) {
+    if (value instanceof Xpp3Dom) {
+      cleanDom((Xpp3Dom) value);
+    } else if (value != null && ModelAccessors.isModelClass(value.getClass())) {
+      this.path.add(name);
+      cleanObject(value);
+      this.path.remove(this.path.size() - 1);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void cleanList(final List<Object> list, final String name) {
+    this.path.add(name);
+    final String itemName = makeItemName(name);
+    for (final Object e : list) {
+      cleanValue(e, itemName);
+    }
+
+    final Map<Integer, List<Object>> siblings = new HashMap<Integer, List<Object>>();
+    final List<Object> kept = new ArrayList<Object>(list.size());
+    for (final Object e : list) {
+      if (isDuplicated(siblings, e)) {
+        report(itemName);
+      } else {
+        kept.add(e);
+      }
+    }
+    if (kept.size() != list.size()) {
+      list.clear();
+      list.addAll(kept);
+    }
+    this.path.remove(this.path.size() - 1);
+  }
+
+  private void cleanDom(final Xpp3Dom dom) {
+    this.path.add(dom.getName());
+    for (final Xpp3Dom child : dom.getChildren()) {
+      cleanDom(child);
+    }
+
+    final Map<Integer, List<Object>> siblings = new HashMap<Integer, List<Object>>();
+    int index = 0;
+    while (index < dom.getChildCount()) {
+      final Xpp3Dom child = dom.getChild(index);
+      if (isDuplicated(siblings, child)) {
+        dom.removeChild(index);
+        report(child.getName());
+      } else {
+        index++;
+      }
+    }
+    this.path.remove(this.path.size() - 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void cleanObject(final Object instance) {
+    final int removedBefore = this.removed;
+    for (final Field f : ModelAccessors.findInstanceFields(instance.getClass())) {
+      final Object value = ModelAccessors.getValue(f, instance);
+      if (value instanceof List) {
+        cleanList((List<Object>) value, f.getName());
+      } else {
+        cleanValue(value, f.getName());
+      }
+    }
+    if (this.removed != removedBefore) {
+      // lazily made maps of elements can refer removed ones
+      if (instance instanceof PluginContainer) {
+        ((PluginContainer) instance).flushPluginMap();
+      }
+      if (instance instanceof Plugin) {
+        ((Plugin) instance).flushExecutionMap();
+      }
+      if (instance instanceof Reporting) {
+        ((Reporting) instance).flushReportPluginMap();
+      }
+      if (instance instanceof ReportPlugin) {
+        ((ReportPlugin) instance).flushReportSetMap();
+      }
+    }
+  }
+}
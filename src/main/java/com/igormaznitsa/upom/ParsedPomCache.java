@@ -0,0 +1,340 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+
+/**
+ * Cache of parsed pom files. Parsed models are kept in memory for the last
+ * used files, a file is parsed again if its size or modification time is
+ * changed. If a folder is provided then parsed models are also saved there
+ * between builds: an index file mapped into memory binds path, size and
+ * modification time of a pom file to the content hash of the file, and
+ * models are saved in compressed binary form named by the content hash, so
+ * that the same pom in different places is parsed only once. The index is
+ * locked only during reading and writing of a slot, so that it can be shared
+ * by concurrent builds on the same machine.
+ *
+ * @since 1.0.4
+ */
+public final class ParsedPomCache {
+
+  private static final Map<File, MappedIndex> INDEXES = new HashMap<File, MappedIndex>();
+
+  private static final String INDEX_FILE = "index.map";
+  private static final String MODELS_FOLDER = "models";
+  private static final String MODEL_PREFIX = "pom-";
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final Map<String, ParsedPom> models;
+  private final MappedIndex index;
+  private final PrefixSnapshotStore store;
+
+  /**
+   * Make cache which keeps parsed models only in memory.
+   *
+   * @param maxModels max number of models kept in memory
+   */
+  public ParsedPomCache(final int maxModels) {
+    this.models = makeLruMap(maxModels);
+    this.index = null;
+    this.store = null;
+  }
+
+  /**
+   * Make cache which keeps parsed models in memory and in a folder.
+   *
+   * @param folder folder to save parsed models, must not be null
+   * @param maxModels max number of models kept in memory
+   * @param maxFolderSize max size of saved models in bytes, the least
+   * recently used models are removed
+   * @throws IOException if the index can't be opened
+   */
+  public ParsedPomCache(final File folder, final int maxModels, final long maxFolderSize) throws IOException {
+    this.models = makeLruMap(maxModels);
+    this.index = MappedIndex.forFolder(folder);
+    this.store = PrefixSnapshotStore.forFolder(new File(folder, MODELS_FOLDER), maxFolderSize);
+  }
+
+  private static Map<String, ParsedPom> makeLruMap(final int maxModels) {
+    final int max = Math.max(1, maxModels);
+    return new LinkedHashMap<String, ParsedPom>(16, 0.75f, true) {
+      private static final long serialVersionUID = -1750284734817618741L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, ParsedPom> eldest) {
+        return this.size() > max;
+      }
+    };
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new Error("SHA-1 must be supported by JVM", ex);
+    }
+  }
+
+  private static String toHex(final byte[] data) {
+    final StringBuilder result = new StringBuilder(data.length * 2);
+    for (final byte b : data) {
+      result.append(HEX[(b >>> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Get parsed model of a pom file. The model is shared and must not be
+   * changed, use {@link UPomModel#wrap(Model)} to change it.
+   *
+   * @param pom pom file, must not be null
+   * @return parsed model, must not be null
+   * @throws Exception if the file can't be read or parsed
+   */
+  public Model get(final File pom) throws Exception {
+    final File file = pom.getCanonicalFile();
+    final String path = file.getPath();
+    final long length = file.length();
+    final long modified = file.lastModified();
+
+    synchronized (this.models) {
+      final ParsedPom cached = this.models.get(path);
+      if (cached != null && cached.length == length && cached.modified == modified) {
+        return cached.model;
+      }
+    }
+
+    final byte[] pathHash = newDigest().digest(path.getBytes("UTF-8"));
+
+    Model result = null;
+    if (this.index != null) {
+      final byte[] contentHash = this.index.find(pathHash, length, modified);
+      if (contentHash != null) {
+        result = this.store.load(MODEL_PREFIX + toHex(contentHash));
+      }
+    }
+
+    if (result == null) {
+      final byte[] content = FileUtils.readFileToByteArray(file);
+      final byte[] contentHash = newDigest().digest(content);
+      final String key = MODEL_PREFIX + toHex(contentHash);
+      if (this.store != null) {
+        result = this.store.load(key);
+      }
+      if (result == null) {
+        result = new MavenXpp3Reader().read(new ByteArrayInputStream(content), true);
+        if (this.store != null) {
+          this.store.save(key, result);
+        }
+      }
+      if (this.index != null) {
+        this.index.put(pathHash, length, modified, contentHash);
+      }
+    }
+
+    synchronized (this.models) {
+      this.models.put(path, new ParsedPom(length, modified, result));
+    }
+    return result;
+  }
+
+  /**
+   * Get number of models kept in memory.
+   *
+   * @return number of models
+   */
+  public int size() {
+    synchronized (this.models) {
+      return this.models.size();
+    }
+  }
+
+  private static final class ParsedPom {
+
+    private final long length;
+    private final long modified;
+    private final Model model;
+
+    ParsedPom(final long length, final long modified, final Model model) {
+      this.length = length;
+      this.modified = modified;
+      this.model = model;
+    }
+  }
+
+  /**
+   * Hash table of fixed size in a memory mapped file. A slot contains hash
+   * of path, size, modification time and content hash of a pom file. A path
+   * is looked for in several slots starting from its main slot, if all of
+   * them are used then the main slot is overwritten, so that the index never
+   * grows.
+   * Slots are read and written under exclusive file lock of their region.
+   */
+  static final class MappedIndex {
+
+    static final int SLOTS = 8192;
+    static final int PROBES = 8;
+
+    private static final int MAGIC = 0x55504931;
+    private static final int HEADER_SIZE = 16;
+    private static final int HASH_SIZE = 20;
+    private static final int SLOT_SIZE = 8 + 8 + 8 + HASH_SIZE + 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private MappedIndex(final File file) throws IOException {
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      this.channel = raf.getChannel();
+      final long size = HEADER_SIZE + (long) SLOTS * SLOT_SIZE;
+      final FileLock lock = this.channel.lock();
+      try {
+        if (raf.length() != size || raf.readInt() != MAGIC) {
+          raf.setLength(0L);
+          raf.setLength(size);
+          raf.seek(0L);
+          raf.writeInt(MAGIC);
+        }
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+      } finally {
+        lock.release();
+      }
+    }
+
+    static MappedIndex forFolder(final File folder) throws IOException {
+      final File key = folder.getCanonicalFile();
+      synchronized (INDEXES) {
+        MappedIndex result = INDEXES.get(key);
+        if (result == null) {
+          FileUtils.forceMkdir(key);
+          result = new MappedIndex(new File(key, INDEX_FILE));
+          INDEXES.put(key, result);
+        }
+        return result;
+      }
+    }
+
+    private static int findFirstSlot(final byte[] pathHash) {
+      final int hash = ((pathHash[0] & 0xFF) << 24) | ((pathHash[1] & 0xFF) << 16) | ((pathHash[2] & 0xFF) << 8) | (pathHash[3] & 0xFF);
+      return (hash & 0x7FFFFFFF) % (SLOTS - PROBES + 1);
+    }
+
+    private static long readPathKey(final byte[] pathHash) {
+      long result = 0L;
+      for (int i = 4; i < 12; i++) {
+        result = (result << 8) | (pathHash[i] & 0xFF);
+      }
+      // zero marks empty slot
+      return result == 0L ? 1L : result;
+    }
+
+    private FileLock lockRegion(final int firstSlot) throws IOException {
+      return this.channel.lock(HEADER_SIZE + (long) firstSlot * SLOT_SIZE, (long) PROBES * SLOT_SIZE, false);
+    }
+
+    private int position(final int firstSlot, final int probe) {
+      return HEADER_SIZE + (firstSlot + probe) * SLOT_SIZE;
+    }
+
+    /**
+     * Find content hash of a pom file.
+     *
+     * @param pathHash hash of canonical path, must not be null
+     * @param length size of the file
+     * @param modified modification time of the file
+     * @return content hash or null if the file is not found or changed
+     * @throws IOException if the index can't be locked
+     */
+    synchronized byte[] find(final byte[] pathHash, final long length, final long modified) throws IOException {
+      final int firstSlot = findFirstSlot(pathHash);
+      final long pathKey = readPathKey(pathHash);
+      final FileLock lock = lockRegion(firstSlot);
+      try {
+        for (int i = 0; i < PROBES; i++) {
+          final int pos = position(firstSlot, i);
+          final long slotKey = this.buffer.getLong(pos);
+          if (slotKey == 0L) {
+            return null;
+          }
+          if (slotKey == pathKey) {
+            if (this.buffer.getLong(pos + 8) != length || this.buffer.getLong(pos + 16) != modified) {
+              return null;
+            }
+            final byte[] result = new byte[HASH_SIZE];
+            for (int j = 0; j < HASH_SIZE; j++) {
+              result[j] = this.buffer.get(pos + 24 + j);
+            }
+            return result;
+          }
+        }
+        return null;
+      } finally {
+        lock.release();
+      }
+    }
+
+    /**
+     * Save content hash of a pom file.
+     *
+     * @param pathHash hash of canonical path, must not be null
+     * @param length size of the file
+     * @param modified modification time of the file
+     * @param contentHash content hash of the file, must not be null
+     * @throws IOException if the index can't be locked
+     */
+    synchronized void put(final byte[] pathHash, final long length, final long modified, final byte[] contentHash) throws IOException {
+      final int firstSlot = findFirstSlot(pathHash);
+      final long pathKey = readPathKey(pathHash);
+      final FileLock lock = lockRegion(firstSlot);
+      try {
+        int target = position(firstSlot, 0);
+        for (int i = 0; i < PROBES; i++) {
+          final int pos = position(firstSlot, i);
+          final long slotKey = this.buffer.getLong(pos);
+          if (slotKey == 0L || slotKey == pathKey) {
+            target = pos;
+            break;
+          }
+        }
+        // the key is written last, so that an interrupted write never binds the path to data of another file
+        this.buffer.putLong(target, 0L);
+        this.buffer.putLong(target + 8, length);
+        this.buffer.putLong(target + 16, modified);
+        for (int j = 0; j < HASH_SIZE; j++) {
+          this.buffer.put(target + 24 + j, j < contentHash.length ? contentHash[j] : 0);
+        }
+        this.buffer.putLong(target, pathKey);
+      } finally {
+        lock.release();
+      }
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+/**
+ * Operation over a model path to be applied in a batch through
+ * {@link UPomModel#apply(java.util.List)}. After applying, the operation
+ * contains its result.
+ *
+ * @since 1.0.4
+ */
+public final class PathEdit {
+
+  enum Kind {
+    REMOVE,
+    SET,
+    GET
+  }
+
+  private final Kind kind;
+  private final ModelPath path;
+  private final Object newValue;
+
+  private boolean found;
+  private Object value;
+  private Exception error;
+
+  private PathEdit(final Kind kind, final String path, final Object newValue) {
+    this.kind = kind;
+    this.path = ModelPath.compile(path);
+    this.newValue = newValue;
+  }
+
+  /**
+   * Make operation to remove value for a path.
+   *
+   * @param path path to be removed, must not be null
+   * @return operation, must not be null
+   */
+  public static PathEdit remove(final String path) {
+    return new PathEdit(Kind.REMOVE, path, null);
+  }
+
+  /**
+   * Make operation to set value for a path.
+   *
+   * @param path path to be set, must not be null
+   * @param value value to be set
+   * @return operation, must not be null
+   */
+  public static PathEdit set(final String path, final Object value) {
+    return new PathEdit(Kind.SET, path, value);
+  }
+
+  /**
+   * Make operation to get value for a path.
+   *
+   * @param path path to be read, must not be null
+   * @return operation, must not be null
+   */
+  public static PathEdit get(final String path) {
+    return new PathEdit(Kind.GET, path, null);
+  }
+
+  public String getPath() {
+    return this.path.toString();
+  }
+
+  /**
+   * Check that the path has been found and changed, for get operations it is
+   * always false.
+   *
+   * @return true if a value has been removed or set
+   */
+  public boolean isFound() {
+    return this.found;
+  }
+
+  /**
+   * Get read value, only for get operations.
+   *
+   * @return read value, can be null
+   */
+  public Object getValue() {
+    return this.value;
+  }
+
+  /**
+   * Get error detected during operation.
+   *
+   * @return error or null if there was not any error
+   */
+  public Exception getError() {
+    return this.error;
+  }
+
+  Kind kind() {
+    return this.kind;
+  }
+
+  ModelPath modelPath() {
+    return this.path;
+  }
+
+  Object newValue() {
+    return this.newValue;
+  }
+
+  boolean isGet() {
+    return this.kind == Kind.GET;
+  }
+
+  void reset() {
+    this.found = false;
+    this.value = null;
+    this.error = null;
+  }
+
+  void found(final boolean result) {
+    this.found |= result;
+  }
+
+  void value(final Object value) {
+    this.value = value;
+  }
+
+  void fail(final Exception error) {
+    if (this.error == null) {
+      this.error = error;
+    }
+  }
+
+  /**
+   * Throw the detected error if it exists.
+   *
+   * @return the edit
+   * @throws Exception the detected error
+   */
+  PathEdit check() throws Exception {
+    if (this.error != null) {
+      throw this.error;
+    }
+    return this;
+  }
+
+  /**
+   * Check that an operation must be applied after the other one, because
+   * their paths are nested.
+   *
+   * @param other other operation, must not be null
+   * @return true if operations can't be applied in the same walk
+   */
+  boolean dependsOn(final PathEdit other) {
+    if (this.isGet() && other.isGet()) {
+      return false;
+    }
+    final ModelPath shorter = this.path.length() <= other.path.length() ? this.path : other.path;
+    final ModelPath longer = shorter == this.path ? other.path : this.path;
+    for (int i = 0; i < shorter.length(); i++) {
+      if (!shorter.step(i).overlaps(longer.step(i))) {
+        return false;
+      }
+    }
+    if (shorter.length() == longer.length() && this.isGet() == other.isGet()) {
+      // changes of the same leaf keep their order in the walk
+      for (int i = 0; i < shorter.length(); i++) {
+        if (!shorter.step(i).name().equals(longer.step(i).name())) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return this.kind + " " + this.path;
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Collects wall time and allocated bytes of sequential stages of uber-pom
+ * generation made by the current thread. Allocated bytes are provided only by
+ * JVMs which support com.sun.management.ThreadMXBean, else they are -1. The
+ * counter is thread local, so that stages which use worker threads are marked
+ * as parallel and their allocated bytes are -1, the total allocated bytes are
+ * counted only for the current thread too. Disabled metrics ignore all calls.
+ */
+final class PipelineMetrics {
+
+  static final PipelineMetrics DISABLED = new PipelineMetrics(false);
+
+  private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+  private static final Method GET_ALLOCATED_BYTES = findAllocatedBytesMethod();
+
+  private final boolean enabled;
+  private final List<Stage> stages = new ArrayList<Stage>();
+  private final long startNanos;
+  private final long startAllocated;
+
+  private String currentName;
+  private boolean currentParallel;
+  private long currentNanos;
+  private long currentAllocated;
+
+  PipelineMetrics(final boolean enabled) {
+    this.enabled = enabled;
+    this.startNanos = enabled ? System.nanoTime() : 0L;
+    this.startAllocated = enabled ? allocatedBytes() : -1L;
+  }
+
+  private static Method findAllocatedBytesMethod() {
+    try {
+      final Class<?> extended = Class.forName("com.sun.management.ThreadMXBean");
+      if (extended.isInstance(THREAD_BEAN)) {
+        final Method supported = extended.getMethod("isThreadAllocatedMemorySupported");
+        final Method enabled = extended.getMethod("isThreadAllocatedMemoryEnabled");
+        if ((Boolean) supported.invoke(THREAD_BEAN) && (Boolean) enabled.invoke(THREAD_BEAN)) {
+          return extended.getMethod("getThreadAllocatedBytes", long.class);
+        }
+      }
+    } catch (Throwable ex) {
+      // the JVM doesn't provide the extension
+    }
+    return null;
+  }
+
+  private static long allocatedBytes() {
+    if (GET_ALLOCATED_BYTES != null) {
+      try {
+        return (Long) GET_ALLOCATED_BYTES.invoke(THREAD_BEAN, Thread.currentThread().getId());
+      } catch (Exception ex) {
+        // ignore, the counter is not available
+      }
+    }
+    return -1L;
+  }
+
+  boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * Start a stage, the previous stage is ended if it is not ended yet.
+   *
+   * @param name name of the stage, must not be null
+   */
+  void begin(final String name) {
+    begin(name, false);
+  }
+
+  /**
+   * Start a stage, the previous stage is ended if it is not ended yet.
+   *
+   * @param name name of the stage, must not be null
+   * @param parallel true if the stage uses worker threads, their allocations
+   * can't be counted
+   */
+  void begin(final String name, final boolean parallel) {
+    if (this.enabled) {
+      end();
+      this.currentName = name;
+      this.currentParallel = parallel;
+      this.currentAllocated = allocatedBytes();
+      this.currentNanos = System.nanoTime();
+    }
+  }
+
+  /**
+   * End the current stage.
+   */
+  void end() {
+    if (this.enabled && this.currentName != null) {
+      final long nanos = System.nanoTime() - this.currentNanos;
+      final long allocated = allocatedBytes();
+      final boolean counted = !this.currentParallel && allocated >= 0L && this.currentAllocated >= 0L;
+      this.stages.add(new Stage(this.currentName, nanos, counted ? allocated - this.currentAllocated : -1L, this.currentParallel));
+      this.currentName = null;
+    }
+  }
+
+  /**
+   * Make JSON report of ended stages.
+   *
+   * @param project identifier of processed project, must not be null
+   * @return JSON text
+   */
+  String toJson(final String project) {
+    final long totalAllocated = allocatedBytes();
+    final StringBuilder result = new StringBuilder(256 + this.stages.size() * 96);
+    result.append("{\n  \"project\": ").append(quote(project))
+            .append(",\n  \"wallNanos\": ").append(System.nanoTime() - this.startNanos)
+            .append(",\n  \"allocatedBytes\": ").append(totalAllocated < 0L || this.startAllocated < 0L ? -1L : totalAllocated - this.startAllocated)
+            .append(",\n  \"allocatedBytesScope\": \"thread\"")
+            .append(",\n  \"stages\": [");
+    String delimiter = "\n    ";
+    for (final Stage s : this.stages) {
+      result.append(delimiter)
+              .append("{\"name\": ").append(quote(s.name))
+              .append(", \"wallNanos\": ").append(s.wallNanos)
+              .append(", \"allocatedBytes\": ").append(s.allocatedBytes)
+              .append(", \"parallel\": ").append(s.parallel)
+              .append('}');
+      delimiter = ",\n    ";
+    }
+    result.append("\n  ]\n}\n");
+    return result.toString();
+  }
+
+  void save(final File file, final String project) throws Exception {
+    end();
+    FileUtils.write(file, toJson(project), "UTF-8");
+  }
+
+  private static String quote(final String text) {
+    final StringBuilder result = new StringBuilder(text.length() + 2);
+    result.append('\"');
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      switch (c) {
+        case '\"':
+          result.append("\\\"");
+          break;
+        case '\\':
+          result.append("\\\\");
+          break;
+        case '\n':
+          result.append("\\n");
+          break;
+        case '\r':
+          result.append("\\r");
+          break;
+        case '\t':
+          result.append("\\t");
+          break;
+        default: {
+          if (c < 0x20) {
+            result.append(String.format("\\u%04x", (int) c));
+          } else {
+            result.append(c);
+          }
+        }
+        break;
+      }
+    }
+    return result.append('\"').toString();
+  }
+
+  private static final class Stage {
+
+    final String name;
+    final long wallNanos;
+    final long allocatedBytes;
+    final boolean parallel;
+
+    Stage(final String name, final long wallNanos, final long allocatedBytes, final boolean parallel) {
+      this.name = name;
+      this.wallNanos = wallNanos;
+      this.allocatedBytes = allocatedBytes;
+      this.parallel = parallel;
+    }
+  }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Model;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Persistent store of merged prefixes of pom hierarchies, it keeps merged
+ * parents between builds. It is also used to keep parsed poms of
+ * {@link ParsedPomCache}. Every prefix is saved in its own file named by
+ * the prefix key, the key is made from content hashes of the models, so
+ * that changed poms just produce new keys. Models are written through java
+ * serialization (plugin configurations are replaced by serializable
+ * snapshots, properties are written as ordered lists to keep their order)
+ * and compressed by Deflater.
+ * <p>
+ * Files are written into temporary files and renamed, so that parallel
+ * builds never see partially written entries. Modification time of a file
+ * is its last access time, the least recently used files are removed if
+ * total size of the store exceeds the limit. Broken and incompatible files
+ * are just removed, any error of the store makes only cache miss. Versions
+ * of the plugin and of the maven model are written into the header of every
+ * file, so that files written by other versions are incompatible, because
+ * they can merge and read models differently.
+ * <p>
+ * The folder can be shared between projects, so that only model classes,
+ * snapshots and standard collections, boxed values and arrays used by them
+ * are read from files, any other class makes the file broken.
+ */
+final class PrefixSnapshotStore {
+
+  private static final String MAGIC = "upom-prefix-3 "
+          + findVersion(PrefixSnapshotStore.class, "com.igormaznitsa", "uber-pom") + ' '
+          + findVersion(Model.class, "org.apache.maven", "maven-model");
+  private static final String EXTENSION = ".upc";
+  private static final String TEMP_EXTENSION = ".tmp";
+
+  private static final Set<String> ALLOWED_CLASSES = new HashSet<String>(Arrays.asList(
+          DomSnapshot.class.getName(), PropertiesSnapshot.class.getName(),
+          "java.util.ArrayList", "java.util.LinkedList", "java.util.HashMap", "java.util.LinkedHashMap",
+          "java.util.Hashtable", "java.util.Properties", "java.lang.Number", "java.lang.Boolean",
+          "java.lang.Character", "java.lang.Byte", "java.lang.Short", "java.lang.Integer", "java.lang.Long",
+          "java.lang.Float", "java.lang.Double", "java.io.File", "[Ljava.lang.Object;", "[Ljava.lang.String;"));
+  private static final String MODEL_PACKAGE = "org.apache.maven.model.";
+
+  private static final Map<File, PrefixSnapshotStore> STORES = new HashMap<File, PrefixSnapshotStore>();
+
+  private final File folder;
+  private final long maxSize;
+
+  PrefixSnapshotStore(final File folder, final long maxSize) {
+    this.folder = folder;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Get shared store for a folder.
+   *
+   * @param folder folder of the store, must not be null
+   * @param maxSize max size of all files of the store in bytes
+   * @return the store, must not be null
+   * @throws IOException if the folder can't be resolved
+   */
+  static PrefixSnapshotStore forFolder(final File folder, final long maxSize) throws IOException {
+    final File key = folder.getCanonicalFile();
+    synchronized (STORES) {
+      PrefixSnapshotStore result = STORES.get(key);
+      if (result == null || result.maxSize != maxSize) {
+        result = new PrefixSnapshotStore(key, maxSize);
+        STORES.put(key, result);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Find version of an artifact which contains a class. For snapshot or
+   * unknown version, size and modification time of the class source are
+   * added, because a snapshot can be rebuilt without version change.
+   *
+   * @param anchor class from the artifact, must not be null
+   * @param groupId group ID of the artifact, must not be null
+   * @param artifactId artifact ID of the artifact, must not be null
+   * @return version of the artifact, must not be null
+   */
+  static String findVersion(final Class<?> anchor, final String groupId, final String artifactId) {
+    String result = null;
+    final ClassLoader loader = anchor.getClassLoader();
+    final InputStream in = loader == null ? null : loader.getResourceAsStream("META-INF/maven/" + groupId + '/' + artifactId + "/pom.properties");
+    if (in != null) {
+      try {
+        final Properties properties = new Properties();
+        properties.load(in);
+        result = properties.getProperty("version");
+      } catch (IOException ex) {
+        result = null;
+      } finally {
+        try {
+          in.close();
+        } catch (IOException ex) {
+          // the version is already read
+        }
+      }
+    }
+    if (result == null) {
+      result = anchor.getPackage() == null ? null : anchor.getPackage().getImplementationVersion();
+    }
+    if (result == null || result.endsWith("-SNAPSHOT")) {
+      final CodeSource source = anchor.getProtectionDomain().getCodeSource();
+      final File file = source == null || source.getLocation() == null ? null : FileUtils.toFile(source.getLocation());
+      result = (result == null ? "unknown" : result) + (file == null ? "" : "-" + file.length() + '-' + file.lastModified());
+    }
+    return result;
+  }
+
+  private File makeFile(final String key) {
+    return new File(this.folder, key + EXTENSION);
+  }
+
+  /**
+   * Load saved model.
+   *
+   * @param key key of the prefix, must not be null
+   * @return loaded model or null if it is not found or can't be read
+   */
+  Model load(final String key) {
+    final File file = makeFile(key);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    Model result = null;
+    final Inflater inflater = new Inflater();
+    InputStream in = null;
+    try {
+      in = new BufferedInputStream(new FileInputStream(file));
+      final DataInputStream header = new DataInputStream(in);
+      if (MAGIC.equals(header.readUTF()) && key.equals(header.readUTF())) {
+        final Object loaded = new SnapshotInputStream(new InflaterInputStream(in, inflater)).readObject();
+        if (loaded instanceof Model) {
+          result = (Model) loaded;
+        }
+      }
+    } catch (Exception ex) {
+      result = null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException ex) {
+          // the snapshot is already read
+        }
+      }
+      inflater.end();
+    }
+
+    if (result == null) {
+      FileUtils.deleteQuietly(file);
+    } else {
+      // modification time is used as access time for eviction
+      file.setLastModified(System.currentTimeMillis());
+    }
+    return result;
+  }
+
+  /**
+   * Save model, errors are ignored.
+   *
+   * @param key key of the prefix, must not be null
+   * @param model model to be saved, must not be null
+   */
+  void save(final String key, final Model model) {
+    File temp = null;
+    try {
+      FileUtils.forceMkdir(this.folder);
+      temp = File.createTempFile(key, TEMP_EXTENSION, this.folder);
+
+      final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      final OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+      try {
+        final DataOutputStream header = new DataOutputStream(out);
+        header.writeUTF(MAGIC);
+        header.writeUTF(key);
+        header.flush();
+        final DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater);
+        final ObjectOutputStream objects = new SnapshotOutputStream(compressed);
+        objects.writeObject(model);
+        objects.flush();
+        compressed.finish();
+        out.flush();
+      } finally {
+        try {
+          out.close();
+        } finally {
+          deflater.end();
+        }
+      }
+
+      final File file = makeFile(key);
+      if (!temp.renameTo(file)) {
+        FileUtils.deleteQuietly(file);
+        if (!temp.renameTo(file)) {
+          return;
+        }
+      }
+      temp = null;
+      evict();
+    } catch (IOException ex) {
+      // the store is only cache
+    } finally {
+      if (temp != null) {
+        FileUtils.deleteQuietly(temp);
+      }
+    }
+  }
+
+  private synchronized void evict() {
+    final File[] files = this.folder.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(final File file) {
+        return file.isFile() && file.getName().endsWith(EXTENSION);
+      }
+    });
+    if (files == null) {
+      return;
+    }
+
+    long size = 0L;
+    for (final File f : files) {
+      size += f.length();
+    }
+    if (size <= this.maxSize) {
+      return;
+    }
+
+    final Map<File, Long> times = new HashMap<File, Long>();
+    for (final File f : files) {
+      times.put(f, f.lastModified());
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(final File o1, final File o2) {
+        final long t1 = times.get(o1);
+        final long t2 = times.get(o2);
+        return t1 < t2 ? -1 : (t1 == t2 ? o1.getName().compareTo(o2.getName()) : 1);
+      }
+    });
+    for (int i = 0; i < files.length && size > this.maxSize; i++) {
+      final long length = files[i].length();
+      if (files[i].delete()) {
+        size -= length;
+      }
+    }
+  }
+
+  /**
+   * Serializable form of plugin configuration.
+   */
+  private static final class DomSnapshot implements Serializable {
+
+    private static final long serialVersionUID = -3265127438652716354L;
+
+    private final String name;
+    private final String value;
+    private final String[] attributes;
+    private final Object[] children;
+
+    DomSnapshot(final Xpp3Dom dom) {
+      this.name = dom.getName();
+      this.value = dom.getValue();
+      final String[] names = dom.getAttributeNames();
+      this.attributes = new String[names.length * 2];
+      for (int i = 0; i < names.length; i++) {
+        this.attributes[i * 2] = names[i];
+        this.attributes[i * 2 + 1] = dom.getAttribute(names[i]);
+      }
+      // children are replaced by snapshots during serialization
+      this.children = new Object[dom.getChildCount()];
+      for (int i = 0; i < this.children.length; i++) {
+        this.children[i] = dom.getChild(i);
+      }
+    }
+
+    Xpp3Dom restore() {
+      final Xpp3Dom result = new Xpp3Dom(this.name);
+      result.setValue(this.value);
+      for (int i = 0; i < this.attributes.length; i += 2) {
+        result.setAttribute(this.attributes[i], this.attributes[i + 1]);
+      }
+      for (final Object c : this.children) {
+        result.addChild((Xpp3Dom) c);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Serializable form of properties, deserialized hash table can have
+   * another capacity and order of keys, so that entries are kept in the
+   * order of iteration and inserted in the same order.
+   */
+  private static final class PropertiesSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 6043617823498227011L;
+
+    private final Object[] entries;
+
+    PropertiesSnapshot(final Properties properties) {
+      final List<Object> list = new ArrayList<Object>(properties.size() * 2);
+      for (final Map.Entry<Object, Object> e : properties.entrySet()) {
+        list.add(e.getKey());
+        list.add(e.getValue());
+      }
+      this.entries = list.toArray();
+    }
+
+    Properties restore() {
+      final Properties result = new Properties();
+      for (int i = 0; i < this.entries.length; i += 2) {
+        result.put(this.entries[i], this.entries[i + 1]);
+      }
+      return result;
+    }
+  }
+
+  private static final class SnapshotOutputStream extends ObjectOutputStream {
+
+    SnapshotOutputStream(final OutputStream out) throws IOException {
+      super(out);
+      enableReplaceObject(true);
+    }
+
+    @Override
+    protected Object replaceObject(final Object obj) throws IOException {
+      if (obj instanceof Xpp3Dom) {
+        return new DomSnapshot((Xpp3Dom) obj);
+      }
+      return obj instanceof Properties ? new PropertiesSnapshot((Properties) obj) : obj;
+    }
+  }
+
+  private static final class SnapshotInputStream extends ObjectInputStream {
+
+    SnapshotInputStream(final InputStream in) throws IOException {
+      super(in);
+      enableResolveObject(true);
+    }
+
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      final String name = desc.getName();
+      if (!ALLOWED_CLASSES.contains(name) && !(name.startsWith(MODEL_PACKAGE) && name.indexOf('.', MODEL_PACKAGE.length()) < 0)) {
+        throw new InvalidClassException(name, "Not allowed in stored model");
+      }
+      try {
+        return Class.forName(desc.getName(), false, PrefixSnapshotStore.class.getClassLoader());
+      } catch (ClassNotFoundException ex) {
+        return super.resolveClass(desc);
+      }
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException, ClassNotFoundException {
+      throw new InvalidClassException("Proxy classes are not allowed in stored model");
+    }
+
+    @Override
+    protected Object resolveObject(final Object obj) throws IOException {
+      if (obj instanceof DomSnapshot) {
+        return ((DomSnapshot) obj).restore();
+      }
+      return obj instanceof PropertiesSnapshot ? ((PropertiesSnapshot) obj).restore() : obj;
+    }
+  }
+}
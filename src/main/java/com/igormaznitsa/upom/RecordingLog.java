@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Log which keeps messages to be replayed in another log, it is used by the
+ * daemon to send messages to the mojo.
+ */
+final class RecordingLog implements Log {
+
+  static final int DEBUG = 0;
+  static final int INFO = 1;
+  static final int WARN = 2;
+  static final int ERROR = 3;
+
+  private final boolean debug;
+  private final List<Integer> levels = new ArrayList<Integer>();
+  private final List<String> messages = new ArrayList<String>();
+
+  RecordingLog(final boolean debug) {
+    this.debug = debug;
+  }
+
+  int size() {
+    return this.messages.size();
+  }
+
+  int level(final int index) {
+    return this.levels.get(index);
+  }
+
+  String message(final int index) {
+    return this.messages.get(index);
+  }
+
+  static void replay(final Log log, final int level, final String message) {
+    switch (level) {
+      case DEBUG:
+        log.debug(message);
+        break;
+      case INFO:
+        log.info(message);
+        break;
+      case WARN:
+        log.warn(message);
+        break;
+      default:
+        log.error(message);
+        break;
+    }
+  }
+
+  private void record(final int level, final CharSequence text, final Throwable error) {
+    if (level == DEBUG && !this.debug) {
+      return;
+    }
+    final StringBuilder message = new StringBuilder();
+    if (text != null) {
+      message.append(text);
+    }
+    if (error != null) {
+      final StringWriter buffer = new StringWriter();
+      error.printStackTrace(new PrintWriter(buffer));
+      if (message.length() > 0) {
+        message.append('\n');
+      }
+      message.append(buffer);
+    }
+    this.levels.add(level);
+    this.messages.add(message.toString());
+  }
+
+  @Override
+  public boolean isDebugEnabled() {
+    return this.debug;
+  }
+
+  @Override
+  public void debug(final CharSequence content) {
+    record(DEBUG, content, null);
+  }
+
+  @Override
+  public void debug(final CharSequence content, final Throwable error) {
+    record(DEBUG, content, error);
+  }
+
+  @Override
+  public void debug(final Throwable error) {
+    record(DEBUG, null, error);
+  }
+
+  @Override
+  public boolean isInfoEnabled() {
+    return true;
+  }
+
+  @Override
+  public void info(final CharSequence content) {
+    record(INFO, content, null);
+  }
+
+  @Override
+  public void info(final CharSequence content, final Throwable error) {
+    record(INFO, content, error);
+  }
+
+  @Override
+  public void info(final Throwable error) {
+    record(INFO, null, error);
+  }
+
+  @Override
+  public boolean isWarnEnabled() {
+    return true;
+  }
+
+  @Override
+  public void warn(final CharSequence content) {
+    record(WARN, content, null);
+  }
+
+  @Override
+  public void warn(final CharSequence content, final Throwable error) {
+    record(WARN, content, error);
+  }
+
+  @Override
+  public void warn(final Throwable error) {
+    record(WARN, null, error);
+  }
+
+  @Override
+  public boolean isErrorEnabled() {
+    return true;
+  }
+
+  @Override
+  public void error(final CharSequence content) {
+    record(ERROR, content, null);
+  }
+
+  @Override
+  public void error(final CharSequence content, final Throwable error) {
+    record(ERROR, content, error);
+  }
+
+  @Override
+  public void error(final Throwable error) {
+    record(ERROR, null, error);
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Default XML engine working in one pass through StAX events.
+ *
+ * @see StreamingSiblingJanitor
+ * @since 1.0.4
+ */
+public final class StaxXmlEngine implements XmlEngine {
+
+  public static final String NAME = "stax";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public void removeDuplicatedSiblings(final Log log, final Reader in, final Writer out, final ExecutorService executor) throws Exception {
+    StreamingSiblingJanitor.process(log, in, out, executor);
+  }
+}
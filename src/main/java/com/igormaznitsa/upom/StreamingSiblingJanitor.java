@@ -0,0 +1,519 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Removes duplicated sibling elements from XML text in one pass through StAX
+ * events. Every element gets digest of its canonical content (name,
+ * namespace, attributes, texts and digests of children), an element is
+ * removed if one of its previous siblings has the same digest. Only children
+ * of the root element are buffered, the root element is written directly.
+ * StAX factories are not guaranteed to be thread safe so they are kept per
+ * thread.
+ * <p>
+ * If an executor is provided then children of the root element are buffered
+ * without digests and cleaned when they are completed. Big children are
+ * split into independent subtrees which are cleaned in parallel, then the
+ * rest of the tree is cleaned in the calling thread. Messages about removed
+ * elements are printed in the same order as in the sequential mode.
+ */
+final class StreamingSiblingJanitor {
+
+  private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = new ThreadLocal<XMLInputFactory>() {
+    @Override
+    protected XMLInputFactory initialValue() {
+      final XMLInputFactory result = XMLInputFactory.newInstance();
+      result.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+      result.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+      result.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+      return result;
+    }
+  };
+
+  private static final ThreadLocal<XMLOutputFactory> OUTPUT_FACTORY = new ThreadLocal<XMLOutputFactory>() {
+    @Override
+    protected XMLOutputFactory initialValue() {
+      return XMLOutputFactory.newInstance();
+    }
+  };
+
+  private static final byte KIND_ELEMENT = 1;
+  private static final byte KIND_TEXT = 2;
+  private static final byte KIND_CDATA = 3;
+  private static final byte KIND_COMMENT = 4;
+  private static final byte KIND_PI = 5;
+  private static final byte KIND_NAMESPACE = 6;
+  private static final byte KIND_ATTRIBUTE = 7;
+
+  /**
+   * Minimal number of items in a child of the root element to be cleaned in
+   * parallel.
+   */
+  static final int PARALLEL_THRESHOLD = 16384;
+
+  /**
+   * Max number of items in a subtree cleaned by one task.
+   */
+  static final int TASK_SIZE = 2048;
+
+  private final Log log;
+  private final ExecutorService executor;
+  private final MessageDigest digest;
+  private final List<String> path = new ArrayList<String>();
+
+  private StreamingSiblingJanitor(final Log log, final ExecutorService executor) {
+    this.log = log;
+    this.executor = executor;
+    this.digest = newDigest();
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new Error("SHA-1 must be supported by JVM", ex);
+    }
+  }
+
+  /**
+   * Copy XML from reader into writer and remove duplicated sibling elements.
+   *
+   * @param log logger to print removed elements, can be null
+   * @param in source of XML text, must not be null
+   * @param out destination for result XML text, must not be null
+   * @throws XMLStreamException if XML can't be read or written
+   */
+  static void process(final Log log, final Reader in, final Writer out) throws XMLStreamException {
+    process(log, in, out, null);
+  }
+
+  /**
+   * Copy XML from reader into writer and remove duplicated sibling elements,
+   * big subtrees are cleaned in parallel.
+   *
+   * @param log logger to print removed elements, can be null
+   * @param in source of XML text, must not be null
+   * @param out destination for result XML text, must not be null
+   * @param executor executor to clean big subtrees, can be null for
+   * sequential processing
+   * @throws XMLStreamException if XML can't be read or written
+   */
+  static void process(final Log log, final Reader in, final Writer out, final ExecutorService executor) throws XMLStreamException {
+    final XMLStreamReader reader = INPUT_FACTORY.get().createXMLStreamReader(in);
+    try {
+      final XMLStreamWriter writer = OUTPUT_FACTORY.get().createXMLStreamWriter(out);
+      try {
+        new StreamingSiblingJanitor(log, executor).run(reader, writer);
+        writer.flush();
+      } finally {
+        writer.close();
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void run(final XMLStreamReader reader, final XMLStreamWriter writer) throws XMLStreamException {
+    final LinkedList<Element> buffered = new LinkedList<Element>();
+    final Set<ByteBuffer> rootChildren = new HashSet<ByteBuffer>();
+    this.path.add("#document");
+
+    if (reader.getVersion() != null) {
+      final String encoding = reader.getCharacterEncodingScheme();
+      writer.writeStartDocument(encoding == null ? "UTF-8" : encoding, reader.getVersion());
+      writer.writeCharacters("\n");
+    }
+
+    int depth = 0;
+    while (reader.hasNext()) {
+      final int event = reader.next();
+      switch (event) {
+        case XMLStreamConstants.START_ELEMENT: {
+          final Element element = new Element(reader);
+          this.path.add(element.qualifiedName());
+          if (depth == 0) {
+            element.writeStart(writer);
+          } else {
+            buffered.addLast(element);
+          }
+          depth++;
+        }
+        break;
+        case XMLStreamConstants.END_ELEMENT: {
+          depth--;
+          if (depth == 0) {
+            writer.writeEndElement();
+          } else {
+            final Element element = buffered.removeLast();
+            if (this.executor != null) {
+              if (!buffered.isEmpty()) {
+                buffered.getLast().add(element);
+                this.path.remove(this.path.size() - 1);
+                break;
+              }
+              clean(element, pathToString(this.path));
+            }
+            final ByteBuffer key = element.seal(this.digest);
+            final Set<ByteBuffer> siblings = buffered.isEmpty() ? rootChildren : buffered.getLast().childDigests;
+            if (siblings.add(key)) {
+              if (buffered.isEmpty()) {
+                element.write(writer);
+              } else {
+                buffered.getLast().add(element);
+              }
+            } else if (this.log != null) {
+              this.log.warn("Removing duplicated element : " + pathToString(this.path));
+            }
+          }
+          this.path.remove(this.path.size() - 1);
+        }
+        break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.COMMENT:
+        case XMLStreamConstants.PROCESSING_INSTRUCTION: {
+          final Content content = new Content(reader, event);
+          if (buffered.isEmpty()) {
+            content.write(writer);
+          } else {
+            buffered.getLast().add(content);
+          }
+        }
+        break;
+        case XMLStreamConstants.END_DOCUMENT: {
+          writer.writeEndDocument();
+        }
+        break;
+        default: {
+          // ignore DTD and other events
+        }
+        break;
+      }
+    }
+  }
+
+  private void clean(final Element element, final String elementPath) throws XMLStreamException {
+    final List<String> removed = new ArrayList<String>();
+    if (element.size < PARALLEL_THRESHOLD) {
+      cleanChildren(element, elementPath, this.digest, removed);
+    } else {
+      final List<Element> subtrees = new ArrayList<Element>();
+      final List<String> subtreePaths = new ArrayList<String>();
+      findSubtrees(element, elementPath, subtrees, subtreePaths);
+
+      final List<Future<?>> tasks = new ArrayList<Future<?>>(subtrees.size());
+      for (int i = 0; i < subtrees.size(); i++) {
+        final Element subtree = subtrees.get(i);
+        final String subtreePath = subtreePaths.get(i);
+        tasks.add(this.executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            final MessageDigest taskDigest = newDigest();
+            final List<String> taskRemoved = new ArrayList<String>();
+            cleanChildren(subtree, subtreePath, taskDigest, taskRemoved);
+            subtree.seal(taskDigest);
+            subtree.removedInside = taskRemoved;
+            return null;
+          }
+        }));
+      }
+      try {
+        for (final Future<?> f : tasks) {
+          f.get();
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new XMLStreamException("Interrupted during removing of duplicated elements", ex);
+      } catch (ExecutionException ex) {
+        throw new XMLStreamException("Can't remove duplicated elements", ex.getCause());
+      } finally {
+        for (final Future<?> f : tasks) {
+          f.cancel(true);
+        }
+      }
+
+      // the rest of the tree contains only completed subtrees
+      cleanChildren(element, elementPath, this.digest, removed);
+    }
+
+    if (this.log != null) {
+      for (final String s : removed) {
+        this.log.warn("Removing duplicated element : " + s);
+      }
+    }
+  }
+
+  private static void findSubtrees(final Element element, final String elementPath, final List<Element> subtrees, final List<String> paths) {
+    for (final Item i : element.children) {
+      if (i instanceof Element) {
+        final Element child = (Element) i;
+        final String childPath = elementPath + '/' + child.qualifiedName();
+        if (child.size <= TASK_SIZE) {
+          subtrees.add(child);
+          paths.add(childPath);
+        } else {
+          findSubtrees(child, childPath, subtrees, paths);
+        }
+      }
+    }
+  }
+
+  private static void cleanChildren(final Element element, final String elementPath, final MessageDigest digest, final List<String> removed) {
+    final Set<ByteBuffer> siblings = new HashSet<ByteBuffer>();
+    final Iterator<Item> iterator = element.children.iterator();
+    while (iterator.hasNext()) {
+      final Item item = iterator.next();
+      if (item instanceof Element) {
+        final Element child = (Element) item;
+        final String childPath = elementPath + '/' + child.qualifiedName();
+        final ByteBuffer key;
+        if (child.sealed == null) {
+          cleanChildren(child, childPath, digest, removed);
+          key = child.seal(digest);
+        } else {
+          removed.addAll(child.removedInside);
+          child.removedInside = null;
+          key = ByteBuffer.wrap(child.sealed);
+        }
+        if (!siblings.add(key)) {
+          iterator.remove();
+          removed.add(childPath);
+        }
+      }
+    }
+  }
+
+  private static String pathToString(final List<String> path) {
+    final StringBuilder result = new StringBuilder();
+    for (final String s : path) {
+      if (result.length() > 0) {
+        result.append('/');
+      }
+      result.append(s);
+    }
+    return result.toString();
+  }
+
+  private static String nonNull(final String str) {
+    return str == null ? "" : str;
+  }
+
+  private static void update(final MessageDigest digest, final byte kind, final String... values) {
+    digest.update(kind);
+    for (final String s : values) {
+      try {
+        final byte[] data = s.getBytes("UTF-8");
+        digest.update((byte) (data.length >>> 24));
+        digest.update((byte) (data.length >>> 16));
+        digest.update((byte) (data.length >>> 8));
+        digest.update((byte) data.length);
+        digest.update(data);
+      } catch (UnsupportedEncodingException ex) {
+        throw new Error("UTF-8 must be supported by JVM", ex);
+      }
+    }
+  }
+
+  private abstract static class Item {
+
+    abstract void write(XMLStreamWriter writer) throws XMLStreamException;
+
+    abstract void digest(MessageDigest digest);
+  }
+
+  private static final class Content extends Item {
+
+    private final int type;
+    private final String target;
+    private final String text;
+
+    Content(final XMLStreamReader reader, final int type) {
+      this.type = type == XMLStreamConstants.SPACE ? XMLStreamConstants.CHARACTERS : type;
+      if (type == XMLStreamConstants.PROCESSING_INSTRUCTION) {
+        this.target = reader.getPITarget();
+        this.text = nonNull(reader.getPIData());
+      } else {
+        this.target = "";
+        this.text = reader.getText();
+      }
+    }
+
+    @Override
+    void write(final XMLStreamWriter writer) throws XMLStreamException {
+      switch (this.type) {
+        case XMLStreamConstants.CDATA:
+          writer.writeCData(this.text);
+          break;
+        case XMLStreamConstants.COMMENT:
+          writer.writeComment(this.text);
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          writer.writeProcessingInstruction(this.target, this.text);
+          break;
+        default:
+          writer.writeCharacters(this.text);
+          break;
+      }
+    }
+
+    @Override
+    void digest(final MessageDigest digest) {
+      switch (this.type) {
+        case XMLStreamConstants.CDATA:
+          update(digest, KIND_CDATA, this.text);
+          break;
+        case XMLStreamConstants.COMMENT:
+          update(digest, KIND_COMMENT, this.text);
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          update(digest, KIND_PI, this.target, this.text);
+          break;
+        default:
+          update(digest, KIND_TEXT, this.text);
+          break;
+      }
+    }
+  }
+
+  private static final class Element extends Item {
+
+    private final String prefix;
+    private final String localName;
+    private final String namespace;
+    private final String[] namespaces;
+    private final String[] attributes;
+    private final List<Item> children = new ArrayList<Item>();
+    private final Set<ByteBuffer> childDigests = new HashSet<ByteBuffer>();
+    private int size = 1;
+    private byte[] sealed;
+    private List<String> removedInside;
+
+    Element(final XMLStreamReader reader) {
+      this.prefix = nonNull(reader.getPrefix());
+      this.localName = reader.getLocalName();
+      this.namespace = nonNull(reader.getNamespaceURI());
+
+      this.namespaces = new String[reader.getNamespaceCount() * 2];
+      for (int i = 0; i < reader.getNamespaceCount(); i++) {
+        this.namespaces[i * 2] = nonNull(reader.getNamespacePrefix(i));
+        this.namespaces[i * 2 + 1] = nonNull(reader.getNamespaceURI(i));
+      }
+
+      this.attributes = new String[reader.getAttributeCount() * 4];
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        this.attributes[i * 4] = nonNull(reader.getAttributePrefix(i));
+        this.attributes[i * 4 + 1] = nonNull(reader.getAttributeNamespace(i));
+        this.attributes[i * 4 + 2] = reader.getAttributeLocalName(i);
+        this.attributes[i * 4 + 3] = nonNull(reader.getAttributeValue(i));
+      }
+    }
+
+    void add(final Item item) {
+      this.children.add(item);
+      this.size += item instanceof Element ? ((Element) item).size : 1;
+    }
+
+    String qualifiedName() {
+      return this.prefix.length() == 0 ? this.localName : this.prefix + ':' + this.localName;
+    }
+
+    ByteBuffer seal(final MessageDigest digest) {
+      digest.reset();
+      this.digest(digest);
+      this.sealed = digest.digest();
+      this.childDigests.clear();
+      return ByteBuffer.wrap(this.sealed);
+    }
+
+    void writeStart(final XMLStreamWriter writer) throws XMLStreamException {
+      writer.writeStartElement(this.prefix, this.localName, this.namespace);
+      for (int i = 0; i < this.namespaces.length; i += 2) {
+        if (this.namespaces[i].length() == 0) {
+          writer.writeDefaultNamespace(this.namespaces[i + 1]);
+        } else {
+          writer.writeNamespace(this.namespaces[i], this.namespaces[i + 1]);
+        }
+      }
+      for (int i = 0; i < this.attributes.length; i += 4) {
+        if (this.attributes[i + 1].length() == 0) {
+          writer.writeAttribute(this.attributes[i + 2], this.attributes[i + 3]);
+        } else {
+          writer.writeAttribute(this.attributes[i], this.attributes[i + 1], this.attributes[i + 2], this.attributes[i + 3]);
+        }
+      }
+    }
+
+    @Override
+    void write(final XMLStreamWriter writer) throws XMLStreamException {
+      this.writeStart(writer);
+      for (final Item i : this.children) {
+        i.write(writer);
+      }
+      writer.writeEndElement();
+    }
+
+    @Override
+    void digest(final MessageDigest digest) {
+      if (this.sealed != null) {
+        digest.update(KIND_ELEMENT);
+        digest.update(this.sealed);
+        return;
+      }
+
+      update(digest, KIND_ELEMENT, this.prefix, this.localName, this.namespace);
+
+      final SortedSet<String> declarations = new TreeSet<String>();
+      for (int i = 0; i < this.namespaces.length; i += 2) {
+        declarations.add(this.namespaces[i] + '\u0000' + this.namespaces[i + 1]);
+      }
+      for (final String s : declarations) {
+        update(digest, KIND_NAMESPACE, s);
+      }
+
+      final SortedSet<String> attrs = new TreeSet<String>();
+      for (int i = 0; i < this.attributes.length; i += 4) {
+        attrs.add(this.attributes[i] + '\u0000' + this.attributes[i + 1] + '\u0000' + this.attributes[i + 2] + '\u0000' + this.attributes[i + 3]);
+      }
+      for (final String s : attrs) {
+        update(digest, KIND_ATTRIBUTE, s);
+      }
+
+      for (final Item i : this.children) {
+        i.digest(digest);
+      }
+    }
+  }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Long living local daemon which makes uber-poms for the mojo. It keeps
+ * parsed pom files, merged parents and compiled dependency patterns between
+ * builds, parsed files are re-read if their size or modification time is
+ * changed. The daemon listens only the loopback interface.
+ * <p>
+ * At start the daemon makes random token and saves it into file readable
+ * only by its owner, requests without the token are rejected. Uber-pom can
+ * be written only into the build folder of the project pom.
+ * <pre>
+ * java -cp ... com.igormaznitsa.upom.UPomDaemon [--port=N] [--threads=N]
+ * </pre>
+ *
+ * @since 1.0.4
+ */
+public final class UPomDaemon {
+
+  public static final int DEFAULT_PORT = 17171;
+
+  private static final int CONNECT_TIMEOUT = 250;
+  private static final int READ_TIMEOUT = 120000;
+  private static final int MAX_PARSED_FILES = 16384;
+  private static final int MAX_RULES = 256;
+  private static final int TOKEN_LENGTH = 32;
+  private static final String BUILD_FOLDER = "target";
+  private static final String[] BASEDIR_EXPRESSIONS = new String[]{"${project.basedir}", "${basedir}"};
+
+  private final int port;
+  private final int threads;
+  private final File tokenFolder;
+  private final String token;
+
+  private final ConcurrentMap<String, ParsedPom> parsedPoms = new ConcurrentHashMap<String, ParsedPom>();
+  private final ConcurrentMap<String, DependencyPatternMatcher> rules = new ConcurrentHashMap<String, DependencyPatternMatcher>();
+  private final ConcurrentMap<MergeEngine, MergedPrefixCache> prefixes = new ConcurrentHashMap<MergeEngine, MergedPrefixCache>();
+
+  private volatile ServerSocket serverSocket;
+
+  public UPomDaemon(final int port, final int threads) {
+    this(port, threads, getDefaultTokenFolder());
+  }
+
+  UPomDaemon(final int port, final int threads, final File tokenFolder) {
+    this.port = port;
+    this.threads = Math.max(1, threads);
+    this.tokenFolder = tokenFolder;
+
+    final byte[] random = new byte[TOKEN_LENGTH];
+    new SecureRandom().nextBytes(random);
+    final StringBuilder buffer = new StringBuilder(TOKEN_LENGTH * 2);
+    for (final byte b : random) {
+      buffer.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    this.token = buffer.toString();
+  }
+
+  static File getDefaultTokenFolder() {
+    return new File(System.getProperty("user.home"));
+  }
+
+  /**
+   * Get file keeping token of the daemon listening a port.
+   *
+   * @param folder folder of token files, must not be null
+   * @param port port of the daemon
+   * @return the token file, must not be null
+   */
+  static File getTokenFile(final File folder, final int port) {
+    return new File(folder, ".upom-daemon-" + port + ".token");
+  }
+
+  /**
+   * Read token of the daemon listening a port.
+   *
+   * @param folder folder of token files, must not be null
+   * @param port port of the daemon
+   * @return the token or null if it can't be read
+   */
+  static String readToken(final File folder, final int port) {
+    final File file = getTokenFile(folder, port);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      return FileUtils.readFileToString(file, "UTF-8").trim();
+    } catch (IOException ex) {
+      return null;
+    }
+  }
+
+  private static void writeToken(final File file, final String token) throws IOException {
+    FileUtils.deleteQuietly(file);
+    if (!file.createNewFile()) {
+      throw new IOException("Can't create token file " + file);
+    }
+    // access is restricted before the token is written
+    if (!(file.setReadable(false, false) && file.setReadable(true, true)
+            && file.setWritable(false, false) && file.setWritable(true, true))) {
+      FileUtils.deleteQuietly(file);
+      throw new IOException("Can't restrict access to token file " + file);
+    }
+    FileUtils.write(file, token, "UTF-8");
+  }
+
+  /**
+   * Find build folder of a project pom, expressions other than the base
+   * folder are not resolved and such folder is replaced by the default one.
+   *
+   * @param pom pom file, must not be null
+   * @param model model of the pom, must not be null
+   * @return canonical build folder, must not be null
+   * @throws IOException if the folder can't be resolved
+   */
+  static File findBuildFolder(final File pom, final Model model) throws IOException {
+    final File baseFolder = pom.getAbsoluteFile().getParentFile();
+    String directory = model.getBuild() == null ? null : model.getBuild().getDirectory();
+    if (directory != null) {
+      for (final String e : BASEDIR_EXPRESSIONS) {
+        if (directory.startsWith(e)) {
+          directory = baseFolder.getPath() + directory.substring(e.length());
+          break;
+        }
+      }
+    }
+    if (directory == null || directory.indexOf('$') >= 0) {
+      directory = BUILD_FOLDER;
+    }
+    File result = new File(directory);
+    if (!result.isAbsolute()) {
+      result = new File(baseFolder, directory);
+    }
+    return result.getCanonicalFile();
+  }
+
+  /**
+   * Check that a file is inside a folder.
+   *
+   * @param file file to be checked, must not be null
+   * @param folder canonical folder, must not be null
+   * @return true if the file is inside the folder
+   * @throws IOException if the file path can't be resolved
+   */
+  static boolean isInside(final File file, final File folder) throws IOException {
+    return file.getCanonicalPath().startsWith(folder.getPath() + File.separator);
+  }
+
+  public static void main(final String... args) throws Exception {
+    int port = DEFAULT_PORT;
+    int threads = Runtime.getRuntime().availableProcessors();
+    for (final String a : args) {
+      if (a.startsWith("--port=")) {
+        port = Integer.parseInt(a.substring(7));
+      } else if (a.startsWith("--threads=")) {
+        threads = Integer.parseInt(a.substring(10));
+      } else {
+        System.err.println("Usage: UPomDaemon [--port=" + DEFAULT_PORT + "] [--threads=N]");
+        System.exit(2);
+      }
+    }
+    new UPomDaemon(port, threads).run();
+  }
+
+  /**
+   * Listen and process requests until the daemon is stopped.
+   *
+   * @throws IOException if the port can't be listened
+   */
+  public void run() throws IOException {
+    final ServerSocket server = new ServerSocket();
+    server.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), this.port), 64);
+    final File tokenFile = getTokenFile(this.tokenFolder, server.getLocalPort());
+    try {
+      writeToken(tokenFile, this.token);
+    } catch (IOException ex) {
+      server.close();
+      throw ex;
+    }
+    this.serverSocket = server;
+    System.out.println("Uber-pom daemon is listening port " + server.getLocalPort() + ", token is saved in " + tokenFile);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+    try {
+      while (!server.isClosed()) {
+        final Socket socket;
+        try {
+          socket = server.accept();
+        } catch (IOException ex) {
+          if (server.isClosed()) {
+            break;
+          }
+          throw ex;
+        }
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            serve(socket);
+          }
+        });
+      }
+    } finally {
+      executor.shutdownNow();
+      try {
+        server.close();
+      } catch (IOException ex) {
+        // the daemon is stopped anyway
+      }
+      FileUtils.deleteQuietly(tokenFile);
+    }
+  }
+
+  /**
+   * Get listened port.
+   *
+   * @return the port or -1 if the daemon is not started
+   */
+  public int getLocalPort() {
+    final ServerSocket server = this.serverSocket;
+    return server == null ? -1 : server.getLocalPort();
+  }
+
+  /**
+   * Stop listening of the port.
+   */
+  public void stop() {
+    final ServerSocket server = this.serverSocket;
+    if (server != null) {
+      try {
+        server.close();
+      } catch (IOException ex) {
+        // the daemon is stopped anyway
+      }
+    }
+  }
+
+  private Model getModel(final File file) throws Exception {
+    final String key = file.getCanonicalPath();
+    final long modified = file.lastModified();
+    final long length = file.length();
+
+    final ParsedPom cached = this.parsedPoms.get(key);
+    if (cached != null && cached.modified == modified && cached.length == length) {
+      return cached.model;
+    }
+
+    final Model model;
+    final FileInputStream in = new FileInputStream(file);
+    try {
+      model = new MavenXpp3Reader().read(in, true);
+    } finally {
+      in.close();
+    }
+
+    if (cached != null || this.parsedPoms.size() >= MAX_PARSED_FILES) {
+      // merged prefixes of old models are not needed anymore
+      if (cached == null) {
+        this.parsedPoms.clear();
+      }
+      this.prefixes.clear();
+    }
+    this.parsedPoms.put(key, new ParsedPom(modified, length, model));
+    return model;
+  }
+
+  private DependencyPatternMatcher getRules(final DaemonRequest request) {
+    final String key = request.makeRulesKey();
+    DependencyPatternMatcher result = this.rules.get(key);
+    if (result == null) {
+      if (this.rules.size() >= MAX_RULES) {
+        this.rules.clear();
+      }
+      result = new DependencyPatternMatcher(request.removeDependencies);
+      this.rules.put(key, result);
+    }
+    return result;
+  }
+
+  private MergedPrefixCache getPrefixes(final MergeEngine engine) {
+    MergedPrefixCache result = this.prefixes.get(engine);
+    if (result == null) {
+      final MergedPrefixCache newCache = new MergedPrefixCache(engine);
+      result = this.prefixes.putIfAbsent(engine, newCache);
+      if (result == null) {
+        result = newCache;
+      }
+    }
+    return result;
+  }
+
+  void process(final DaemonRequest request, final Log log) throws Exception {
+    final Model[] hierarchy = new Model[request.pomFiles.length];
+    for (int i = 0; i < hierarchy.length; i++) {
+      hierarchy[i] = getModel(new File(request.pomFiles[i]));
+    }
+
+    final File projectPom = new File(request.pomFiles[request.pomFiles.length - 1]);
+    final File buildFolder = findBuildFolder(projectPom, hierarchy[hierarchy.length - 1]);
+    if (!isInside(new File(request.uberPomFile), buildFolder)) {
+      throw new UPomException("Uber-pom must be in the build folder " + buildFolder);
+    }
+
+    final UPomModel main = getPrefixes(request.mergeEngine).mergeParents(hierarchy);
+    new UPomPipeline(request.keep, request.remove, request.set, getRules(request), request.mergeEngine, request.parallelDependencyFiltering)
+            .process(main, hierarchy.length > 1 ? hierarchy[hierarchy.length - 1] : null, log, PipelineMetrics.DISABLED);
+    main.write(new File(request.uberPomFile), log, request.removeSiblingDuplications, request.modelSiblingJanitor, XmlEngines.find(request.xmlEngine),
+            request.parallelSiblingJanitor ? UPomPipeline.getWorkerExecutor() : null, PipelineMetrics.DISABLED);
+  }
+
+  private void serve(final Socket socket) {
+    try {
+      socket.setSoTimeout(READ_TIMEOUT);
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+      final DaemonRequest request = DaemonRequest.read(in);
+      final RecordingLog log = new RecordingLog(request.debug);
+      String error = null;
+      if (request.token == null || !MessageDigest.isEqual(this.token.getBytes("UTF-8"), request.token.getBytes("UTF-8"))) {
+        error = "Request is not authorized";
+      } else {
+        try {
+          process(request, log);
+        } catch (Exception ex) {
+          error = ex.getClass().getName() + " : " + ex.getMessage();
+        }
+      }
+
+      out.writeBoolean(error == null);
+      out.writeInt(log.size());
+      for (int i = 0; i < log.size(); i++) {
+        out.writeByte(log.level(i));
+        DaemonRequest.writeString(out, log.message(i));
+      }
+      if (error != null) {
+        DaemonRequest.writeString(out, error);
+      }
+      out.flush();
+    } catch (Exception ex) {
+      System.err.println("Can't process request : " + ex.getMessage());
+    } finally {
+      try {
+        socket.close();
+      } catch (IOException ex) {
+        // the response is already sent or lost
+      }
+    }
+  }
+
+  /**
+   * Send request to the daemon. If there is not any daemon or it can't make
+   * the uber-pom then the uber-pom must be made by the caller.
+   *
+   * @param port port of the daemon
+   * @param request request to be processed, must not be null
+   * @param log log to print messages, must not be null
+   * @return true if the uber-pom has been made by the daemon, false otherwise
+   */
+  static boolean send(final int port, final DaemonRequest request, final Log log) {
+    final Socket socket = new Socket();
+    try {
+      try {
+        socket.connect(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), CONNECT_TIMEOUT);
+      } catch (IOException ex) {
+        log.debug("Uber-pom daemon is not found at port " + port);
+        return false;
+      }
+      socket.setSoTimeout(READ_TIMEOUT);
+
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      request.write(out);
+
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      final boolean ok = in.readBoolean();
+      final int messages = in.readInt();
+      for (int i = 0; i < messages; i++) {
+        final int level = in.readByte();
+        RecordingLog.replay(log, level, DaemonRequest.readString(in));
+      }
+      if (!ok) {
+        log.warn("Uber-pom daemon can't make uber-pom : " + DaemonRequest.readString(in));
+      }
+      return ok;
+    } catch (IOException ex) {
+      log.warn("Error during communication with uber-pom daemon : " + ex.getMessage());
+      return false;
+    } finally {
+      try {
+        socket.close();
+      } catch (IOException ex) {
+        // the response is already read or lost
+      }
+    }
+  }
+
+  private static final class ParsedPom {
+
+    private final long modified;
+    private final long length;
+    private final Model model;
+
+    ParsedPom(final long modified, final long length, final Model model) {
+      this.modified = modified;
+      this.length = length;
+      this.model = model;
+    }
+  }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+
+/**
+ * Standalone generator of uber-poms for all pom.xml files found in a folder
+ * tree, it works without maven session. Parents are resolved among found
+ * files through relativePath or through coordinates, every pom file is
+ * parsed only once and merged parents are shared between modules. Uber-poms
+ * are saved near their pom files. If a cache folder is defined then parsed
+ * poms are saved there and not parsed again by next runs.
+ * <pre>
+ * java -cp ... com.igormaznitsa.upom.UPomGenerator &lt;root folder&gt; [--name=uber-pom.xml] [--threads=N] [--removeSiblingDuplications] [--cache=folder]
+ * </pre>
+ *
+ * @since 1.0.4
+ */
+public final class UPomGenerator {
+
+  private static final String POM_FILE = "pom.xml";
+  private static final int CACHED_MODELS = 256;
+  private static final long CACHE_SIZE = 64L * 1024L * 1024L;
+
+  private final File root;
+  private final String name;
+  private final int threads;
+  private final boolean removeSiblingDuplications;
+  private final ParsedPomCache cache;
+
+  public UPomGenerator(final File root, final String name, final int threads, final boolean removeSiblingDuplications) {
+    this(root, name, threads, removeSiblingDuplications, null);
+  }
+
+  public UPomGenerator(final File root, final String name, final int threads, final boolean removeSiblingDuplications, final ParsedPomCache cache) {
+    this.root = root;
+    this.name = name;
+    this.threads = Math.max(1, threads);
+    this.removeSiblingDuplications = removeSiblingDuplications;
+    this.cache = cache;
+  }
+
+  public static void main(final String... args) {
+    File root = null;
+    String name = "uber-pom.xml";
+    int threads = Runtime.getRuntime().availableProcessors();
+    boolean removeSiblingDuplications = false;
+    File cacheFolder = null;
+
+    for (final String a : args) {
+      if (a.startsWith("--name=")) {
+        name = a.substring(7);
+      } else if (a.startsWith("--threads=")) {
+        threads = Integer.parseInt(a.substring(10));
+      } else if (a.equals("--removeSiblingDuplications")) {
+        removeSiblingDuplications = true;
+      } else if (a.startsWith("--cache=")) {
+        cacheFolder = new File(a.substring(8));
+      } else if (root == null && !a.startsWith("--")) {
+        root = new File(a);
+      } else {
+        root = null;
+        break;
+      }
+    }
+
+    if (root == null || !root.isDirectory()) {
+      System.err.println("Usage: UPomGenerator <root folder> [--name=uber-pom.xml] [--threads=N] [--removeSiblingDuplications] [--cache=folder]");
+      System.exit(2);
+    }
+
+    try {
+      final ParsedPomCache cache = cacheFolder == null ? null : new ParsedPomCache(cacheFolder, CACHED_MODELS, CACHE_SIZE);
+      final int failed = new UPomGenerator(root, name, threads, removeSiblingDuplications, cache).generate(System.out);
+      System.exit(failed == 0 ? 0 : 1);
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void findPoms(final File folder, final List<File> result) throws IOException {
+    final File pom = new File(folder, POM_FILE);
+    if (pom.isFile()) {
+      result.add(pom.getCanonicalFile());
+    }
+    final File[] files = folder.listFiles();
+    if (files != null) {
+      Arrays.sort(files);
+      for (final File f : files) {
+        if (f.isDirectory() && !f.getName().startsWith(".") && !f.getName().equals("target")) {
+          findPoms(f, result);
+        }
+      }
+    }
+  }
+
+  private Model readModel(final File file) throws Exception {
+    if (this.cache != null) {
+      return this.cache.get(file);
+    }
+    final FileInputStream in = new FileInputStream(file);
+    try {
+      return new MavenXpp3Reader().read(in, true);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static String makeKey(final String groupId, final String artifactId, final String version) {
+    return groupId + ':' + artifactId + ':' + version;
+  }
+
+  private static String makeKey(final Model model) {
+    final Parent parent = model.getParent();
+    final String groupId = model.getGroupId() == null && parent != null ? parent.getGroupId() : model.getGroupId();
+    final String version = model.getVersion() == null && parent != null ? parent.getVersion() : model.getVersion();
+    return makeKey(groupId, model.getArtifactId(), version);
+  }
+
+  private static <T> T getResult(final Future<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException ex) {
+      final Throwable cause = ex.getCause();
+      throw cause instanceof Exception ? (Exception) cause : ex;
+    }
+  }
+
+  private File findParentFile(final File pom, final Model model, final Map<File, Model> models, final Map<String, File> coordinates) throws IOException {
+    final Parent parent = model.getParent();
+    if (parent == null) {
+      return null;
+    }
+    final String key = makeKey(parent.getGroupId(), parent.getArtifactId(), parent.getVersion());
+
+    final String relativePath = parent.getRelativePath();
+    if (relativePath != null && relativePath.trim().length() > 0) {
+      File file = new File(pom.getParentFile(), relativePath.trim());
+      if (file.isDirectory()) {
+        file = new File(file, POM_FILE);
+      }
+      file = file.getCanonicalFile();
+      final Model found = models.get(file);
+      if (found != null && key.equals(makeKey(found))) {
+        return file;
+      }
+    }
+    return coordinates.get(key);
+  }
+
+  private List<Model> makeHierarchy(final File pom, final Map<File, Model> models, final Map<File, File> parents) {
+    final List<Model> result = new ArrayList<Model>();
+    File current = pom;
+    while (current != null) {
+      if (result.size() > models.size()) {
+        throw new IllegalStateException("Detected cycle in parents of " + pom);
+      }
+      result.add(models.get(current));
+      current = parents.get(current);
+    }
+    Collections.reverse(result);
+    return result;
+  }
+
+  private void generate(final File pom, final Model[] hierarchy, final MergedPrefixCache cache) throws Exception {
+    final UPomModel result = cache.mergeParents(hierarchy);
+    if (hierarchy.length > 1) {
+      result.merge(UPomModel.wrap(hierarchy[hierarchy.length - 1]));
+    }
+    result.write(new File(pom.getParentFile(), this.name), null, this.removeSiblingDuplications);
+  }
+
+  /**
+   * Generate uber-poms for all found pom files.
+   *
+   * @param out stream to print progress and summary, must not be null
+   * @return number of pom files which uber-poms have not been generated
+   * @throws Exception if pom files can't be found
+   */
+  public int generate(final PrintStream out) throws Exception {
+    final long start = System.nanoTime();
+
+    final List<File> poms = new ArrayList<File>();
+    findPoms(this.root.getCanonicalFile(), poms);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+    int failed = 0;
+    try {
+      final Map<File, Future<Model>> parsing = new LinkedHashMap<File, Future<Model>>();
+      for (final File pom : poms) {
+        parsing.put(pom, executor.submit(new Callable<Model>() {
+          @Override
+          public Model call() throws Exception {
+            return readModel(pom);
+          }
+        }));
+      }
+
+      final Map<File, Model> models = new LinkedHashMap<File, Model>();
+      final Map<String, File> coordinates = new HashMap<String, File>();
+      for (final Map.Entry<File, Future<Model>> e : parsing.entrySet()) {
+        try {
+          final Model model = getResult(e.getValue());
+          models.put(e.getKey(), model);
+          final String key = makeKey(model);
+          if (!coordinates.containsKey(key)) {
+            coordinates.put(key, e.getKey());
+          }
+        } catch (Exception ex) {
+          failed++;
+          out.println("Can't parse " + e.getKey() + " : " + ex.getMessage());
+        }
+      }
+      final long parsed = System.nanoTime();
+
+      final Map<File, File> parents = new HashMap<File, File>();
+      for (final Map.Entry<File, Model> e : models.entrySet()) {
+        final File parent = findParentFile(e.getKey(), e.getValue(), models, coordinates);
+        if (parent != null) {
+          parents.put(e.getKey(), parent);
+        }
+      }
+
+      final MergedPrefixCache cache = new MergedPrefixCache();
+      final Map<File, Future<?>> generation = new LinkedHashMap<File, Future<?>>();
+      for (final File pom : models.keySet()) {
+        generation.put(pom, executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            final List<Model> hierarchy = makeHierarchy(pom, models, parents);
+            generate(pom, hierarchy.toArray(new Model[hierarchy.size()]), cache);
+            return null;
+          }
+        }));
+      }
+
+      int generated = 0;
+      for (final Map.Entry<File, Future<?>> e : generation.entrySet()) {
+        try {
+          getResult(e.getValue());
+          generated++;
+        } catch (Exception ex) {
+          failed++;
+          out.println("Can't generate uber-pom for " + e.getKey() + " : " + ex.getMessage());
+        }
+      }
+      final long end = System.nanoTime();
+
+      final double seconds = Math.max(1L, end - start) / 1.0e9d;
+      out.println(String.format("Found %d pom files, parsed in %d ms, shared merged parents %d",
+              poms.size(), (parsed - start) / 1000000L, cache.size()));
+      out.println(String.format("Generated %d uber-poms, failed %d, time %d ms, %.1f uber-poms/s, threads %d",
+              generated, failed, (end - start) / 1000000L, generated / seconds, this.threads));
+    } finally {
+      executor.shutdownNow();
+    }
+    return failed;
+  }
+}
@@ -17,32 +17,31 @@ package com.igormaznitsa.upom;
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.*;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
 import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
-import org.apache.maven.model.merge.ModelMerger;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.xml.sax.InputSource;
 
 @SuppressWarnings({"unchecked", "rawtypes"})
 public final class UPomModel {
 
-  private static final String MAVEN_MODEL_PACKAGE_PREFIX = "org.apache.maven.model.";
+  private static final int CHANNEL_BUFFER_SIZE = 65536;
+  private static final String MODEL_PACKAGE = "org.apache.maven.model.";
 
   private final Model model;
   private final Map<String, Object> savedValues = new HashMap<String, Object>();
+  private final Set<Field> sharedSections = new HashSet<Field>();
 
   public UPomModel(final File modelFile) throws Exception {
     final FileInputStream in = new FileInputStream(modelFile);
@@ -58,217 +57,519 @@ public final class UPomModel {
     this.model = pom.clone();
   }
 
-  public List<Dependency> removeDependencies(final List<DependencyPattern> patterns) {
-    final List<Dependency> kept = new ArrayList<Dependency>();
-    final List<Dependency> removed = new ArrayList<Dependency>();
-
-    for (final Dependency d : this.model.getDependencies()) {
-      boolean remove = false;
-      for (final DependencyPattern p : patterns) {
-        if (p.maths(d)) {
-          remove = true;
-          break;
-        }
-      }
-      if (remove) {
-        removed.add(d);
-      } else {
-        kept.add(d);
+  private UPomModel(final Model model, final Collection<Field> sharedSections) {
+    this.model = model;
+    this.sharedSections.addAll(sharedSections);
+  }
+
+  /**
+   * Make model which shares data with the pom instead of deep cloning. Top
+   * level sections of the model are cloned only when they are changed for
+   * first time, so that the pom is never changed. The pom must not be changed
+   * while the result is in use. An interned pom is deep cloned, because its
+   * equal leaf objects are the same instance for the model merger.
+   *
+   * @param pom pom to be wrapped, must not be null
+   * @return copy-on-write model for the pom
+   * @since 1.0.4
+   */
+  public static UPomModel wrap(final Model pom) {
+    if (ModelInterner.isInterned(pom)) {
+      return new UPomModel(pom);
+    }
+    final Model copy = new Model();
+    final List<Field> shared = new ArrayList<Field>();
+    for (final Field f : ModelAccessors.findInstanceFields(Model.class)) {
+      final Object value = ModelAccessors.getValue(f, pom);
+      ModelAccessors.setValue(f, copy, value);
+      if (isMutable(value)) {
+        shared.add(f);
       }
     }
+    return new UPomModel(copy, shared);
+  }
 
-    this.model.setDependencies(kept);
+  /**
+   * Read pom file through cache of parsed poms. The cached model is wrapped,
+   * so that it is never changed.
+   *
+   * @param pom pom file, must not be null
+   * @param cache cache of parsed poms, must not be null
+   * @return copy-on-write model for the pom
+   * @throws Exception if the file can't be read or parsed
+   * @since 1.0.4
+   */
+  public static UPomModel read(final File pom, final ParsedPomCache cache) throws Exception {
+    return wrap(cache.get(pom));
+  }
 
-    return removed;
+  private static boolean isMutable(final Object value) {
+    return value != null
+            && !(value instanceof String
+            || value instanceof Number
+            || value instanceof Boolean
+            || value instanceof Character);
   }
 
-  private static Node findFirstElement(final Node node) {
-    if (node == null) {
-      return null;
-    }
-    Node result = node.getFirstChild();
-    while (result != null && result.getNodeType() != Node.ELEMENT_NODE) {
-      result = result.getNextSibling();
-    }
-    return result;
+  private static Field findSection(final ModelPath path) {
+    return ModelAccessors.findDeclaredField(Model.class, path.step(0).baseName());
   }
 
-  private static Node nextSiblingElement(final Node node) {
-    if (node == null) {
-      return null;
+  private void detachSections(final Collection<Field> sections) {
+    final Model holder = new Model();
+    for (final Field f : sections) {
+      ModelAccessors.setValue(f, holder, ModelAccessors.getValue(f, this.model));
     }
-    Node next = node.getNextSibling();
-    while (next != null && next.getNodeType() != Node.ELEMENT_NODE) {
-      next = next.getNextSibling();
+    final Model cloned = holder.clone();
+    for (final Field f : sections) {
+      ModelAccessors.setValue(f, this.model, ModelAccessors.getValue(f, cloned));
     }
-    return next;
+    this.sharedSections.removeAll(sections);
   }
 
-  private static void insideElementJanitor(final Log log, final Node node, final List<String> path) {
-    path.add(node.getNodeName());
-    Node element = findFirstElement(node);
-    while (element != null) {
-      duplicatedSiblingJanitor(log, element, path);
-      element = nextSiblingElement(element);
+  private void detachAll() {
+    if (!this.sharedSections.isEmpty()) {
+      detachSections(new ArrayList<Field>(this.sharedSections));
     }
-    path.remove(path.size() - 1);
   }
 
-  private static String pathToString(final List<String> path) {
-    final StringBuilder result = new StringBuilder();
-    for (final String s : path) {
-      if (result.length() > 0) {
-        result.append('/');
-      }
-      result.append(s);
+  private void detach(final ModelPath path) {
+    final Field section = findSection(path);
+    if (section == null) {
+      detachAll();
+    } else if (this.sharedSections.contains(section)) {
+      detachSections(Collections.singletonList(section));
     }
-    return result.toString();
   }
 
-  private static void duplicatedSiblingJanitor(final Log log, final Node node, final List<String> path) {
-    if (node == null) {
-      return;
-    }
+  public List<Dependency> removeDependencies(final List<DependencyPattern> patterns) {
+    return removeDependencies(new DependencyPatternMatcher(patterns));
+  }
+
+  public List<Dependency> removeDependencies(final DependencyPatternMatcher matcher) {
+    return removeDependencies(matcher, null).getAllRemoved();
+  }
 
-    insideElementJanitor(log, node, path);
-    Node sibling = nextSiblingElement(node);
-    while (sibling != null) {
-      insideElementJanitor(log, sibling, path);
-      sibling = nextSiblingElement(sibling);
+  /**
+   * Remove matched dependencies from all dependency containers of the model:
+   * dependencies, dependency management, plugin dependencies of build and
+   * plugin management, and the same containers in profiles.
+   *
+   * @param matcher matcher of dependencies to be removed, must not be null
+   * @param executor executor to match big lists in parallel, can be null
+   * @return report of removed dependencies grouped by containers
+   * @since 1.0.4
+   */
+  public DependencyRemovalReport removeDependencies(final DependencyPatternMatcher matcher, final ExecutorService executor) {
+    final DependencyFilter filter = new DependencyFilter(matcher, executor);
+    if (!matcher.isEmpty()) {
+      filter.filter(this.model);
     }
+    return filter.getReport();
+  }
 
-    sibling = nextSiblingElement(node);
-    while (sibling != null) {
-      if (node.isEqualNode(sibling)) {
-        path.add(node.getNodeName());
-        final Node deleting = sibling;
-        sibling = nextSiblingElement(sibling);
-        if (log != null) {
-          log.warn("Removing duplicated element : " + pathToString(path));
-        }
-        deleting.getParentNode().removeChild(deleting);
-        path.remove(path.size() - 1);
+  private static void logJanitorMode(final Log log, final boolean removeDuplicatedSiblings) {
+    if (log != null) {
+      if (removeDuplicatedSiblings) {
+        log.warn("Activated search and removing of duplicated sibling elements!");
       } else {
-        sibling = nextSiblingElement(sibling);
+        log.info("Search and removing of duplicated sibling elements is OFF");
       }
     }
   }
 
-  private static String findAndRemoveDuplicatedSiblings(final Log log, final String xmlText) throws Exception {
-    final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    final DocumentBuilder builder = factory.newDocumentBuilder();
-    final Document xmldoc = builder.parse(new InputSource(new StringReader(xmlText)));
-
-    insideElementJanitor(log, xmldoc, new ArrayList<String>());
-
-    final TransformerFactory tFactory = TransformerFactory.newInstance();
-    final Transformer transformer = tFactory.newTransformer();
-    final DOMSource source = new DOMSource(xmldoc);
-    final StringWriter buffer = new StringWriter(xmlText.length());
-    final StreamResult result = new StreamResult(buffer);
-    transformer.transform(source, result);
-    return ((StringWriter) result.getWriter()).toString();
+  /**
+   * Remove duplicated sibling elements directly from the model, without
+   * writing and parsing of XML. Elements are compared by content of their
+   * model objects.
+   *
+   * @param log log to print removed elements, can be null
+   * @return number of removed elements
+   * @since 1.0.4
+   */
+  public int removeDuplicatedSiblings(final Log log) {
+    logJanitorMode(log, true);
+    detachAll();
+    return ModelSiblingJanitor.process(log, this.model);
   }
 
   public String asXML(final Log log, final boolean removeDuplicatedSiblings) throws Exception {
+    return asXML(log, removeDuplicatedSiblings, XmlEngines.getDefault());
+  }
+
+  /**
+   * Make XML text of the model.
+   *
+   * @param log log to print messages, can be null
+   * @param removeDuplicatedSiblings remove duplicated sibling elements
+   * @param engine engine to remove duplicated sibling elements, must not be
+   * null
+   * @return XML text of the model, must not be null
+   * @throws Exception if the model can't be written
+   * @since 1.0.4
+   */
+  public String asXML(final Log log, final boolean removeDuplicatedSiblings, final XmlEngine engine) throws Exception {
     final MavenXpp3Writer mavenWritter = new MavenXpp3Writer();
     final StringWriter buffer = new StringWriter(16384);
     mavenWritter.write(buffer, this.model);
     String result = buffer.toString();
+    logJanitorMode(log, removeDuplicatedSiblings);
     if (removeDuplicatedSiblings) {
-      if (log != null) {
-        log.warn("Activated search and removing of duplicated sibling elements!");
-      }
-      result = findAndRemoveDuplicatedSiblings(log, result);
-    } else if (log != null) {
-      log.info("Search and removing of duplicated sibling elements is OFF");
+      final StringWriter cleared = new StringWriter(result.length());
+      engine.removeDuplicatedSiblings(log, new StringReader(result), cleared, null);
+      result = cleared.toString();
     }
     return result;
   }
 
+  /**
+   * Write the model as UTF-8 XML into a file without building the document
+   * in memory. The document is written into a temporary file in the same
+   * folder which then replaces the target file, so that readers never see a
+   * partially written file.
+   *
+   * @param file target file, must not be null
+   * @param log log to print messages, can be null
+   * @param removeDuplicatedSiblings remove duplicated sibling elements
+   * @throws Exception if the model can't be written
+   * @since 1.0.4
+   */
+  public void write(final File file, final Log log, final boolean removeDuplicatedSiblings) throws Exception {
+    write(file, log, removeDuplicatedSiblings, XmlEngines.getDefault(), null, PipelineMetrics.DISABLED);
+  }
+
+  /**
+   * Write the model as UTF-8 XML into a file, big subtrees are cleaned from
+   * duplicated sibling elements in parallel.
+   *
+   * @param file target file, must not be null
+   * @param log log to print messages, can be null
+   * @param removeDuplicatedSiblings remove duplicated sibling elements
+   * @param janitorExecutor executor to clean big subtrees, can be null for
+   * sequential processing
+   * @throws Exception if the model can't be written
+   * @since 1.0.4
+   */
+  public void write(final File file, final Log log, final boolean removeDuplicatedSiblings, final ExecutorService janitorExecutor) throws Exception {
+    write(file, log, removeDuplicatedSiblings, XmlEngines.getDefault(), janitorExecutor, PipelineMetrics.DISABLED);
+  }
+
+  /**
+   * Write the model as UTF-8 XML into a file, duplicated sibling elements
+   * are removed by the provided engine.
+   *
+   * @param file target file, must not be null
+   * @param log log to print messages, can be null
+   * @param removeDuplicatedSiblings remove duplicated sibling elements
+   * @param engine engine to remove duplicated sibling elements, must not be
+   * null
+   * @param janitorExecutor executor to process big documents in parallel,
+   * can be null for sequential processing
+   * @throws Exception if the model can't be written
+   * @since 1.0.4
+   */
+  public void write(final File file, final Log log, final boolean removeDuplicatedSiblings, final XmlEngine engine, final ExecutorService janitorExecutor) throws Exception {
+    write(file, log, removeDuplicatedSiblings, engine, janitorExecutor, PipelineMetrics.DISABLED);
+  }
+
+  void write(final File file, final Log log, final boolean removeDuplicatedSiblings, final boolean modelJanitor, final XmlEngine engine,
+          final ExecutorService janitorExecutor, final PipelineMetrics metrics) throws Exception {
+    if (removeDuplicatedSiblings && modelJanitor) {
+      metrics.begin("model janitor");
+      removeDuplicatedSiblings(log);
+      write(file, null, false, engine, null, metrics);
+    } else {
+      write(file, log, removeDuplicatedSiblings, engine, janitorExecutor, metrics);
+    }
+  }
+
+  void write(final File file, final Log log, final boolean removeDuplicatedSiblings, final XmlEngine engine, final ExecutorService janitorExecutor, final PipelineMetrics metrics) throws Exception {
+    final File folder = file.getAbsoluteFile().getParentFile();
+    FileUtils.forceMkdir(folder);
+
+    logJanitorMode(log, removeDuplicatedSiblings);
+
+    final File modelFile = File.createTempFile(file.getName(), ".tmp", folder);
+    File resultFile = modelFile;
+    try {
+      metrics.begin("serialization");
+      final Writer modelWriter = openChannelWriter(modelFile);
+      try {
+        new MavenXpp3Writer().write(modelWriter, this.model);
+      } finally {
+        modelWriter.close();
+      }
+
+      if (removeDuplicatedSiblings) {
+        metrics.begin("janitor", janitorExecutor != null);
+        resultFile = File.createTempFile(file.getName(), ".tmp", folder);
+        final Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(modelFile), "UTF-8"), CHANNEL_BUFFER_SIZE);
+        try {
+          final Writer writer = openChannelWriter(resultFile);
+          try {
+            engine.removeDuplicatedSiblings(log, reader, writer, janitorExecutor);
+          } finally {
+            writer.close();
+          }
+        } finally {
+          reader.close();
+        }
+      }
+
+      metrics.begin("file move");
+      replaceFile(resultFile, file);
+      metrics.end();
+    } finally {
+      FileUtils.deleteQuietly(modelFile);
+      FileUtils.deleteQuietly(resultFile);
+    }
+  }
+
+  private static Writer openChannelWriter(final File file) throws IOException {
+    final FileChannel channel = new FileOutputStream(file).getChannel();
+    return new BufferedWriter(Channels.newWriter(channel, "UTF-8"), CHANNEL_BUFFER_SIZE);
+  }
+
+  private static void replaceFile(final File source, final File target) throws IOException {
+    if (!source.renameTo(target)) {
+      // some platforms can't rename over existing file
+      if (target.isFile() && !target.delete()) {
+        throw new IOException("Can't delete file " + target.getAbsolutePath());
+      }
+      if (!source.renameTo(target)) {
+        throw new IOException("Can't move file " + source.getAbsolutePath() + " to " + target.getAbsolutePath());
+      }
+    }
+  }
+
   public void saveState(final String... keepPaths) throws Exception {
     this.savedValues.clear();
+    final List<PathEdit> edits = new ArrayList<PathEdit>(keepPaths.length);
     for (final String p : keepPaths) {
-      this.savedValues.put(p, this.processPathStepToGet(splitPath(p), 0, this.model));
+      edits.add(PathEdit.get(p));
+    }
+    apply(edits);
+    for (final PathEdit e : edits) {
+      this.savedValues.put(e.getPath(), e.check().getValue());
     }
   }
 
   public void restoreState() throws Exception {
-    for (final Map.Entry<String, Object> e : this.savedValues.entrySet()) {
-      this.processPathStepToSet(splitPath(e.getKey()), 0, this.model, e.getValue());
-    }
+    restoreValues(this.savedValues);
   }
 
   public void restoreStateFrom(final UPomModel model) throws Exception {
-    for (final Map.Entry<String, Object> e : model.savedValues.entrySet()) {
-      this.processPathStepToSet(splitPath(e.getKey()), 0, this.model, e.getValue());
+    restoreValues(model.savedValues);
+  }
+
+  private void restoreValues(final Map<String, Object> values) throws Exception {
+    final List<PathEdit> edits = new ArrayList<PathEdit>(values.size());
+    for (final Map.Entry<String, Object> e : values.entrySet()) {
+      edits.add(PathEdit.set(e.getKey(), e.getValue()));
+    }
+    apply(edits);
+    for (final PathEdit e : edits) {
+      e.check();
     }
   }
 
   public Model getModel() {
+    detachAll();
+    return this.model;
+  }
+
+  /**
+   * Get model without cloning of shared sections, the result must not be
+   * changed.
+   *
+   * @return the model
+   */
+  Model peekModel() {
     return this.model;
   }
 
   public UPomModel merge(final UPomModel other) throws Exception {
-    final ModelMerger merger = new ModelMerger();
-    merger.merge(this.model, other.model, true, null);
+    return merge(other, MergeEngine.MODEL_MERGER);
+  }
+
+  /**
+   * Merge other model into the model, values of the other model are
+   * dominant.
+   *
+   * @param other model to be merged, must not be null
+   * @param engine engine to merge models, must not be null
+   * @return the model
+   * @throws Exception if the models can't be merged
+   * @since 1.0.4
+   */
+  public UPomModel merge(final UPomModel other, final MergeEngine engine) throws Exception {
+    // merger replaces lists and properties but merges into single objects,
+    // elements of the other model are shared by reference
+    final List<Field> touched = new ArrayList<Field>();
+    final List<Field> changedInPlace = new ArrayList<Field>();
+    for (final Field f : ModelAccessors.findInstanceFields(Model.class)) {
+      if (isMutable(ModelAccessors.getValue(f, other.model))) {
+        touched.add(f);
+        final Object value = ModelAccessors.getValue(f, this.model);
+        if (this.sharedSections.contains(f) && !(value instanceof Collection || value instanceof Map)) {
+          changedInPlace.add(f);
+        }
+      }
+    }
+    if (!changedInPlace.isEmpty()) {
+      detachSections(changedInPlace);
+    }
+
+    engine.getMerger().merge(this.model, other.model, true, null);
+    this.sharedSections.addAll(touched);
     return this;
   }
 
+  /**
+   * Merge list of models into new model, the result is the same as merging
+   * of every next model into the first one, later models are dominant. Models
+   * are merged through balanced pairwise reduction: neighbour models are
+   * merged in pairs, then the pairs are merged in the same way, so that every
+   * merge works with comparable models instead of growing accumulator. Merge
+   * keeps order of operands, so precedence of values and order of list
+   * elements are not changed. Pairs of one round are independent and can be
+   * merged in parallel. Provided models are not changed.
+   *
+   * @param models models to be merged, must not be null or empty
+   * @param engine engine to merge models, must not be null
+   * @param executor executor to merge pairs in parallel, can be null for
+   * sequential merging, must not be the executor of the calling task
+   * @return new merged model, must not be null
+   * @throws Exception if the models can't be merged
+   * @since 1.0.4
+   */
+  public static UPomModel mergeAll(final List<UPomModel> models, final MergeEngine engine, final ExecutorService executor) throws Exception {
+    if (models.isEmpty()) {
+      throw new UPomException("List of models to merge must not be empty");
+    }
+
+    List<UPomModel> round = new ArrayList<UPomModel>(models.size());
+    for (final UPomModel m : models) {
+      round.add(wrap(m.model));
+    }
+
+    while (round.size() > 1) {
+      final List<Callable<UPomModel>> pairs = new ArrayList<Callable<UPomModel>>(round.size() / 2);
+      for (int i = 0; i + 1 < round.size(); i += 2) {
+        final UPomModel left = round.get(i);
+        final UPomModel right = round.get(i + 1);
+        pairs.add(new Callable<UPomModel>() {
+          @Override
+          public UPomModel call() throws Exception {
+            return left.merge(right, engine);
+          }
+        });
+      }
+
+      final List<UPomModel> next = new ArrayList<UPomModel>(pairs.size() + 1);
+      if (executor == null || pairs.size() < 2) {
+        for (final Callable<UPomModel> c : pairs) {
+          next.add(c.call());
+        }
+      } else {
+        for (final Future<UPomModel> f : executor.invokeAll(pairs)) {
+          try {
+            next.add(f.get());
+          } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            throw cause instanceof Exception ? (Exception) cause : ex;
+          }
+        }
+      }
+      if (round.size() % 2 != 0) {
+        next.add(round.get(round.size() - 1));
+      }
+      round = next;
+    }
+    return round.get(0);
+  }
+
+  /**
+   * Merge list of models into new model sequentially through balanced
+   * pairwise reduction.
+   *
+   * @param models models to be merged, must not be null or empty
+   * @return new merged model, must not be null
+   * @throws Exception if the models can't be merged
+   * @see #mergeAll(List, MergeEngine, ExecutorService)
+   * @since 1.0.4
+   */
+  public static UPomModel mergeAll(final List<UPomModel> models) throws Exception {
+    return mergeAll(models, MergeEngine.MODEL_MERGER, null);
+  }
+
   public boolean remove(final String removePath) throws Exception {
-    return processPathStepToSet(splitPath(removePath), 0, this.model, null);
+    return applyOne(PathEdit.remove(removePath)).isFound();
   }
 
   public void set(final String path, final String value) throws Exception {
-    this.processPathStepToSet(splitPath(path), 0, this.model, value);
+    applyOne(PathEdit.set(path, value));
   }
 
   public Object get(final String path) throws Exception {
-    return this.processPathStepToGet(splitPath(path), 0, this.model);
+    return applyOne(PathEdit.get(path)).getValue();
   }
 
-  private static Method findMethod(final Class klazz, final String methodName, final boolean onlyPublic) {
-    Method result = null;
-    for (final Method m : klazz.getMethods()) {
-      if (onlyPublic && !Modifier.isPublic(m.getModifiers())) {
-        continue;
-      }
-      if (m.getName().equalsIgnoreCase(methodName)) {
-        result = m;
-        break;
+  private PathEdit applyOne(final PathEdit edit) throws Exception {
+    apply(Collections.singletonList(edit));
+    return edit.check();
+  }
+
+  /**
+   * Apply batch of path operations. Paths are collected into a tree, so that
+   * every model object is visited only once for all paths which go through
+   * it. Operations over nested paths are applied in the order of the list
+   * through separated walks. Errors don't stop the batch, they are saved in
+   * the operations.
+   *
+   * @param edits operations to be applied, must not be null
+   * @throws Exception if the batch can't be applied
+   * @since 1.0.4
+   */
+  public void apply(final List<PathEdit> edits) throws Exception {
+    for (final PathEdit e : edits) {
+      e.reset();
+      if (!e.isGet()) {
+        detach(e.modelPath());
       }
     }
-    return result;
-  }
 
-  private static Field findDeclaredFieldForName(final Class klazz, final String fieldName) {
-    Field result = null;
-    Class curr = klazz;
-    while (curr.getName().startsWith(MAVEN_MODEL_PACKAGE_PREFIX)) {
-      for (final Field m : curr.getDeclaredFields()) {
-        if (m.getName().equalsIgnoreCase(fieldName)) {
-          result = m;
-          break;
+    final EditContext context = new EditContext();
+    int roundStart = 0;
+    while (roundStart < edits.size()) {
+      final PathNode root = new PathNode(null);
+      int index = roundStart;
+      nextEdit:
+      while (index < edits.size()) {
+        final PathEdit edit = edits.get(index);
+        for (int i = roundStart; i < index; i++) {
+          if (edit.dependsOn(edits.get(i))) {
+            break nextEdit;
+          }
         }
+        root.add(edit);
+        index++;
       }
-      if (result != null) {
-        result.setAccessible(true);
-        break;
+      for (final PathNode child : root.children()) {
+        applyNode(child, this.model, true, context);
       }
-      curr = klazz.getSuperclass();
+      roundStart = index;
     }
-    return result;
-  }
 
-  private static String makePathStr(final String[] path, final int toIndex) {
-    final StringBuilder result = new StringBuilder();
-    for (int i = 0; i <= toIndex; i++) {
-      if (result.length() > 0) {
-        result.append('/');
+    for (final PathEdit e : edits) {
+      if (e.kind() == PathEdit.Kind.SET && isMutable(e.newValue())) {
+        // the value can be taken from another model
+        final Field section = findSection(e.modelPath());
+        if (section != null) {
+          this.sharedSections.add(section);
+        }
       }
-      result.append(path[i]);
     }
-    return result.toString();
   }
 
   private static Collection cloneCollection(final Collection collection) throws Exception {
@@ -287,7 +588,7 @@ public final class UPomModel {
     if (obj == null) {
       return null;
     }
-    final Method clone = findMethod(obj.getClass(), "clone", true);
+    final Method clone = ModelAccessors.findMethod(obj.getClass(), "clone");
     final Object result;
     if (clone == null) {
       if (obj instanceof Map) {
@@ -307,7 +608,6 @@ public final class UPomModel {
     final Object currentValue = field.get(instance);
     if (currentValue == null) {
       if (value != null) {
-        field.setAccessible(true);
         field.set(instance, value);
       }
     } else if (currentValue instanceof Map) {
@@ -329,210 +629,435 @@ public final class UPomModel {
     return ensureCloning(field.get(instance));
   }
 
-  private boolean processPathStepToSet(final String[] path, final int pathStart, final Object instance, final Object value) throws Exception {
-    final String fieldName = path[pathStart];
+  private static void applyLeaf(final PathNode node, final Object instance, final PathEdit edit, final boolean first, final EditContext context) throws Exception {
+    final ModelPath.Step step = node.step();
+    if (edit.isGet()) {
+      if (!first) {
+        return;
+      }
+      final Method getter = step.getter(instance.getClass());
+      if (getter == null) {
+        throw new UPomException("Can't find model field '" + step.pathPrefix() + '\'');
+      }
 
-    if (pathStart == path.length - 1) {
-      // last step
-      // find setter
-      final Method setter = findMethod(instance.getClass(), "set" + fieldName, true);
+      final Class[] params = getter.getParameterTypes();
+      if (params.length == 0) {
+        edit.value(ensureCloning(getter.invoke(instance)));
+      } else {
+        final Field field = ModelAccessors.findDeclaredField(instance.getClass(), step.baseName());
+        if (field != null) {
+          edit.value(getField(instance, field));
+        } else {
+          throw new UPomException("Unsupported type for '" + step.pathPrefix() + "\'");
+        }
+      }
+    } else {
+      final Method setter = step.setter(instance.getClass());
       if (setter == null) {
-        throw new UPomException("Can't find model field '" + makePathStr(path, pathStart) + '\'');
+        throw new UPomException("Can't find model field '" + step.pathPrefix() + '\'');
       }
+      context.beforeChange(instance, step);
 
       final Class[] params = setter.getParameterTypes();
       if (params.length == 0) {
-        throw new UPomException("Detected zero setter '" + makePathStr(path, pathStart) + "\'");
+        throw new UPomException("Detected zero setter '" + step.pathPrefix() + "\'");
       } else if (params.length == 1) {
-        setter.invoke(instance, ensureCloning(value));
+        setter.invoke(instance, ensureCloning(edit.newValue()));
       } else {
-        final Field field = findDeclaredFieldForName(instance.getClass(), fieldName);
+        final Field field = ModelAccessors.findDeclaredField(instance.getClass(), step.baseName());
         if (field != null) {
-          setField(instance, field, value);
+          setField(instance, field, edit.newValue());
         } else {
-          throw new UPomException("Unsupported type for '" + makePathStr(path, pathStart) + "\'");
+          throw new UPomException("Unsupported type for '" + step.pathPrefix() + "\'");
         }
       }
-      return true;
+      edit.found(true);
+    }
+  }
+
+  private static void applyToCollection(final Collection collection, final PathEdit edit, final boolean first, final EditContext context) {
+    if (edit.isGet()) {
+      if (first) {
+        // take only the first value
+        edit.value(collection.isEmpty() ? null : collection.iterator().next());
+      }
     } else {
-      // find getter
-      final Method getter = findMethod(instance.getClass(), "get" + fieldName, true);
-      if (getter == null) {
-        throw new UPomException("Can't find model field '" + makePathStr(path, pathStart) + '\'');
+      context.invalidate(collection);
+      final Object value = edit.newValue();
+      collection.clear();
+      if (value == null) {
+        edit.found(true);
+      } else if (value instanceof Collection) {
+        for (final Object obj : ((Collection) value)) {
+          collection.add(obj);
+        }
+        edit.found(true);
+      } else {
+        edit.found(collection.add(value));
       }
-      final Object nextInstance = getter.invoke(instance);
-      if (nextInstance == null) {
-        return false;
+    }
+  }
+
+  private static void applyToSelected(final Collection collection, final String elementTypeName, final List<Object> selected,
+          final ModelPath.Step step, final PathEdit edit, final boolean first, final EditContext context) throws Exception {
+    if (edit.isGet()) {
+      if (first) {
+        edit.value(selected.isEmpty() ? null : ensureCloning(selected.get(0)));
       }
+      return;
+    }
+    if (!(collection instanceof List)) {
+      throw new UPomException("Elements can be selected only in lists '" + step.pathPrefix() + '\'');
+    }
+    final Object value = edit.newValue();
+    if (value != null && (value instanceof Collection
+            || !elementTypeName.endsWith('.' + value.getClass().getSimpleName().toLowerCase(Locale.ENGLISH)))) {
+      throw new UPomException("Wrong type of value for '" + step.pathPrefix() + '\'');
+    }
+    if (selected.isEmpty()) {
+      return;
+    }
 
-      final boolean theNextPathItemIsLastOne = path.length - 1 == pathStart + 1;
-      if (nextInstance instanceof Collection) {
-        final Type returnType = getter.getGenericReturnType();
-        if (returnType instanceof ParameterizedType) {
-          final ParameterizedType paramType = (ParameterizedType) returnType;
-          final Type[] argTypes = paramType.getActualTypeArguments();
-
-          if (theNextPathItemIsLastOne) {
-            if (value == null) {
-              ((Collection) nextInstance).clear();
-              return true;
-            } else if (value instanceof Collection) {
-              ((Collection) nextInstance).clear();
-              for (final Object obj : ((Collection) value)) {
-                ((Collection) nextInstance).add(obj);
-              }
-              return true;
-            } else {
-              ((Collection) nextInstance).clear();
-              return ((Collection) nextInstance).add(value);
-            }
-          }
+    final Set<Object> chosen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    chosen.addAll(selected);
+    final List list = (List) collection;
+    if (value == null) {
+      final List<Object> kept = new ArrayList<Object>(list.size());
+      for (final Object e : list) {
+        if (!chosen.contains(e)) {
+          kept.add(e);
+        }
+      }
+      list.clear();
+      list.addAll(kept);
+      context.markRemoved(collection, selected);
+    } else {
+      context.invalidate(collection);
+      for (final ListIterator it = list.listIterator(); it.hasNext();) {
+        if (chosen.contains(it.next())) {
+          it.set(ensureCloning(value));
+        }
+      }
+    }
+    edit.found(true);
+  }
+
+  private static void applyToMap(final Map map, final String key, final PathEdit edit, final boolean first) {
+    if (edit.isGet()) {
+      if (first) {
+        edit.value(map.get(key));
+      }
+    } else {
+      if (edit.newValue() == null) {
+        map.remove(key);
+      } else {
+        map.put(key, edit.newValue());
+      }
+      edit.found(true);
+    }
+  }
+
+  private static void applyToAllEntries(final Map map, final PathEdit edit, final boolean first) throws Exception {
+    if (edit.isGet()) {
+      if (first) {
+        edit.value(map.isEmpty() ? null : ensureCloning(map.values().iterator().next()));
+      }
+    } else if (!map.isEmpty()) {
+      if (edit.newValue() == null) {
+        map.clear();
+      } else {
+        for (final Object e : map.entrySet()) {
+          ((Map.Entry) e).setValue(ensureCloning(edit.newValue()));
+        }
+      }
+      edit.found(true);
+    }
+  }
+
+  private static void failNode(final PathNode node, final Exception error) {
+    for (final PathEdit e : node.edits()) {
+      e.fail(error);
+    }
+    node.failChildren(error);
+  }
 
-          final String nextPathItem = path[pathStart + 1].toLowerCase(Locale.ENGLISH);
-          if (argTypes[0].toString().toLowerCase(Locale.ENGLISH).endsWith(nextPathItem)) {
-            boolean result = false;
-            for (final Object collectionItem : (Collection) nextInstance) {
-              result |= processPathStepToSet(path, pathStart + 2, collectionItem, value);
+  private static void applyToCollectionNode(final PathNode node, final Collection collection, final String elementTypeName,
+          final boolean first, final EditContext context) throws Exception {
+    for (final PathNode child : node.children()) {
+      final ModelPath.Step childStep = child.step();
+      if (!childStep.isSelective()) {
+        for (final PathEdit e : child.edits()) {
+          applyToCollection(collection, e, first, context);
+        }
+        if (child.children().isEmpty()) {
+          continue;
+        }
+        if (elementTypeName.endsWith(childStep.lowerCaseName())) {
+          boolean firstElement = first;
+          for (final Object collectionItem : collection) {
+            for (final PathNode grandChild : child.children()) {
+              applyNode(grandChild, collectionItem, firstElement, context);
             }
-            return result;
-          } else {
-            throw new UPomException("Collection element type is not '" + makePathStr(path, pathStart + 1) + '\'');
+            firstElement = false;
           }
         } else {
-          throw new UPomException("Can't find model field '" + makePathStr(path, pathStart) + '\'');
+          child.failChildren(new UPomException("Collection element type is not '" + childStep.pathPrefix() + '\''));
         }
-      } else if (nextInstance instanceof Map) {
-        final Map map = (Map) nextInstance;
-        final String nextPathItem = path[pathStart + 1];
-        if (theNextPathItemIsLastOne) {
-          if (value == null) {
-            map.remove(nextPathItem);
-          } else {
-            map.put(nextPathItem, value);
+      } else if (childStep.error() != null) {
+        failNode(child, new UPomException(childStep.error()));
+      } else if (!childStep.isWildcard() && elementTypeName.contains(MODEL_PACKAGE) && !elementTypeName.endsWith(childStep.lowerCaseName())) {
+        // elements of not model types (like modules) can be selected through any name
+        failNode(child, new UPomException("Collection element type is not '" + childStep.pathPrefix() + '\''));
+      } else {
+        final List<Object> selected;
+        try {
+          selected = context.select(collection, childStep);
+        } catch (Exception ex) {
+          failNode(child, ex);
+          continue;
+        }
+        for (final PathEdit e : child.edits()) {
+          try {
+            applyToSelected(collection, elementTypeName, selected, childStep, e, first, context);
+          } catch (Exception ex) {
+            e.fail(ex);
+          }
+        }
+        if (!child.children().isEmpty()) {
+          boolean firstElement = first;
+          for (final Object element : selected) {
+            for (final PathNode grandChild : child.children()) {
+              applyNode(grandChild, element, firstElement, context);
+            }
+            firstElement = false;
           }
-          return true;
-        } else {
-          return map.containsKey(nextPathItem) ? processPathStepToSet(path, pathStart + 2, map.get(nextPathItem), value) : false;
         }
-      } else {
-        return processPathStepToSet(path, pathStart + 1, nextInstance, value);
       }
     }
   }
 
-  private Object processPathStepToGet(final String[] path, final int pathStart, final Object instance) throws Exception {
-    final String fieldName = path[pathStart];
-
-    if (pathStart == path.length - 1) {
-      // last step
-      // find getter
-      final Method getter = findMethod(instance.getClass(), "get" + fieldName, true);
-      if (getter == null) {
-        throw new UPomException("Can't find model field '" + makePathStr(path, pathStart) + '\'');
+  private static void applyToMapNode(final PathNode node, final Map map, final boolean first, final EditContext context) throws Exception {
+    for (final PathNode child : node.children()) {
+      final ModelPath.Step childStep = child.step();
+      if (!childStep.isSelective()) {
+        final String key = childStep.name();
+        for (final PathEdit e : child.edits()) {
+          applyToMap(map, key, e, first);
+        }
+        if (!child.children().isEmpty() && map.containsKey(key)) {
+          for (final PathNode grandChild : child.children()) {
+            applyNode(grandChild, map.get(key), first, context);
+          }
+        }
+      } else if (childStep.isWildcard() && childStep.predicates().length == 0) {
+        for (final PathEdit e : child.edits()) {
+          try {
+            applyToAllEntries(map, e, first);
+          } catch (Exception ex) {
+            e.fail(ex);
+          }
+        }
+        if (!child.children().isEmpty()) {
+          boolean firstEntry = first;
+          for (final Object value : new ArrayList<Object>(map.values())) {
+            for (final PathNode grandChild : child.children()) {
+              applyNode(grandChild, value, firstEntry, context);
+            }
+            firstEntry = false;
+          }
+        }
+      } else {
+        failNode(child, new UPomException("Predicates can't be used for map entries '" + childStep.pathPrefix() + '\''));
       }
+    }
+  }
 
-      final Class[] params = getter.getParameterTypes();
-      if (params.length == 0) {
-        return ensureCloning(getter.invoke(instance));
-      } else {
-        final Field field = findDeclaredFieldForName(instance.getClass(), fieldName);
-        if (field != null) {
-          return getField(instance, field);
-        } else {
-          throw new UPomException("Unsupported type for '" + makePathStr(path, pathStart) + "\'");
+  private static void applyNode(final PathNode node, final Object instance, final boolean first, final EditContext context) {
+    final ModelPath.Step step = node.step();
+    if (step.isSelective()) {
+      failNode(node, new UPomException("Wildcards and predicates can select only collection elements and map entries '" + step.pathPrefix() + '\''));
+      return;
+    }
+    try {
+      for (final PathEdit e : node.edits()) {
+        try {
+          applyLeaf(node, instance, e, first, context);
+        } catch (Exception ex) {
+          e.fail(ex);
         }
       }
-    } else {
-      // find getter
-      final Method getter = findMethod(instance.getClass(), "get" + fieldName, true);
+
+      if (node.children().isEmpty()) {
+        return;
+      }
+
+      final Method getter = step.getter(instance.getClass());
       if (getter == null) {
-        throw new UPomException("Can't find model field '" + makePathStr(path, pathStart) + '\'');
+        throw new UPomException("Can't find model field '" + step.pathPrefix() + '\'');
       }
       final Object nextInstance = getter.invoke(instance);
       if (nextInstance == null) {
-        return false;
+        if (first) {
+          for (final PathNode child : node.children()) {
+            child.markGets(Boolean.FALSE);
+          }
+        }
+        return;
       }
 
-      final boolean theNextPathItemIsLastOne = path.length - 1 == pathStart + 1;
-
       if (nextInstance instanceof Collection) {
-        final Type returnType = getter.getGenericReturnType();
-        if (returnType instanceof ParameterizedType) {
-          final ParameterizedType paramType = (ParameterizedType) returnType;
-          final Type[] argTypes = paramType.getActualTypeArguments();
-
-          if (theNextPathItemIsLastOne) {
-            // take only the first value
-            return ((Collection) nextInstance).isEmpty() ? null : ((Collection) nextInstance).iterator().next();
-          }
-
-          final String nextPathItem = path[pathStart + 1].toLowerCase(Locale.ENGLISH);
-          if (argTypes[0].toString().toLowerCase(Locale.ENGLISH).endsWith(nextPathItem)) {
-            return ((Collection) nextInstance).isEmpty() ? null
-                    : processPathStepToGet(path, pathStart + 2, ((Collection) nextInstance).iterator().next());
-          } else {
-            throw new UPomException("Collection element type is not '" + makePathStr(path, pathStart + 1) + '\'');
-          }
-        } else {
-          throw new UPomException("Can't find model field '" + makePathStr(path, pathStart) + '\'');
+        final String elementTypeName = ModelAccessors.findElementTypeName(getter);
+        if (elementTypeName == null) {
+          throw new UPomException("Can't find model field '" + step.pathPrefix() + '\'');
         }
+        applyToCollectionNode(node, (Collection) nextInstance, elementTypeName, first, context);
       } else if (nextInstance instanceof Map) {
-        final Map map = (Map) nextInstance;
-        final String nextPathItem = path[pathStart + 1];
-        if (theNextPathItemIsLastOne) {
-          return map.get(nextPathItem);
-        } else {
-          return map.containsKey(nextPathItem) ? processPathStepToGet(path, pathStart + 2, map.get(nextPathItem)) : null;
-        }
+        applyToMapNode(node, (Map) nextInstance, first, context);
       } else {
-        return processPathStepToGet(path, pathStart + 1, nextInstance);
+        for (final PathNode child : node.children()) {
+          applyNode(child, nextInstance, first, context);
+        }
       }
+    } catch (Exception ex) {
+      node.failChildren(ex);
     }
   }
 
-  public void injectIntoProject(final Log log, final MavenProject project) throws Exception {
-    for (final Method setter : project.getClass().getMethods()) {
-      if (Modifier.isAbstract(setter.getModifiers()) || Modifier.isStatic(setter.getModifiers())) {
-        continue;
+  /**
+   * State of a batch walk, it keeps indexes of collections selected through
+   * predicates. Indexes are dropped when their collections or indexed fields
+   * are changed by the batch.
+   */
+  private static final class EditContext {
+
+    private final Map<Object, ElementIndex> indexes = new IdentityHashMap<Object, ElementIndex>();
+
+    List<Object> select(final Collection collection, final ModelPath.Step step) throws Exception {
+      if (step.predicates().length == 0) {
+        return new ArrayList<Object>(collection);
+      }
+      ElementIndex index = this.indexes.get(collection);
+      if (index == null) {
+        index = new ElementIndex(collection);
+        this.indexes.put(collection, index);
       }
+      return index.select(step.predicates());
+    }
 
-      final String methodName = setter.getName();
-      final Class<?>[] setterParams = setter.getParameterTypes();
-      if (setterParams.length == 1 && methodName.startsWith("set")) {
-        final String paramName = methodName.substring(3).toLowerCase(Locale.ENGLISH);
-        if (paramName.equals("build")) {
-          continue;
+    void markRemoved(final Collection collection, final List<Object> removed) {
+      final ElementIndex index = this.indexes.get(collection);
+      if (index != null) {
+        index.markRemoved(removed);
+      }
+    }
+
+    void invalidate(final Object collection) {
+      this.indexes.remove(collection);
+    }
+
+    void beforeChange(final Object instance, final ModelPath.Step step) throws Exception {
+      if (this.indexes.isEmpty()) {
+        return;
+      }
+      for (final ElementIndex index : this.indexes.values()) {
+        index.dropField(step.lowerCaseName());
+      }
+      final Method getter = step.getter(instance.getClass());
+      if (getter != null && getter.getParameterTypes().length == 0) {
+        this.indexes.remove(getter.invoke(instance));
+      }
+    }
+  }
+
+  /**
+   * Node of tree made from paths of a batch, it keeps operations for paths
+   * which end at the node.
+   */
+  private static final class PathNode {
+
+    private final ModelPath.Step step;
+    private Map<String, PathNode> children;
+    private List<PathEdit> edits;
+
+    PathNode(final ModelPath.Step step) {
+      this.step = step;
+    }
+
+    ModelPath.Step step() {
+      return this.step;
+    }
+
+    Collection<PathNode> children() {
+      return this.children == null ? Collections.<PathNode>emptyList() : this.children.values();
+    }
+
+    List<PathEdit> edits() {
+      return this.edits == null ? Collections.<PathEdit>emptyList() : this.edits;
+    }
+
+    void add(final PathEdit edit) {
+      final ModelPath path = edit.modelPath();
+      PathNode node = this;
+      for (int i = 0; i < path.length(); i++) {
+        final ModelPath.Step s = path.step(i);
+        if (node.children == null) {
+          node.children = new LinkedHashMap<String, PathNode>();
+        }
+        PathNode next = node.children.get(s.name());
+        if (next == null) {
+          next = new PathNode(s);
+          node.children.put(s.name(), next);
         }
+        node = next;
+      }
+      if (node.edits == null) {
+        node.edits = new ArrayList<PathEdit>(1);
+      }
+      node.edits.add(edit);
+    }
 
-        Method getter = null;
-        for (final Method g : this.model.getClass().getMethods()) {
-          final Class<?>[] getterParams = g.getParameterTypes();
-          if (getterParams.length == 0
-                  && (g.getName().equalsIgnoreCase("get" + paramName)
-                  || g.getName().equalsIgnoreCase("is" + paramName))) {
-            getter = g;
-            break;
-          }
+    void markGets(final Object value) {
+      for (final PathEdit e : edits()) {
+        if (e.isGet()) {
+          e.value(value);
         }
-        if (getter != null && setterParams[0].isAssignableFrom(getter.getReturnType())) {
-          final Object value = getter.invoke(this.model);
-          if (value == null) {
-            log.debug(getter.getName() + "() X-> " + setter.getName() + "()");
-          } else {
-            log.debug(getter.getName() + "() --> " + setter.getName() + "()");
-            setter.invoke(project, getter.invoke(this.model));
-          }
+      }
+      for (final PathNode c : children()) {
+        c.markGets(value);
+      }
+    }
+
+    void failChildren(final Exception error) {
+      for (final PathNode c : children()) {
+        for (final PathEdit e : c.edits()) {
+          e.fail(error);
         }
+        c.failChildren(error);
       }
     }
   }
 
-  private static String[] splitPath(final String path) {
-    final String[] result = path.trim().split("\\/");
-    return result;
+  public void injectIntoProject(final Log log, final MavenProject project) throws Exception {
+    injectIntoProject(log, project, false);
+  }
+
+  /**
+   * Inject values of the model into fields of a project.
+   *
+   * @param log log to print injected values, must not be null
+   * @param project project to get values, must not be null
+   * @param onlyChanged inject only values which are not equal to the current
+   * project values
+   * @throws Exception if a value can't be injected
+   * @since 1.0.4
+   */
+  public void injectIntoProject(final Log log, final MavenProject project, final boolean onlyChanged) throws Exception {
+    detachAll();
+    InjectionPlan.find(project.getClass(), this.model.getClass()).inject(log, this.model, project, onlyChanged);
   }
 
   public void assignTo(final MavenProject project) {
+    detachAll();
     project.setOriginalModel(this.model);
   }
 
@@ -16,12 +16,17 @@
 package com.igormaznitsa.upom;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Model;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.*;
 import org.apache.maven.project.MavenProject;
 
@@ -36,12 +41,28 @@ public class UPomMojo extends AbstractMojo {
 
   public static final String LINE_SEPARATOR = System.getProperty("line.separator", "/r/n");
 
+  private static final String FINGERPRINT_FORMAT = "upom-fingerprint-2";
+
   /**
    * The Project to be processed.
    */
   @Parameter(defaultValue = "${project}", readonly = true)
   protected MavenProject project;
 
+  /**
+   * The Current maven session.
+   */
+  @Parameter(defaultValue = "${session}", readonly = true)
+  protected MavenSession session;
+
+  /**
+   * Descriptor of the plugin, its version is a part of fingerprint.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(defaultValue = "${plugin}", readonly = true)
+  protected PluginDescriptor plugin;
+
   /**
    * The Folder where the uber-pom should be saved.
    */
@@ -86,6 +107,15 @@ public class UPomMojo extends AbstractMojo {
   @Parameter(name = "enforceInjecting", defaultValue = "false")
   protected boolean enforceInjecting;
 
+  /**
+   * Inject only uber-pom values which are not equal to values of the current
+   * maven project model. It is used only if enforceInjecting is true.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "injectOnlyChanged", defaultValue = "false")
+  protected boolean injectOnlyChanged;
+
   /**
    * Delete generated pom file after session. Also can be replaced externally
    * through system property 'upom.delete.on.exit' which has bigger priority
@@ -115,6 +145,147 @@ public class UPomMojo extends AbstractMojo {
   @Parameter(name = "set")
   protected Properties set;
 
+  /**
+   * Reuse already existing uber-pom if neither the processed pom hierarchy nor
+   * the plugin configuration have been changed since its generation. The
+   * fingerprint of the generated uber-pom is saved in the same folder, in a
+   * file with the uber-pom name and the '.fingerprint' extension. The
+   * uber-pom is reused only if deleteOnExit is false. In the mode, as well
+   * as in the daemon mode, the model read from the saved uber-pom is
+   * assigned to the project, so that the project gets the same model for
+   * reused and for made uber-pom.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "incremental", defaultValue = "false")
+  protected boolean incremental;
+
+  /**
+   * Keep merged upper levels of hierarchy during maven session, so that
+   * modules with the same parents merge only their own pom over the cached
+   * result.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "cacheMergedParents", defaultValue = "true")
+  protected boolean cacheMergedParents;
+
+  /**
+   * Folder of persistent cache of merged parents, merged upper levels of
+   * hierarchy are saved there and reused by next builds while contents of
+   * the poms are not changed. The cache is not used if the folder is not
+   * defined.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "prefixCacheFolder")
+  protected File prefixCacheFolder;
+
+  /**
+   * Max size of the persistent cache of merged parents in kilobytes, the
+   * least recently used entries are removed.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "prefixCacheSize", defaultValue = "65536")
+  protected int prefixCacheSize = 65536;
+
+  /**
+   * Measure wall time and allocated bytes (if the JVM can count them) of
+   * every stage of uber-pom generation and save them as JSON report
+   * 'upom-metrics.json' in the metrics folder. Allocated bytes are counted
+   * only for the build thread, they are not reported for parallel stages.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "metrics", defaultValue = "false")
+  protected boolean metrics;
+
+  /**
+   * The Folder where the metrics report should be saved.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "metricsFolder", defaultValue = "${project.build.directory}")
+  protected File metricsFolder;
+
+  /**
+   * Port of local uber-pom daemon (com.igormaznitsa.upom.UPomDaemon) which
+   * keeps parsed and merged poms between builds. If the daemon is not
+   * running then uber-pom is made in the build process. Zero turns off
+   * usage of the daemon. The daemon is used only if the uber-pom is saved
+   * into the build folder of the project.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "daemonPort", property = "upom.daemon.port", defaultValue = "0")
+  protected int daemonPort;
+
+  /**
+   * Engine to merge models of hierarchy. MODEL_MERGER is the generic merger
+   * from maven-model, KEYED merges big lists (dependencies, dependency
+   * management, plugins, executions, profiles, developers) through hash
+   * index of their management keys and doesn't duplicate repeated equal
+   * elements.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "mergeEngine", defaultValue = "MODEL_MERGER")
+  protected MergeEngine mergeEngine = MergeEngine.MODEL_MERGER;
+
+  /**
+   * Match big dependency lists in parallel during removing of dependencies.
+   * Dependencies are removed from all containers of the uber-pom:
+   * dependencies, dependency management, plugin dependencies and the same
+   * sections of profiles.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "parallelDependencyFiltering", defaultValue = "false")
+  protected boolean parallelDependencyFiltering;
+
+  /**
+   * Clean big subtrees of the uber-pom from duplicated sibling elements in
+   * parallel, it works only if removeSiblingDuplications is true. Small poms
+   * are processed sequentially.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "parallelSiblingJanitor", defaultValue = "false")
+  protected boolean parallelSiblingJanitor;
+
+  /**
+   * Remove duplicated sibling elements directly from the model before it is
+   * written, without parsing of the written XML. It works only if
+   * removeSiblingDuplications is true, xmlEngine and parallelSiblingJanitor
+   * are not used then.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "modelSiblingJanitor", defaultValue = "false")
+  protected boolean modelSiblingJanitor;
+
+  /**
+   * Name of XML engine to remove duplicated sibling elements, built-in
+   * engines are 'stax' and 'dom'. Other engines can be added into class path
+   * of the plugin as services of com.igormaznitsa.upom.XmlEngine.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "xmlEngine", defaultValue = StaxXmlEngine.NAME)
+  protected String xmlEngine = StaxXmlEngine.NAME;
+
+  /**
+   * Share equal strings, dependencies, exclusions, licenses and developers
+   * between uber-poms assigned to projects through session wide weak table,
+   * strings of cached merged parents are shared too. It decreases memory
+   * retained by big reactors.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "internModels", defaultValue = "false")
+  protected boolean internModels;
+
   public List<DependencyPattern> getRemoveDependencies() {
     return this.removeDependencies;
   }
@@ -151,10 +322,73 @@ public class UPomMojo extends AbstractMojo {
     return this.enforceInjecting;
   }
 
+  public boolean isInjectOnlyChanged() {
+    return this.injectOnlyChanged;
+  }
+
   public Properties getSet() {
     return this.set;
   }
 
+  public boolean isIncremental() {
+    return this.incremental;
+  }
+
+  public boolean isCacheMergedParents() {
+    return this.cacheMergedParents;
+  }
+
+  public File getPrefixCacheFolder() {
+    return this.prefixCacheFolder;
+  }
+
+  public int getPrefixCacheSize() {
+    return this.prefixCacheSize;
+  }
+
+  public int getDaemonPort() {
+    return this.daemonPort;
+  }
+
+  public MergeEngine getMergeEngine() {
+    return this.mergeEngine;
+  }
+
+  public boolean isParallelDependencyFiltering() {
+    return this.parallelDependencyFiltering;
+  }
+
+  public boolean isParallelSiblingJanitor() {
+    return this.parallelSiblingJanitor;
+  }
+
+  public boolean isModelSiblingJanitor() {
+    return this.modelSiblingJanitor;
+  }
+
+  public String getXmlEngine() {
+    return this.xmlEngine;
+  }
+
+  public boolean isMetrics() {
+    return this.metrics;
+  }
+
+  public File getMetricsFolder() {
+    return this.metricsFolder;
+  }
+
+  public boolean isInternModels() {
+    return this.internModels;
+  }
+
+  private ModelInterner getInterner() {
+    if (!this.internModels) {
+      return null;
+    }
+    return this.session == null ? new ModelInterner() : ModelInterner.forSession(this.session);
+  }
+
   private Model[] collectFullHierarchy(final MavenProject project) {
     final List<Model> result = new ArrayList<Model>();
     MavenProject current = project;
@@ -165,28 +399,172 @@ public class UPomMojo extends AbstractMojo {
     return result.toArray(new Model[result.size()]);
   }
 
-  private static UPomModel[] collectModels(final MavenProject project, final int depth) {
-    final List<UPomModel> result = new ArrayList<UPomModel>();
+  static Model[] collectModels(final MavenProject project, final int depth) {
+    final List<Model> result = new ArrayList<Model>();
+    int levels = depth < 0 ? Integer.MAX_VALUE : depth;
+    MavenProject current = project;
+    while (current != null && levels-- >= 0) {
+      result.add(0, current.getOriginalModel());
+      current = current.getParent();
+    }
+
+    return result.toArray(new Model[result.size()]);
+  }
+
+  private static String[] collectPomFiles(final MavenProject project, final int depth) {
+    final List<String> result = new ArrayList<String>();
     int levels = depth < 0 ? Integer.MAX_VALUE : depth;
     MavenProject current = project;
     while (current != null && levels-- >= 0) {
-      result.add(0, new UPomModel(current.getOriginalModel()));
+      final File file = current.getFile();
+      if (file == null || !file.isFile()) {
+        return null;
+      }
+      result.add(0, file.getAbsolutePath());
       current = current.getParent();
     }
+    return result.toArray(new String[result.size()]);
+  }
+
+  private boolean makeByDaemon(final File uberPomFile) throws IOException {
+    final String[] pomFiles = collectPomFiles(this.project, this.depth);
+    if (pomFiles == null) {
+      getLog().debug("Daemon is not used because not all poms of hierarchy are files");
+      return false;
+    }
+    final File buildFolder = UPomDaemon.findBuildFolder(this.project.getFile(), this.project.getOriginalModel());
+    if (!UPomDaemon.isInside(uberPomFile, buildFolder)) {
+      getLog().debug("Daemon is not used because uber-pom is not in the build folder " + buildFolder);
+      return false;
+    }
+    final String token = UPomDaemon.readToken(UPomDaemon.getDefaultTokenFolder(), this.daemonPort);
+    if (token == null) {
+      getLog().debug("Daemon is not used because its token is not found");
+      return false;
+    }
+    final DaemonRequest request = new DaemonRequest(token, pomFiles, uberPomFile.getAbsolutePath(), this.removeSiblingDuplications,
+            getLog().isDebugEnabled(), this.keep, this.remove, this.set, this.removeDependencies, this.mergeEngine, this.parallelDependencyFiltering,
+            this.parallelSiblingJanitor, this.xmlEngine, this.modelSiblingJanitor);
+    return UPomDaemon.send(this.daemonPort, request, getLog());
+  }
+
+  UPomModel mergeParents(final Model[] hierarchy, final PipelineMetrics metrics) throws Exception {
+    final int parents = hierarchy.length - 1;
+
+    final boolean sessionCache = this.cacheMergedParents && this.session != null;
+    if (parents < 2 || (!sessionCache && this.prefixCacheFolder == null)) {
+      metrics.begin("merge " + getNameOfModel(hierarchy[0]));
+      final UPomModel result = UPomModel.wrap(hierarchy[0]);
+      for (int i = 1; i < parents; i++) {
+        getLog().debug("Merging model");
+        metrics.begin("merge " + getNameOfModel(hierarchy[i]));
+        result.merge(UPomModel.wrap(hierarchy[i]), this.mergeEngine);
+      }
+      return result;
+    }
+
+    getLog().debug("Getting merged parents through cache");
+    metrics.begin("merge cached parents");
+    final MergedPrefixCache cache = sessionCache ? MergedPrefixCache.forSession(this.session, this.mergeEngine) : new MergedPrefixCache(this.mergeEngine);
+    final PrefixSnapshotStore store = this.prefixCacheFolder == null ? null
+            : PrefixSnapshotStore.forFolder(this.prefixCacheFolder, Math.max(1L, this.prefixCacheSize) * 1024L);
+    final Model[] parentModels = Arrays.copyOf(hierarchy, parents);
+    return UPomModel.wrap(cache.getMerged(parentModels, cache.makeKeys(parentModels), parents - 1, store, getInterner()));
+  }
+
+  private File getUberPomFile() {
+    return new File(this.folder, this.name);
+  }
+
+  private File getFingerprintFile() {
+    return new File(this.folder, this.name + ".fingerprint");
+  }
+
+  private String makeFingerprint(final Model[] models) throws Exception {
+    final Fingerprint result = new Fingerprint();
+    result.add(FINGERPRINT_FORMAT);
+    addPluginVersion(result);
+    result.add(Integer.toString(this.depth));
+    result.add(Boolean.toString(this.removeSiblingDuplications));
+    result.add(this.mergeEngine.name());
+    result.add(this.xmlEngine);
+    result.add(Boolean.toString(this.modelSiblingJanitor));
+    result.add(this.remove);
+    result.add(this.keep);
+    if (this.set == null) {
+      result.add((String) null);
+    } else {
+      final List<String> keys = new ArrayList<String>(this.set.stringPropertyNames());
+      Collections.sort(keys);
+      for (final String key : keys) {
+        result.add(key).add(this.set.getProperty(key));
+      }
+    }
+    result.add(Integer.toString(this.removeDependencies.size()));
+    for (final DependencyPattern p : this.removeDependencies) {
+      result.add(p.getGroupId()).add(p.getArtifactId()).add(p.getVersion()).add(p.getScope())
+              .add(p.getOptional()).add(p.getSystemPath()).add(p.getType()).add(p.getClassifier());
+    }
+    result.add(Integer.toString(models.length));
+    for (final Model m : models) {
+      result.add(m);
+    }
+    return result.toHex();
+  }
+
+  private void addPluginVersion(final Fingerprint fingerprint) {
+    if (this.plugin == null) {
+      fingerprint.add(UPomMojo.class.getPackage().getImplementationVersion());
+    } else {
+      fingerprint.add(this.plugin.getVersion());
+      // snapshot can be rebuilt without version change
+      final Artifact artifact = this.plugin.getPluginArtifact();
+      final File file = artifact == null ? null : artifact.getFile();
+      if (artifact != null && artifact.isSnapshot() && file != null) {
+        fingerprint.add(Long.toString(file.length())).add(Long.toString(file.lastModified()));
+      }
+    }
+  }
 
-    return result.toArray(new UPomModel[result.size()]);
+  private boolean isUpToDate(final String fingerprint) throws Exception {
+    final File uberPomFile = getUberPomFile();
+    final File fingerprintFile = getFingerprintFile();
+    if (uberPomFile.isFile() && fingerprintFile.isFile()) {
+      return fingerprint.equals(FileUtils.readFileToString(fingerprintFile, "UTF-8").trim());
+    }
+    return false;
   }
 
-  private void updateProjectForNewPom(final UPomModel upomModel, final File uberPomFile) throws Exception {
-    upomModel.assignTo(this.project);
+  private void saveFingerprint(final String fingerprint) throws Exception {
+    final File fingerprintFile = getFingerprintFile();
+    FileUtils.write(fingerprintFile, fingerprint, "UTF-8");
+    if (isDeleteOnExit()) {
+      fingerprintFile.deleteOnExit();
+    }
+  }
+
+  private void updateProjectForNewPom(final MavenProject project, final UPomModel upomModel, final File uberPomFile) throws Exception {
+    upomModel.assignTo(project);
     getLog().debug("Model assigned to project");
-    this.project.setFile(uberPomFile);
+    project.setFile(uberPomFile);
     getLog().debug("File has been set to project");
   }
 
-  private File saveUberPom(final UPomModel model) throws Exception {
-    final File uberPomFile = new File(this.folder, this.name);
-    FileUtils.write(uberPomFile, model.asXML(getLog(), isRemoveSiblingDuplications()), "UTF-8");
+  private File getMetricsFile() {
+    return new File(this.metricsFolder == null ? this.folder : this.metricsFolder, "upom-metrics.json");
+  }
+
+  private void saveMetrics(final PipelineMetrics metrics) throws Exception {
+    if (metrics.isEnabled()) {
+      final File metricsFile = getMetricsFile();
+      metrics.save(metricsFile, this.project.getId());
+      getLog().info("Metrics saved as '" + metricsFile.getAbsolutePath() + '\'');
+    }
+  }
+
+  private File saveUberPom(final UPomModel model, final PipelineMetrics metrics) throws Exception {
+    final File uberPomFile = getUberPomFile();
+    saveUberPom(model, uberPomFile, getLog(), metrics);
     if (isDeleteOnExit()) {
       getLog().info("NB! The Result uber-pom file marked to be removed after JVM session");
       uberPomFile.deleteOnExit();
@@ -194,7 +572,12 @@ public class UPomMojo extends AbstractMojo {
     return uberPomFile;
   }
 
-  private static String getNameOfModel(final Model model) {
+  void saveUberPom(final UPomModel model, final File uberPomFile, final Log log, final PipelineMetrics metrics) throws Exception {
+    model.write(uberPomFile, log, isRemoveSiblingDuplications(), this.modelSiblingJanitor, XmlEngines.find(this.xmlEngine),
+            this.parallelSiblingJanitor ? UPomPipeline.getWorkerExecutor() : null, metrics);
+  }
+
+  static String getNameOfModel(final Model model) {
     if (model == null) {
       return "";
     }
@@ -238,7 +621,7 @@ public class UPomMojo extends AbstractMojo {
     }
   }
 
-  private static String drawHierarchy(final Model[] fullHierarchy, final UPomModel[] processedHierarchy) {
+  private static String drawHierarchy(final Model[] fullHierarchy, final Model[] processedHierarchy) {
     final StringBuilder result = new StringBuilder();
 
     final int TAB = 4;
@@ -268,149 +651,123 @@ public class UPomMojo extends AbstractMojo {
         spaces(result, insets);
         result.append((char) 0x2517).append((char) 0x2501);
       }
-      result.append(getNameOfModel(processedHierarchy[i].getModel()));
+      result.append(getNameOfModel(processedHierarchy[i]));
       insets += TAB;
     }
     return result.toString();
   }
 
-  private static int getMaxStrLength(final String[] strs) {
-    if (strs == null || strs.length == 0) {
-      return 0;
-    }
-    int max = 0;
-    for (final String s : strs) {
-      if (s.length() > max) {
-        max = s.length();
-      }
-    }
-    return max;
+  UPomPipeline makePipeline() {
+    return new UPomPipeline(this.keep, this.remove, this.set, new DependencyPatternMatcher(this.removeDependencies), this.mergeEngine,
+            this.parallelDependencyFiltering);
   }
 
-  private static String makeDotString(final int length) {
-    final StringBuilder result = new StringBuilder(length);
-    for (int i = 0; i < length; i++) {
-      result.append('.');
-    }
-    return result.toString();
+  private void assignUberPom(final UPomModel main, final File uberPomFile) throws Exception {
+    assignUberPom(this.project, main, uberPomFile);
   }
 
-  private static String dependency2str(final Dependency dependency) {
-    final StringBuilder result = new StringBuilder();
+  void assignUberPom(final MavenProject project, final UPomModel main, final File uberPomFile) throws Exception {
+    final ModelInterner interner = getInterner();
+    if (interner != null) {
+      // the assigned model is deep cloned when it is merged by child modules
+      getLog().debug("Interning values of uber-pom");
+      interner.intern(main.getModel());
+    }
 
-    result.append("groupId=").append(dependency.getGroupId()).append(',')
-            .append("artifactId=").append(dependency.getArtifactId()).append(',')
-            .append("version=").append(dependency.getVersion()).append(',')
-            .append("type=").append(dependency.getType()).append(',')
-            .append("scope=").append(dependency.getScope()).append(',')
-            .append("systemPath=").append(dependency.getSystemPath()).append(',')
-            .append("classifier=").append(dependency.getClassifier()).append(',')
-            .append("optional=").append(dependency.getOptional());
+    getLog().debug("Injecting new uber-pom into project");
+    updateProjectForNewPom(project, main, uberPomFile);
 
-    return result.toString();
+    getLog().info("Uber-pom assigned to project");
+
+    if (this.isEnforceInjecting()) {
+      getLog().info("NB! Injecting generated uber-pom parameters into internal project fields!");
+      main.injectIntoProject(getLog(), project, this.isInjectOnlyChanged());
+    }
   }
 
   @Override
   public void execute() throws MojoExecutionException {
-    String strToPrint = null;
+    final PipelineMetrics metrics = this.isMetrics() ? new PipelineMetrics(true) : PipelineMetrics.DISABLED;
 
     try {
+      metrics.begin("hierarchy collection");
       final Model[] fullModuleHierarchy = collectFullHierarchy(this.project);
-      final UPomModel[] modelsForProcessing = collectModels(this.project, this.depth);
+      final Model[] hierarchyForProcessing = collectModels(this.project, this.depth);
 
       getLog().debug("Full hierarchy: " + Arrays.toString(fullModuleHierarchy));
-      getLog().debug("Models to be processed: " + Arrays.toString(modelsForProcessing));
+      getLog().debug("Models to be processed: " + Arrays.toString(hierarchyForProcessing));
 
       getLog().info(".........................................................");
-      for (final String s : drawHierarchy(fullModuleHierarchy, modelsForProcessing).split("\\n")) {
+      for (final String s : drawHierarchy(fullModuleHierarchy, hierarchyForProcessing).split("\\n")) {
         getLog().info(s);
       }
       getLog().info(".........................................................");
 
-      final UPomModel main = modelsForProcessing[0];
-
-      for (int i = 1; i < modelsForProcessing.length; i++) {
-        final boolean last = i == modelsForProcessing.length - 1;
-        final UPomModel model = modelsForProcessing[i];
-        if (last && this.keep != null && this.keep.length > 0) {
-          getLog().info("");
-
-          getLog().debug("Freezing state of sections for result project pom:" + Arrays.toString(this.keep));
-          model.saveState(this.keep);
-
-          for (final String s : this.keep) {
-            getLog().info("Freezing path \'" + s + "\' in the result pom");
+      String fingerprint = null;
+      if (this.isIncremental()) {
+        if (isDeleteOnExit()) {
+          getLog().warn("Incremental mode can't reuse uber-pom removed after JVM session, set deleteOnExit to false");
+        }
+        metrics.begin("fingerprint");
+        fingerprint = makeFingerprint(hierarchyForProcessing);
+        getLog().debug("Fingerprint of hierarchy and configuration: " + fingerprint);
+        if (isUpToDate(fingerprint)) {
+          final File uberPomFile = getUberPomFile();
+          getLog().info("Uber-pom is up to date, reusing '" + uberPomFile.getAbsolutePath() + '\'');
+          if (isDeleteOnExit()) {
+            uberPomFile.deleteOnExit();
+            getFingerprintFile().deleteOnExit();
           }
-
-          getLog().debug("Merging last model");
-          main.merge(model);
-
-          getLog().debug("Restoring state of sections for project pom:" + Arrays.toString(this.keep));
-          main.restoreStateFrom(model);
-        } else {
-          getLog().debug("Merging model");
-          main.merge(model);
+          metrics.begin("injection");
+          assignUberPom(new UPomModel(uberPomFile), uberPomFile);
+          saveMetrics(metrics);
+          return;
         }
       }
 
-      getLog().info("");
-
-      final String REMOVE_PREFIX = "Remove ";
-      int maxLength = REMOVE_PREFIX.length() + getMaxStrLength(this.remove) + 12;
-
-      if (this.remove != null && this.remove.length > 0) {
-        for (final String path : this.remove) {
-          final String prefix = REMOVE_PREFIX + '\'' + path + '\'';
-          strToPrint = prefix + makeDotString(maxLength - prefix.length());
-          final boolean removed = main.remove(path);
-          getLog().info(strToPrint + (removed ? "OK" : "NOT FOUND"));
-        }
-      }
-      getLog().info("");
-
-      if (this.set != null && !this.set.isEmpty()) {
-        strToPrint = null;
-        for (final String key : this.set.stringPropertyNames()) {
-          final String value = this.set.getProperty(key);
-          try {
-            getLog().info("Set value to path : '" + key + "\'=\'" + value + '\'');
-            main.set(key, value);
-          } catch (Exception ex) {
-            getLog().debug(ex);
-            throw new UPomException("Can't set string value to '" + key + '\'');
+      if (this.daemonPort > 0) {
+        metrics.begin("daemon");
+        final File uberPomFile = getUberPomFile();
+        FileUtils.deleteQuietly(getFingerprintFile());
+        if (makeByDaemon(uberPomFile)) {
+          getLog().info("Uber-pom made by daemon and saved as '" + uberPomFile.getAbsolutePath() + '\'');
+          if (isDeleteOnExit()) {
+            getLog().info("NB! The Result uber-pom file marked to be removed after JVM session");
+            uberPomFile.deleteOnExit();
           }
+          if (fingerprint != null) {
+            saveFingerprint(fingerprint);
+          }
+          metrics.begin("injection");
+          assignUberPom(new UPomModel(uberPomFile), uberPomFile);
+          saveMetrics(metrics);
+          return;
         }
-        getLog().info("");
       }
 
-      final List<Dependency> removedDependencies = main.removeDependencies(this.removeDependencies);
-
-      if (!removedDependencies.isEmpty()) {
-        for (final Dependency d : removedDependencies) {
-          getLog().info("Removed dependency: " + dependency2str(d));
-        }
-      }
+      final UPomModel main = mergeParents(hierarchyForProcessing, metrics);
+      makePipeline().process(main, hierarchyForProcessing.length > 1 ? hierarchyForProcessing[hierarchyForProcessing.length - 1] : null, getLog(), metrics);
 
       getLog().debug("Saving uber-pom into project");
-      final File saveUberPom = saveUberPom(main);
+      FileUtils.deleteQuietly(getFingerprintFile());
+      final File saveUberPom = saveUberPom(main, metrics);
 
       getLog().info("Uber-pom saved as '" + saveUberPom.getAbsolutePath() + '\'');
 
-      getLog().debug("Injecting new uber-pom into project");
-      updateProjectForNewPom(main, saveUberPom);
-      
-      getLog().info("Uber-pom assigned to project");
+      if (fingerprint != null) {
+        saveFingerprint(fingerprint);
+      }
 
-      if (this.isEnforceInjecting()) {
-        getLog().info("NB! Injecting generated uber-pom parameters into internal project fields!");
-        main.injectIntoProject(getLog(), this.project);
+      metrics.begin("injection");
+      if (fingerprint != null || this.daemonPort > 0) {
+        // the same model as for reused or made by daemon uber-pom, the janitor changes only the file
+        assignUberPom(new UPomModel(saveUberPom), saveUberPom);
+      } else {
+        assignUberPom(main, saveUberPom);
       }
+      saveMetrics(metrics);
     } catch (UPomException ex) {
       getLog().debug(ex);
-
-      if (strToPrint != null) {
-        getLog().info(strToPrint + "ERROR");
-      }
       getLog().error(ex.getMessage());
       throw new MojoExecutionException("Error during processing", ex);
     } catch (Exception ex) {
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Processing of merged parents into uber-pom: merging of the last model with
+ * kept sections, removing and setting of paths and filtering of
+ * dependencies. It is shared by the mojo and the daemon.
+ */
+final class UPomPipeline {
+
+  private static final String REMOVE_PREFIX = "Remove ";
+  private static final String DEPENDENCIES = "dependencies";
+
+  private static ExecutorService workerExecutor;
+
+  private final String[] keep;
+  private final String[] remove;
+  private final Properties set;
+  private final DependencyPatternMatcher dependencyMatcher;
+  private final MergeEngine mergeEngine;
+  private final boolean parallelDependencyFiltering;
+
+  UPomPipeline(final String[] keep, final String[] remove, final Properties set, final DependencyPatternMatcher dependencyMatcher,
+          final MergeEngine mergeEngine, final boolean parallelDependencyFiltering) {
+    this.keep = keep;
+    this.remove = remove;
+    this.set = set;
+    this.dependencyMatcher = dependencyMatcher;
+    this.mergeEngine = mergeEngine;
+    this.parallelDependencyFiltering = parallelDependencyFiltering;
+  }
+
+  /**
+   * Get shared pool of daemon threads to filter dependencies and to clean
+   * big XML subtrees.
+   *
+   * @return the executor, must not be null
+   */
+  static synchronized ExecutorService getWorkerExecutor() {
+    if (workerExecutor == null) {
+      workerExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+          final Thread result = new Thread(runnable, "upom-worker");
+          result.setDaemon(true);
+          return result;
+        }
+      });
+    }
+    return workerExecutor;
+  }
+
+  private static int getMaxStrLength(final String[] strs) {
+    if (strs == null || strs.length == 0) {
+      return 0;
+    }
+    int max = 0;
+    for (final String s : strs) {
+      if (s.length() > max) {
+        max = s.length();
+      }
+    }
+    return max;
+  }
+
+  private static String makeDotString(final int length) {
+    final StringBuilder result = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      result.append('.');
+    }
+    return result.toString();
+  }
+
+  private static String dependency2str(final Dependency dependency) {
+    final StringBuilder result = new StringBuilder();
+
+    result.append("groupId=").append(dependency.getGroupId()).append(',')
+            .append("artifactId=").append(dependency.getArtifactId()).append(',')
+            .append("version=").append(dependency.getVersion()).append(',')
+            .append("type=").append(dependency.getType()).append(',')
+            .append("scope=").append(dependency.getScope()).append(',')
+            .append("systemPath=").append(dependency.getSystemPath()).append(',')
+            .append("classifier=").append(dependency.getClassifier()).append(',')
+            .append("optional=").append(dependency.getOptional());
+
+    return result.toString();
+  }
+
+  /**
+   * Make uber-pom from merged parents.
+   *
+   * @param main merged parents, will be changed, must not be null
+   * @param lastModel the project model, can be null if there are no parents
+   * @param log log to print messages, must not be null
+   * @param metrics metrics to register stages, must not be null
+   * @throws Exception if the uber-pom can't be made
+   */
+  void process(final UPomModel main, final Model lastModel, final Log log, final PipelineMetrics metrics) throws Exception {
+    if (lastModel != null) {
+      final UPomModel model = UPomModel.wrap(lastModel);
+      if (this.keep != null && this.keep.length > 0) {
+        log.info("");
+
+        log.debug("Freezing state of sections for result project pom:" + Arrays.toString(this.keep));
+        metrics.begin("keep save");
+        model.saveState(this.keep);
+
+        for (final String s : this.keep) {
+          log.info("Freezing path \'" + s + "\' in the result pom");
+        }
+
+        log.debug("Merging last model");
+        metrics.begin("merge " + UPomMojo.getNameOfModel(lastModel));
+        main.merge(model, this.mergeEngine);
+
+        log.debug("Restoring state of sections for project pom:" + Arrays.toString(this.keep));
+        metrics.begin("keep restore");
+        main.restoreStateFrom(model);
+      } else {
+        log.debug("Merging model");
+        metrics.begin("merge " + UPomMojo.getNameOfModel(lastModel));
+        main.merge(model, this.mergeEngine);
+      }
+    }
+    metrics.end();
+
+    log.info("");
+
+    final int maxLength = REMOVE_PREFIX.length() + getMaxStrLength(this.remove) + 12;
+
+    final List<PathEdit> removeEdits = new ArrayList<PathEdit>();
+    if (this.remove != null) {
+      for (final String path : this.remove) {
+        removeEdits.add(PathEdit.remove(path));
+      }
+    }
+    final List<String> setKeys = this.set == null ? Collections.<String>emptyList() : new ArrayList<String>(this.set.stringPropertyNames());
+    final List<PathEdit> setEdits = new ArrayList<PathEdit>(setKeys.size());
+    for (final String key : setKeys) {
+      setEdits.add(PathEdit.set(key, this.set.getProperty(key)));
+    }
+
+    if (!removeEdits.isEmpty() || !setEdits.isEmpty()) {
+      metrics.begin("path edits");
+      final List<PathEdit> allEdits = new ArrayList<PathEdit>(removeEdits);
+      allEdits.addAll(setEdits);
+      main.apply(allEdits);
+      metrics.end();
+    }
+
+    for (final PathEdit e : removeEdits) {
+      final String prefix = REMOVE_PREFIX + '\'' + e.getPath() + '\'';
+      final String strToPrint = prefix + makeDotString(maxLength - prefix.length());
+      try {
+        e.check();
+      } catch (UPomException ex) {
+        log.info(strToPrint + "ERROR");
+        throw ex;
+      }
+      log.info(strToPrint + (e.isFound() ? "OK" : "NOT FOUND"));
+    }
+    log.info("");
+
+    if (!setEdits.isEmpty()) {
+      for (int i = 0; i < setEdits.size(); i++) {
+        final String key = setKeys.get(i);
+        log.info("Set value to path : '" + key + "\'=\'" + this.set.getProperty(key) + '\'');
+        final Exception error = setEdits.get(i).getError();
+        if (error != null) {
+          log.debug(error);
+          throw new UPomException("Can't set string value to '" + key + '\'');
+        }
+      }
+      log.info("");
+    }
+
+    metrics.begin("dependency filtering", this.parallelDependencyFiltering);
+    final DependencyRemovalReport removedDependencies = main.removeDependencies(this.dependencyMatcher,
+            this.parallelDependencyFiltering ? getWorkerExecutor() : null);
+    metrics.end();
+
+    for (final String container : removedDependencies.getContainers()) {
+      final String prefix = DEPENDENCIES.equals(container) ? "Removed dependency: " : "Removed dependency from '" + container + "': ";
+      for (final Dependency d : removedDependencies.getRemoved(container)) {
+        log.info(prefix + dependency2str(d));
+      }
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.*;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Aggregator which makes uber-poms for all projects of the reactor in one
+ * execution at the root project. Projects are arranged into the tree of
+ * parents, a project is processed only after its parent in the reactor and
+ * merges uber-poms of its parents instead of their original models, as the
+ * upom goal does in module builds. Merged parents are made once and shared
+ * by children, independent projects are processed in parallel. If uber-pom
+ * of a project can't be made then its children are skipped. Every uber-pom
+ * is saved into the base
+ * folder of its project and assigned to the project. Parameters are the
+ * same as for the upom goal, but the folder parameter is ignored and the
+ * incremental, daemon and metrics modes are not used.
+ *
+ * @since 1.0.4
+ */
+@Mojo(name = "upom-reactor", defaultPhase = LifecyclePhase.INITIALIZE, aggregator = true, threadSafe = true, requiresDependencyResolution = ResolutionScope.NONE)
+public class UPomReactorMojo extends UPomMojo {
+
+  /**
+   * Number of threads to make uber-poms, if zero or less then number of
+   * processors is used.
+   *
+   * @since 1.0.4
+   */
+  @Parameter(name = "threads", defaultValue = "0")
+  protected int threads;
+
+  public int getThreads() {
+    return this.threads;
+  }
+
+  private List<MavenProject> getReactorProjects() {
+    if (this.session == null || this.session.getProjects() == null || this.session.getProjects().isEmpty()) {
+      return Collections.singletonList(this.project);
+    }
+    return this.session.getProjects();
+  }
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    final List<MavenProject> projects = getReactorProjects();
+
+    final Map<String, ProjectTask> tasks = new HashMap<String, ProjectTask>();
+    final List<ProjectTask> ordered = new ArrayList<ProjectTask>(projects.size());
+    for (final MavenProject p : projects) {
+      final ProjectTask task = new ProjectTask(p);
+      tasks.put(p.getId(), task);
+      ordered.add(task);
+    }
+
+    final List<ProjectTask> roots = new ArrayList<ProjectTask>();
+    for (final ProjectTask t : ordered) {
+      t.tasks = tasks;
+      ProjectTask parentTask = null;
+      for (MavenProject p = t.project.getParent(); p != null && parentTask == null; p = p.getParent()) {
+        parentTask = tasks.get(p.getId());
+      }
+      if (parentTask == null || parentTask == t) {
+        roots.add(t);
+      } else {
+        parentTask.children.add(t);
+      }
+    }
+
+    final int poolSize = this.threads > 0 ? this.threads : Runtime.getRuntime().availableProcessors();
+    getLog().info("Making uber-poms for " + ordered.size() + " project(s), threads " + poolSize);
+
+    final CountDownLatch done = new CountDownLatch(ordered.size());
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, poolSize));
+    try {
+      for (final ProjectTask t : roots) {
+        t.start(executor, done);
+      }
+      done.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted during making of uber-poms", ex);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    Exception error = null;
+    try {
+      for (final ProjectTask t : ordered) {
+        getLog().info("......................................................... " + t.project.getId());
+        for (int i = 0; i < t.log.size(); i++) {
+          RecordingLog.replay(getLog(), t.log.level(i), t.log.message(i));
+        }
+        if (t.error != null) {
+          if (error == null) {
+            error = t.error;
+          }
+          getLog().debug(t.error);
+          getLog().error("Can't make uber-pom : " + t.error.getMessage());
+        } else {
+          getLog().info("Uber-pom saved as '" + t.uberPomFile.getAbsolutePath() + '\'');
+          if (isDeleteOnExit()) {
+            t.uberPomFile.deleteOnExit();
+          }
+          assignUberPom(t.project, t.result, t.uberPomFile);
+        }
+      }
+    } catch (Exception ex) {
+      throw new MojoExecutionException("Error during processing", ex);
+    }
+
+    if (error != null) {
+      throw new MojoExecutionException("Error during processing", error);
+    }
+  }
+
+  private final class ProjectTask implements Runnable {
+
+    private final MavenProject project;
+    private final List<ProjectTask> children = new ArrayList<ProjectTask>();
+    private final RecordingLog log = new RecordingLog(getLog().isDebugEnabled());
+
+    private Map<String, ProjectTask> tasks;
+    private ExecutorService executor;
+    private CountDownLatch done;
+    private UPomModel result;
+    private Model resultForChildren;
+    private File uberPomFile;
+    private Exception error;
+
+    ProjectTask(final MavenProject project) {
+      this.project = project;
+    }
+
+    void start(final ExecutorService executor, final CountDownLatch done) {
+      this.executor = executor;
+      this.done = done;
+      executor.execute(this);
+    }
+
+    private void skip(final Exception reason, final CountDownLatch done) {
+      this.error = reason;
+      for (final ProjectTask c : this.children) {
+        c.skip(reason, done);
+      }
+      done.countDown();
+    }
+
+    private void make() throws Exception {
+      final File folder = this.project.getBasedir();
+      if (folder == null) {
+        throw new UPomException("Project " + this.project.getId() + " doesn't have base folder");
+      }
+      final Model[] hierarchy = collectModels(this.project, getDepth());
+      MavenProject parent = this.project.getParent();
+      for (int i = hierarchy.length - 2; i >= 0 && parent != null; i--) {
+        final ProjectTask parentTask = this.tasks.get(parent.getId());
+        if (parentTask != null) {
+          // made before, the upom goal sees it as the original model of the parent
+          hierarchy[i] = parentTask.resultForChildren;
+        }
+        parent = parent.getParent();
+      }
+      final UPomModel main = mergeParents(hierarchy, PipelineMetrics.DISABLED);
+      makePipeline().process(main, hierarchy.length > 1 ? hierarchy[hierarchy.length - 1] : null, this.log, PipelineMetrics.DISABLED);
+
+      final File file = new File(folder, getName());
+      saveUberPom(main, file, this.log, PipelineMetrics.DISABLED);
+      this.result = main;
+      this.uberPomFile = file;
+      if (!this.children.isEmpty()) {
+        // separated copy, because the result is interned when it is assigned
+        this.resultForChildren = main.getModel().clone();
+      }
+    }
+
+    @Override
+    public void run() {
+      boolean made = false;
+      try {
+        make();
+        made = true;
+      } catch (Exception ex) {
+        this.error = ex;
+      } finally {
+        if (made) {
+          for (final ProjectTask c : this.children) {
+            c.start(this.executor, this.done);
+          }
+        } else {
+          if (this.error == null) {
+            this.error = new UPomException("Can't make uber-pom for " + this.project.getId());
+          }
+          final UPomException reason = new UPomException("Uber-pom of parent " + this.project.getId() + " is not made");
+          for (final ProjectTask c : this.children) {
+            c.skip(reason, this.done);
+          }
+        }
+        this.done.countDown();
+      }
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Engine to post-process XML text of uber-pom, it removes duplicated sibling
+ * elements. Engines are found through {@link java.util.ServiceLoader} and
+ * selected by name, so that an engine can be added without changes of the
+ * mojo. An engine is created once and shared between threads and modules,
+ * so it must be thread safe; parsers and factories can be kept per thread.
+ *
+ * @see XmlEngines
+ * @since 1.0.4
+ */
+public interface XmlEngine {
+
+  /**
+   * Get name of the engine to be selected by the xmlEngine parameter.
+   *
+   * @return the name, must not be null
+   */
+  String getName();
+
+  /**
+   * Copy XML from reader into writer and remove duplicated sibling elements.
+   * Every removed element must be logged as a warning.
+   *
+   * @param log log to print removed elements, can be null
+   * @param in source of XML text, must not be null
+   * @param out destination for result XML text, must not be null
+   * @param executor executor to process big documents in parallel, can be
+   * null for sequential processing, an engine can ignore it
+   * @throws Exception if XML can't be processed
+   */
+  void removeDuplicatedSiblings(Log log, Reader in, Writer out, ExecutorService executor) throws Exception;
+}
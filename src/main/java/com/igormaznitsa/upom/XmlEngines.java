@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.upom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of XML engines found through {@link ServiceLoader}, engines are
+ * loaded once and shared. If several engines have the same name then the
+ * first found one is used.
+ *
+ * @since 1.0.4
+ */
+public final class XmlEngines {
+
+  private static final Map<String, XmlEngine> ENGINES = load(ServiceLoader.load(XmlEngine.class, XmlEngine.class.getClassLoader()));
+
+  private XmlEngines() {
+  }
+
+  private static String normalize(final String name) {
+    return name.trim().toLowerCase(Locale.ENGLISH);
+  }
+
+  /**
+   * Make table of engines, engines are kept under their normalized names,
+   * the first engine wins for the same name.
+   *
+   * @param engines found engines, must not be null
+   * @return unmodifiable table of engines with the StAX engine, must not be
+   * null
+   */
+  static Map<String, XmlEngine> load(final Iterable<XmlEngine> engines) {
+    final Map<String, XmlEngine> result = new LinkedHashMap<String, XmlEngine>();
+    for (final XmlEngine e : engines) {
+      final String key = normalize(e.getName());
+      if (!result.containsKey(key)) {
+        result.put(key, e);
+      }
+    }
+    if (!result.containsKey(StaxXmlEngine.NAME)) {
+      result.put(StaxXmlEngine.NAME, new StaxXmlEngine());
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  /**
+   * Get the default engine.
+   *
+   * @return the StAX engine, must not be null
+   */
+  public static XmlEngine getDefault() {
+    return ENGINES.get(StaxXmlEngine.NAME);
+  }
+
+  /**
+   * Find engine for its name.
+   *
+   * @param name name of engine, if null then the default engine is returned
+   * @return found engine, must not be null
+   * @throws UPomException if there is not any engine with the name
+   */
+  public static XmlEngine find(final String name) {
+    if (name == null) {
+      return getDefault();
+    }
+    final XmlEngine result = ENGINES.get(normalize(name));
+    if (result == null) {
+      throw new UPomException("Unsupported XML engine '" + name + "', allowed " + getNames());
+    }
+    return result;
+  }
+
+  /**
+   * Get names of all found engines.
+   *
+   * @return list of names, must not be null
+   */
+  public static List<String> getNames() {
+    return new ArrayList<String>(ENGINES.keySet());
+  }
+}
@@ -0,0 +1,132 @@
+package com.igormaznitsa.upom;
+
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.License;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ModelInternerTest {
+
+  private static Model makeModel(final String artifactId) {
+    final Model result = new Model();
+    result.setGroupId(new String("com.test"));
+    result.setArtifactId(artifactId);
+    result.setVersion(new String("1.0"));
+
+    final Dependency dependency = new Dependency();
+    dependency.setGroupId(new String("com.test"));
+    dependency.setArtifactId(new String("lib"));
+    dependency.setVersion(new String("2.0"));
+    final Exclusion exclusion = new Exclusion();
+    exclusion.setGroupId(new String("com.other"));
+    exclusion.setArtifactId(new String("excluded"));
+    dependency.addExclusion(exclusion);
+    result.addDependency(dependency);
+
+    final License license = new License();
+    license.setName(new String("The Apache Software License, Version 2.0"));
+    result.addLicense(license);
+
+    final Plugin plugin = new Plugin();
+    plugin.setArtifactId(new String("some-plugin"));
+    plugin.addDependency(dependency.clone());
+    result.setBuild(new Build());
+    result.getBuild().addPlugin(plugin);
+    result.addProperty("key", new String("value"));
+    return result;
+  }
+
+  @Test
+  public void testEqualValuesAreShared() throws Exception {
+    final ModelInterner interner = new ModelInterner();
+    final Model first = makeModel("first");
+    final Model second = makeModel("second");
+    final String secondXml = UPomModel.wrap(second).asXML(null, false);
+
+    assertSame(first, interner.intern(first));
+    interner.intern(second);
+
+    assertEquals(secondXml, UPomModel.wrap(second).asXML(null, false));
+    assertSame(first.getGroupId(), second.getGroupId());
+    assertSame(first.getVersion(), second.getVersion());
+    assertSame(first.getDependencies().get(0), second.getDependencies().get(0));
+    assertSame(first.getDependencies().get(0), second.getBuild().getPlugins().get(0).getDependencies().get(0));
+    assertSame(first.getLicenses().get(0), second.getLicenses().get(0));
+    assertSame(first.getProperties().getProperty("key"), second.getProperties().getProperty("key"));
+    assertNotSame(first.getBuild().getPlugins().get(0), second.getBuild().getPlugins().get(0));
+    assertSame(first.getBuild().getPlugins().get(0).getArtifactId(), second.getBuild().getPlugins().get(0).getArtifactId());
+  }
+
+  @Test
+  public void testFoundLeafObjectsAreNotChanged() throws Exception {
+    final ModelInterner interner = new ModelInterner();
+    final Model model = makeModel("module");
+    final Dependency dependency = model.getDependencies().get(0);
+    final Exclusion exclusion = dependency.getExclusions().get(0);
+
+    interner.intern(model);
+
+    final Dependency interned = model.getDependencies().get(0);
+    assertNotSame(dependency, interned);
+    assertSame(exclusion, dependency.getExclusions().get(0));
+    assertSame(interner.intern("com.other"), interned.getExclusions().get(0).getGroupId());
+    assertTrue(ModelAccessors.sameContent(dependency, interned));
+    assertEquals(ModelAccessors.contentHash(dependency), ModelAccessors.contentHash(interned));
+  }
+
+  @Test
+  public void testInternedStringsKeepLeafObjects() throws Exception {
+    final ModelInterner interner = new ModelInterner();
+    final Model first = interner.intern(makeModel("first"));
+    final Model second = makeModel("second");
+    final Dependency dependency = second.getDependencies().get(0);
+
+    assertSame(second, interner.internStrings(second));
+
+    assertTrue(ModelInterner.isInterned(first));
+    assertFalse(ModelInterner.isInterned(second));
+    assertSame(dependency, second.getDependencies().get(0));
+    assertSame(first.getDependencies().get(0).getArtifactId(), dependency.getArtifactId());
+    assertSame(first.getProperties().getProperty("key"), second.getProperties().getProperty("key"));
+    assertNotSame(first.getDependencies().get(0), UPomModel.wrap(first).getModel().getDependencies().get(0));
+  }
+
+  @Test
+  public void testUnusedValuesAreReleased() throws Exception {
+    final ModelInterner interner = new ModelInterner();
+    List<Model> models = new ArrayList<Model>();
+    for (int i = 0; i < 100; i++) {
+      models.add(interner.intern(makeModel("module" + i)));
+    }
+    assertTrue(interner.size() > 100);
+
+    models = null;
+    // default values of model classes are constants and they are never released
+    for (int i = 0; i < 50 && interner.size() > 10; i++) {
+      System.gc();
+      Thread.sleep(20L);
+    }
+    assertTrue(interner.size() <= 10);
+  }
+}
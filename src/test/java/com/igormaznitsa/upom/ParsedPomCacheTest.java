@@ -0,0 +1,97 @@
+package com.igormaznitsa.upom;
+
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.File;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Model;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParsedPomCacheTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File copyFixture(final String name, final String target) throws Exception {
+    final File result = new File(this.tempFolder.getRoot(), target);
+    FileUtils.copyURLToFile(getClass().getResource("logictests/threeLevels/" + name), result);
+    return result;
+  }
+
+  private static void replaceKeepingSizeAndTime(final File file) throws Exception {
+    final long modified = file.lastModified();
+    final byte[] broken = new byte[(int) file.length()];
+    Arrays.fill(broken, (byte) 'x');
+    FileUtils.writeByteArrayToFile(file, broken);
+    assertTrue(file.setLastModified(modified));
+  }
+
+  @Test
+  public void testMemoryCache() throws Exception {
+    final File pom = copyFixture("pom1.xml", "pom.xml");
+    final ParsedPomCache cache = new ParsedPomCache(1);
+
+    final Model model = cache.get(pom);
+    assertSame(model, cache.get(pom));
+    assertEquals(1, cache.size());
+
+    final UPomModel wrapped = UPomModel.read(pom, cache);
+    wrapped.set("description", "changed");
+    assertFalse("changed".equals(cache.get(pom).getDescription()));
+
+    FileUtils.write(pom, FileUtils.readFileToString(pom, "UTF-8").replace("<artifactId>", "<!--changed--><artifactId>"), "UTF-8");
+    assertTrue(pom.setLastModified(pom.lastModified() + 5000L));
+    final Model changed = cache.get(pom);
+    assertNotSame(model, changed);
+    assertEquals(model.getArtifactId(), changed.getArtifactId());
+
+    cache.get(copyFixture("pom2.xml", "other.xml"));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testFolderCacheSkipsParsingOfUnchangedFiles() throws Exception {
+    final File folder = this.tempFolder.newFolder("cache");
+    final File pom = copyFixture("pom2.xml", "pom.xml");
+
+    final Model parsed = new ParsedPomCache(folder, 16, 1024L * 1024L).get(pom);
+    assertTrue(new File(folder, "index.map").isFile());
+    assertEquals(1, new File(folder, "models").listFiles().length);
+
+    // the file can't be parsed anymore, so the model must be taken from the folder
+    replaceKeepingSizeAndTime(pom);
+    final Model loaded = new ParsedPomCache(folder, 16, 1024L * 1024L).get(pom);
+    assertNotSame(parsed, loaded);
+    assertEquals(UPomModel.wrap(parsed).asXML(null, false), UPomModel.wrap(loaded).asXML(null, false));
+
+    // the same content in another file is parsed only once
+    final File copy = copyFixture("pom2.xml", "copy/pom.xml");
+    assertEquals(parsed.getArtifactId(), new ParsedPomCache(folder, 16, 1024L * 1024L).get(copy).getArtifactId());
+    assertEquals(1, new File(folder, "models").listFiles().length);
+
+    assertTrue(pom.setLastModified(pom.lastModified() + 5000L));
+    try {
+      new ParsedPomCache(folder, 16, 1024L * 1024L).get(pom);
+      fail("Changed file must be parsed");
+    } catch (Exception ex) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,265 @@
+package com.igormaznitsa.upom;
+
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.apache.maven.project.MavenProject;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PipelineMetricsTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /**
+   * Minimal JSON parser, enough to check reports.
+   */
+  private static final class JsonParser {
+
+    private final String text;
+    private int pos;
+
+    JsonParser(final String text) {
+      this.text = text;
+    }
+
+    private char next() {
+      while (Character.isWhitespace(this.text.charAt(this.pos))) {
+        this.pos++;
+      }
+      return this.text.charAt(this.pos);
+    }
+
+    private void expect(final char c) {
+      assertEquals("Position " + this.pos, c, next());
+      this.pos++;
+    }
+
+    Object parse() {
+      final Object result = value();
+      assertEquals(this.text.trim().length(), this.text.substring(0, this.pos).trim().length());
+      return result;
+    }
+
+    private Object value() {
+      final char c = next();
+      if (c == '{') {
+        final Map<String, Object> result = new LinkedHashMap<String, Object>();
+        this.pos++;
+        if (next() == '}') {
+          this.pos++;
+          return result;
+        }
+        do {
+          final String key = string();
+          expect(':');
+          result.put(key, value());
+        } while (comma());
+        expect('}');
+        return result;
+      }
+      if (c == '[') {
+        final List<Object> result = new ArrayList<Object>();
+        this.pos++;
+        if (next() == ']') {
+          this.pos++;
+          return result;
+        }
+        do {
+          result.add(value());
+        } while (comma());
+        expect(']');
+        return result;
+      }
+      if (c == '\"') {
+        return string();
+      }
+      final int start = this.pos;
+      while (this.pos < this.text.length() && "{}[],: \n\r\t".indexOf(this.text.charAt(this.pos)) < 0) {
+        this.pos++;
+      }
+      final String literal = this.text.substring(start, this.pos);
+      if ("true".equals(literal) || "false".equals(literal)) {
+        return Boolean.valueOf(literal);
+      }
+      return Long.valueOf(literal);
+    }
+
+    private boolean comma() {
+      if (next() == ',') {
+        this.pos++;
+        return true;
+      }
+      return false;
+    }
+
+    private String string() {
+      expect('\"');
+      final StringBuilder result = new StringBuilder();
+      while (true) {
+        final char c = this.text.charAt(this.pos++);
+        if (c == '\"') {
+          return result.toString();
+        }
+        assertTrue("Not escaped control char", c >= 0x20);
+        if (c == '\\') {
+          final char escaped = this.text.charAt(this.pos++);
+          switch (escaped) {
+            case 'n':
+              result.append('\n');
+              break;
+            case 'r':
+              result.append('\r');
+              break;
+            case 't':
+              result.append('\t');
+              break;
+            case 'u':
+              result.append((char) Integer.parseInt(this.text.substring(this.pos, this.pos + 4), 16));
+              this.pos += 4;
+              break;
+            default:
+              result.append(escaped);
+              break;
+          }
+        } else {
+          result.append(c);
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> parse(final String json) {
+    return (Map<String, Object>) new JsonParser(json).parse();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Map<String, Object>> stages(final Map<String, Object> report) {
+    final Map<String, Map<String, Object>> result = new LinkedHashMap<String, Map<String, Object>>();
+    for (final Object s : (List<Object>) report.get("stages")) {
+      final Map<String, Object> stage = (Map<String, Object>) s;
+      result.put((String) stage.get("name"), stage);
+    }
+    return result;
+  }
+
+  @Test
+  public void testStagesAreReportedAsJson() throws Exception {
+    final PipelineMetrics metrics = new PipelineMetrics(true);
+    metrics.begin("first \"quoted\" \\ stage\n\t\u0001");
+    metrics.begin("second");
+    metrics.end();
+    metrics.end();
+    metrics.begin("parallel", true);
+    metrics.end();
+
+    final Map<String, Object> report = parse(metrics.toJson("com.test:project:jar:1.0"));
+    assertEquals("com.test:project:jar:1.0", report.get("project"));
+    assertTrue((Long) report.get("wallNanos") >= 0L);
+    assertEquals("thread", report.get("allocatedBytesScope"));
+
+    final Map<String, Map<String, Object>> stages = stages(report);
+    assertEquals(3, stages.size());
+    final Map<String, Object> first = stages.get("first \"quoted\" \\ stage\n\t\u0001");
+    assertNotNull(first);
+    assertEquals(Boolean.FALSE, first.get("parallel"));
+    assertTrue((Long) first.get("wallNanos") >= 0L);
+    assertTrue(stages.containsKey("second"));
+    assertEquals(Boolean.TRUE, stages.get("parallel").get("parallel"));
+    assertEquals(-1L, stages.get("parallel").get("allocatedBytes"));
+  }
+
+  @Test
+  public void testDisabledMetricsIgnoreStages() throws Exception {
+    PipelineMetrics.DISABLED.begin("stage");
+    PipelineMetrics.DISABLED.end();
+    assertTrue(stages(parse(PipelineMetrics.DISABLED.toJson("project"))).isEmpty());
+  }
+
+  private static Model makeModel(final String artifactId, final Model parent) {
+    final Model result = new Model();
+    result.setModelVersion("4.0.0");
+    result.setGroupId("com.test");
+    result.setArtifactId(artifactId);
+    result.setVersion("1.0.0");
+    if (parent != null) {
+      final Parent p = new Parent();
+      p.setGroupId(parent.getGroupId());
+      p.setArtifactId(parent.getArtifactId());
+      p.setVersion(parent.getVersion());
+      result.setParent(p);
+    }
+    final Dependency dependency = new Dependency();
+    dependency.setGroupId("com.test");
+    dependency.setArtifactId("dependency-of-" + artifactId);
+    dependency.setVersion("1.0");
+    result.addDependency(dependency);
+    return result;
+  }
+
+  @Test
+  public void testMojoSavesMetrics() throws Exception {
+    final Model parentModel = makeModel("parent", null);
+    final MavenProject parent = new MavenProject(parentModel);
+    parent.setOriginalModel(parentModel);
+    final Model model = makeModel("child", parentModel);
+    final MavenProject project = new MavenProject(model);
+    project.setOriginalModel(model);
+    project.setParent(parent);
+
+    final UPomMojo mojo = new UPomMojo();
+    mojo.setLog(new SilentLog());
+    mojo.project = project;
+    mojo.folder = this.tempFolder.newFolder("uber");
+    mojo.metricsFolder = this.tempFolder.newFolder("metrics");
+    mojo.name = "uber-pom.xml";
+    mojo.deleteOnExit = false;
+    mojo.depth = -1;
+    mojo.metrics = true;
+    mojo.removeSiblingDuplications = true;
+    mojo.parallelDependencyFiltering = true;
+    final DependencyPattern pattern = new DependencyPattern();
+    pattern.setArtifactId("dependency-of-parent");
+    mojo.removeDependencies = Collections.singletonList(pattern);
+    mojo.execute();
+
+    final Map<String, Object> report = parse(FileUtils.readFileToString(new File(mojo.metricsFolder, "upom-metrics.json"), "UTF-8"));
+    assertEquals(project.getId(), report.get("project"));
+
+    final Map<String, Map<String, Object>> stages = stages(report);
+    for (final String name : new String[]{"hierarchy collection", "merge com.test:parent:[inherited]:1.0.0", "merge com.test:child:[inherited]:1.0.0",
+      "dependency filtering", "serialization", "janitor", "file move", "injection"}) {
+      assertTrue("Stage " + name + " in " + stages.keySet(), stages.containsKey(name));
+    }
+    assertEquals(Boolean.TRUE, stages.get("dependency filtering").get("parallel"));
+    assertEquals(-1L, stages.get("dependency filtering").get("allocatedBytes"));
+    assertEquals(Boolean.FALSE, stages.get("serialization").get("parallel"));
+  }
+}
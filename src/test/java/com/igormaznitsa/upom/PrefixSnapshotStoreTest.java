@@ -0,0 +1,155 @@
+package com.igormaznitsa.upom;
+
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PrefixSnapshotStoreTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Model[] loadHierarchy() throws Exception {
+    final Model[] result = new Model[3];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = new UPomModel(new File(getClass().getResource("logictests/threeLevels/pom" + (i + 1) + ".xml").toURI())).getModel();
+    }
+
+    final Xpp3Dom configuration = new Xpp3Dom("configuration");
+    final Xpp3Dom item = new Xpp3Dom("item");
+    item.setAttribute("combine.children", "append");
+    item.setValue("value");
+    configuration.addChild(item);
+    configuration.addChild(new Xpp3Dom("empty"));
+
+    final Plugin plugin = new Plugin();
+    plugin.setArtifactId("configured-plugin");
+    plugin.setConfiguration(configuration);
+    result[1].setBuild(new Build());
+    result[1].getBuild().addPlugin(plugin);
+    return result;
+  }
+
+  private static File[] listEntries(final File folder) {
+    final File[] result = folder.listFiles();
+    return result == null ? new File[0] : result;
+  }
+
+  @Test
+  public void testSaveAndLoadMergedPrefix() throws Exception {
+    final File folder = this.tempFolder.newFolder("prefixes");
+    final PrefixSnapshotStore store = new PrefixSnapshotStore(folder, 1024L * 1024L);
+
+    final Model[] hierarchy = loadHierarchy();
+    final MergedPrefixCache first = new MergedPrefixCache();
+    final String[] keys = first.makeKeys(hierarchy);
+    final Model merged = first.getMerged(hierarchy, keys, 2, store);
+    assertEquals(2, listEntries(folder).length);
+
+    final MergedPrefixCache second = new MergedPrefixCache();
+    final Model loaded = second.getMerged(loadHierarchy(), keys, 2, store);
+    assertNotSame(merged, loaded);
+    assertEquals(UPomModel.wrap(merged).asXML(null, false), UPomModel.wrap(loaded).asXML(null, false));
+
+    final Xpp3Dom configuration = (Xpp3Dom) loaded.getBuild().getPlugins().get(0).getConfiguration();
+    assertEquals("append", configuration.getChild("item").getAttribute("combine.children"));
+    assertSame(configuration, configuration.getChild("item").getParent());
+    assertEquals(1, second.size());
+
+    final Model keyed = new MergedPrefixCache(MergeEngine.KEYED).getMerged(hierarchy, keys, 2, store);
+    assertNotNull(keyed);
+    assertEquals(4, listEntries(folder).length);
+  }
+
+  @Test
+  public void testBrokenEntryIsRemoved() throws Exception {
+    final File folder = this.tempFolder.newFolder("prefixes");
+    final PrefixSnapshotStore store = new PrefixSnapshotStore(folder, 1024L * 1024L);
+
+    final File broken = new File(folder, "some.upc");
+    FileUtils.write(broken, "broken", "UTF-8");
+    assertNull(store.load("some"));
+    assertFalse(broken.exists());
+    assertNull(store.load("unknown"));
+  }
+
+  @Test
+  public void testEntryOfOtherVersionIsRemoved() throws Exception {
+    final File folder = this.tempFolder.newFolder("prefixes");
+    final PrefixSnapshotStore store = new PrefixSnapshotStore(folder, 1024L * 1024L);
+    store.save("current", loadHierarchy()[0]);
+    assertNotNull(store.load("current"));
+
+    final File old = new File(folder, "old.upc");
+    final DataOutputStream out = new DataOutputStream(new FileOutputStream(old));
+    try {
+      out.writeUTF("upom-prefix-3 1.0.3 3.0");
+      out.writeUTF("old");
+    } finally {
+      out.close();
+    }
+    assertNull(store.load("old"));
+    assertFalse(old.exists());
+
+    assertEquals("3.0", PrefixSnapshotStore.findVersion(Model.class, "org.apache.maven", "maven-model"));
+  }
+
+  @Test
+  public void testNotAllowedClassesAreNotLoaded() throws Exception {
+    final File folder = this.tempFolder.newFolder("prefixes");
+    final PrefixSnapshotStore store = new PrefixSnapshotStore(folder, 1024L * 1024L);
+
+    final Model model = loadHierarchy()[1];
+    model.getBuild().getPlugins().get(0).setConfiguration(new AtomicLong(1L));
+    store.save("foreign", model);
+    assertTrue(new File(folder, "foreign.upc").isFile());
+
+    assertNull(store.load("foreign"));
+    assertFalse(new File(folder, "foreign.upc").exists());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+    final File folder = this.tempFolder.newFolder("prefixes");
+    final Model model = loadHierarchy()[0];
+
+    new PrefixSnapshotStore(folder, Long.MAX_VALUE).save("first", model);
+    final long entrySize = new File(folder, "first.upc").length();
+    final PrefixSnapshotStore store = new PrefixSnapshotStore(folder, entrySize * 2 + 16);
+
+    new File(folder, "first.upc").setLastModified(System.currentTimeMillis() - 20000L);
+    store.save("second", model);
+    new File(folder, "second.upc").setLastModified(System.currentTimeMillis() - 10000L);
+    assertNotNull(store.load("first"));
+
+    store.save("third", model);
+    assertTrue(new File(folder, "first.upc").isFile());
+    assertFalse(new File(folder, "second.upc").exists());
+    assertTrue(new File(folder, "third.upc").isFile());
+  }
+}
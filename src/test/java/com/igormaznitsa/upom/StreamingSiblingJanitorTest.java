@@ -0,0 +1,78 @@
+package com.igormaznitsa.upom;
+
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class StreamingSiblingJanitorTest {
+
+  private static String makeBigPom() {
+    final StringBuilder result = new StringBuilder();
+    result.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<project xmlns=\"http://maven.apache.org/POM/4.0.0\">");
+    result.append("<modules><module>a</module><module>b</module><module>a</module></modules>");
+    result.append("<build><plugins>");
+    for (int p = 0; p < 40; p++) {
+      result.append("<plugin><artifactId>plugin").append(p % 30).append("</artifactId><configuration>");
+      for (int i = 0; i < 300; i++) {
+        result.append("<item><name>").append(i % 200).append("</name><value attr=\"x\">").append(i % 7).append("</value></item>");
+      }
+      result.append("</configuration></plugin>");
+    }
+    result.append("</plugins></build>");
+    result.append("<modules><module>a</module><module>b</module><module>a</module></modules>");
+    result.append("</project>");
+    return result.toString();
+  }
+
+  private static String clean(final String xml, final RecordingLog log, final ExecutorService executor) throws Exception {
+    final StringWriter result = new StringWriter();
+    StreamingSiblingJanitor.process(log, new StringReader(xml), result, executor);
+    return result.toString();
+  }
+
+  @Test
+  public void testParallelModeGivesSameResultAndLog() throws Exception {
+    final String xml = makeBigPom();
+
+    final RecordingLog sequentialLog = new RecordingLog(false);
+    final String sequential = clean(xml, sequentialLog, null);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final RecordingLog parallelLog = new RecordingLog(false);
+      final String parallel = clean(xml, parallelLog, executor);
+
+      assertEquals(sequential, parallel);
+      assertEquals(sequentialLog.size(), parallelLog.size());
+      for (int i = 0; i < sequentialLog.size(); i++) {
+        assertEquals(sequentialLog.message(i), parallelLog.message(i));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertTrue(xml.length() > sequential.length());
+    assertEquals(30, sequential.split("<plugin>", -1).length - 1);
+    assertEquals(1, sequential.split("<modules>", -1).length - 1);
+    assertTrue(sequentialLog.message(0).endsWith("/project/modules/module"));
+    assertTrue(sequentialLog.message(sequentialLog.size() - 1).endsWith("#document/project/modules"));
+  }
+}
@@ -0,0 +1,147 @@
+package com.igormaznitsa.upom;
+
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.File;
+import java.util.Collections;
+import java.util.Properties;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.testing.SilentLog;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UPomDaemonTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private UPomDaemon daemon;
+  private Thread thread;
+
+  @Before
+  public void startDaemon() throws Exception {
+    this.daemon = new UPomDaemon(0, 2, this.tempFolder.newFolder("tokens"));
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          daemon.run();
+        } catch (Exception ex) {
+          ex.printStackTrace();
+        }
+      }
+    });
+    this.thread.setDaemon(true);
+    this.thread.start();
+    for (int i = 0; i < 100 && this.daemon.getLocalPort() < 0; i++) {
+      Thread.sleep(50L);
+    }
+    assertTrue(this.daemon.getLocalPort() > 0);
+  }
+
+  @After
+  public void stopDaemon() throws Exception {
+    this.daemon.stop();
+    this.thread.join(5000L);
+  }
+
+  private File copyFixture(final String name) throws Exception {
+    final File result = new File(this.tempFolder.getRoot(), name);
+    FileUtils.copyURLToFile(getClass().getResource("logictests/threeLevels/" + name), result);
+    return result;
+  }
+
+  private static String makeInProcess(final File[] poms) throws Exception {
+    final UPomModel result = new UPomModel(poms[0]);
+    for (int i = 1; i < poms.length; i++) {
+      result.merge(new UPomModel(poms[i]));
+    }
+    result.remove("developers/developer/email");
+    result.set("description", "daemon");
+    return result.asXML(null, false);
+  }
+
+  private DaemonRequest makeRequest(final File[] poms, final File uberPom) {
+    return makeRequest(UPomDaemon.readToken(new File(this.tempFolder.getRoot(), "tokens"), this.daemon.getLocalPort()), poms, uberPom);
+  }
+
+  private static DaemonRequest makeRequest(final String token, final File[] poms, final File uberPom) {
+    final String[] files = new String[poms.length];
+    for (int i = 0; i < poms.length; i++) {
+      files[i] = poms[i].getAbsolutePath();
+    }
+    final Properties set = new Properties();
+    set.setProperty("description", "daemon");
+    return new DaemonRequest(token, files, uberPom.getAbsolutePath(), false, false, null,
+            new String[]{"developers/developer/email"}, set, Collections.<DependencyPattern>emptyList(), MergeEngine.MODEL_MERGER, false, false, null, false);
+  }
+
+  @Test
+  public void testMakeUberPomAndReloadChangedFile() throws Exception {
+    final File[] poms = new File[]{copyFixture("pom1.xml"), copyFixture("pom2.xml"), copyFixture("pom3.xml")};
+    final File uberPom = new File(this.tempFolder.getRoot(), "target/uber-pom.xml");
+
+    assertTrue(UPomDaemon.send(this.daemon.getLocalPort(), makeRequest(poms, uberPom), new SilentLog()));
+    assertEquals(makeInProcess(poms), FileUtils.readFileToString(uberPom, "UTF-8"));
+
+    final String changed = FileUtils.readFileToString(poms[1], "UTF-8").replace("TestTest2", "Changed description of the second pom");
+    FileUtils.write(poms[1], changed, "UTF-8");
+    assertTrue(UPomDaemon.send(this.daemon.getLocalPort(), makeRequest(poms, uberPom), new SilentLog()));
+    final String result = FileUtils.readFileToString(uberPom, "UTF-8");
+    assertEquals(makeInProcess(poms), result);
+  }
+
+  @Test
+  public void testErrorInDaemon() throws Exception {
+    final File[] poms = new File[]{copyFixture("pom1.xml"), new File(this.tempFolder.getRoot(), "unknown.xml")};
+    assertFalse(UPomDaemon.send(this.daemon.getLocalPort(), makeRequest(poms, new File(this.tempFolder.getRoot(), "target/uber-pom.xml")), new SilentLog()));
+  }
+
+  @Test
+  public void testRejectNotAuthorizedRequest() throws Exception {
+    final File[] poms = new File[]{copyFixture("pom1.xml")};
+    final File uberPom = new File(this.tempFolder.getRoot(), "target/uber-pom.xml");
+    assertNotNull(UPomDaemon.readToken(new File(this.tempFolder.getRoot(), "tokens"), this.daemon.getLocalPort()));
+
+    assertFalse(UPomDaemon.send(this.daemon.getLocalPort(), makeRequest(null, poms, uberPom), new SilentLog()));
+    assertFalse(UPomDaemon.send(this.daemon.getLocalPort(), makeRequest("wrong", poms, uberPom), new SilentLog()));
+    assertFalse(uberPom.exists());
+  }
+
+  @Test
+  public void testRejectUberPomOutOfBuildFolder() throws Exception {
+    final File[] poms = new File[]{copyFixture("pom1.xml")};
+    final File outside = new File(this.tempFolder.getRoot(), "uber-pom.xml");
+    assertFalse(UPomDaemon.send(this.daemon.getLocalPort(), makeRequest(poms, outside), new SilentLog()));
+    assertFalse(outside.exists());
+
+    final File escaped = new File(this.tempFolder.getRoot(), "target/../uber-pom.xml");
+    assertFalse(UPomDaemon.send(this.daemon.getLocalPort(), makeRequest(poms, escaped), new SilentLog()));
+    assertFalse(outside.exists());
+  }
+
+  @Test
+  public void testNoDaemon() throws Exception {
+    final int port = this.daemon.getLocalPort();
+    stopDaemon();
+    assertNull(UPomDaemon.readToken(new File(this.tempFolder.getRoot(), "tokens"), port));
+    assertFalse(UPomDaemon.send(port, makeRequest(new File[]{copyFixture("pom1.xml")}, new File(this.tempFolder.getRoot(), "target/uber-pom.xml")), new SilentLog()));
+  }
+}
@@ -0,0 +1,107 @@
+package com.igormaznitsa.upom;
+
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UPomGeneratorTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static Model writePom(final File folder, final String artifactId, final Model parent, final String relativePath) throws Exception {
+    final Model result = new Model();
+    result.setModelVersion("4.0.0");
+    result.setGroupId("com.test");
+    result.setArtifactId(artifactId);
+    result.setVersion("1.0");
+    result.addProperty(artifactId + ".property", artifactId);
+    if (parent != null) {
+      final Parent p = new Parent();
+      p.setGroupId(parent.getGroupId());
+      p.setArtifactId(parent.getArtifactId());
+      p.setVersion(parent.getVersion());
+      if (relativePath != null) {
+        p.setRelativePath(relativePath);
+      }
+      result.setParent(p);
+    }
+    folder.mkdirs();
+    final FileOutputStream out = new FileOutputStream(new File(folder, "pom.xml"));
+    try {
+      new MavenXpp3Writer().write(out, result);
+    } finally {
+      out.close();
+    }
+    return result;
+  }
+
+  @Test
+  public void testGenerateForTree() throws Exception {
+    final File root = this.tempFolder.getRoot();
+    final Model corporate = writePom(root, "corporate", null, null);
+    final Model platform = writePom(new File(root, "platform"), "platform", corporate, null);
+    writePom(new File(root, "platform/module1"), "module1", platform, null);
+    writePom(new File(root, "module2"), "module2", platform, "../wrong");
+    writePom(new File(root, "platform/target"), "ignored", platform, null);
+
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final int failed = new UPomGenerator(root, "uber-pom.xml", 4, true).generate(new PrintStream(buffer, true));
+    assertEquals(0, failed);
+    assertTrue(buffer.toString(), buffer.toString().contains("Generated 4 uber-poms, failed 0"));
+
+    assertFalse(new File(root, "platform/target/uber-pom.xml").exists());
+
+    for (final String module : new String[]{"platform/module1", "module2"}) {
+      final String text = FileUtils.readFileToString(new File(root, module + "/uber-pom.xml"), "UTF-8");
+      assertTrue(text.contains("<corporate.property>"));
+      assertTrue(text.contains("<platform.property>"));
+    }
+    final String text = FileUtils.readFileToString(new File(root, "platform/uber-pom.xml"), "UTF-8");
+    assertTrue(text.contains("<corporate.property>"));
+    assertFalse(text.contains("<module1.property>"));
+  }
+
+  @Test
+  public void testGenerateWithParsedPomCache() throws Exception {
+    final File root = this.tempFolder.newFolder("tree");
+    final Model corporate = writePom(root, "corporate", null, null);
+    writePom(new File(root, "module"), "module", corporate, null);
+    final File cacheFolder = this.tempFolder.newFolder("cache");
+
+    final File uberPom = new File(root, "module/uber-pom.xml");
+    assertEquals(0, new UPomGenerator(root, "uber-pom.xml", 2, false, new ParsedPomCache(cacheFolder, 16, 1024L * 1024L))
+            .generate(new PrintStream(new ByteArrayOutputStream(), true)));
+    final String first = FileUtils.readFileToString(uberPom, "UTF-8");
+    assertEquals(2, new File(cacheFolder, "models").listFiles().length);
+
+    assertTrue(uberPom.delete());
+    assertEquals(0, new UPomGenerator(root, "uber-pom.xml", 2, false, new ParsedPomCache(cacheFolder, 16, 1024L * 1024L))
+            .generate(new PrintStream(new ByteArrayOutputStream(), true)));
+    assertEquals(first, FileUtils.readFileToString(uberPom, "UTF-8"));
+  }
+}
@@ -0,0 +1,220 @@
+package com.igormaznitsa.upom;
+
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Developer;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.apache.maven.project.MavenProject;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UPomMojoConcurrencyTest {
+
+  private static final int PLATFORMS = 4;
+  private static final int MODULES = 64;
+  private static final int THREADS = 8;
+  private static final int ROUNDS = 3;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static Model makeModel(final String groupId, final String artifactId, final Model parent, final int dependencies) {
+    final Model result = new Model();
+    result.setModelVersion("4.0.0");
+    result.setGroupId(groupId);
+    result.setArtifactId(artifactId);
+    result.setVersion("1.0.0");
+    result.setPackaging(parent == null ? "pom" : "jar");
+    result.setDescription("Description of " + artifactId);
+
+    if (parent != null) {
+      final Parent p = new Parent();
+      p.setGroupId(parent.getGroupId());
+      p.setArtifactId(parent.getArtifactId());
+      p.setVersion(parent.getVersion());
+      result.setParent(p);
+    }
+
+    result.addModule(artifactId + "-module");
+    result.addProperty(artifactId + ".property", artifactId);
+
+    final Developer developer = new Developer();
+    developer.setId("developer");
+    developer.setEmail(artifactId + "@email");
+    result.addDeveloper(developer);
+
+    for (int i = 0; i < dependencies; i++) {
+      final Dependency dependency = new Dependency();
+      dependency.setGroupId(i % 2 == 0 ? "com.test" : groupId);
+      dependency.setArtifactId("artifact" + i);
+      dependency.setVersion("1." + i);
+      dependency.setScope(i % 3 == 0 ? "test" : null);
+      result.addDependency(dependency);
+    }
+    return result;
+  }
+
+  private static MavenProject makeProject(final Model model, final MavenProject parent) {
+    final MavenProject result = new MavenProject(model);
+    result.setOriginalModel(model);
+    result.setParent(parent);
+    return result;
+  }
+
+  private static List<MavenProject> makeModules() {
+    final MavenProject corporate = makeProject(makeModel("com.corp", "corporate-parent", null, 10), null);
+
+    final List<MavenProject> platforms = new ArrayList<MavenProject>();
+    for (int i = 0; i < PLATFORMS; i++) {
+      final MavenProject platform = makeProject(makeModel("com.corp.platform", "platform" + i, corporate.getOriginalModel(), 6), corporate);
+      platforms.add(makeProject(makeModel("com.corp.platform", "aggregator" + i, platform.getOriginalModel(), 2), platform));
+    }
+
+    final List<MavenProject> result = new ArrayList<MavenProject>();
+    for (int i = 0; i < MODULES; i++) {
+      final MavenProject platform = platforms.get(i % PLATFORMS);
+      final MavenProject parent = i % 3 == 0 ? platform.getParent() : platform;
+      result.add(makeProject(makeModel("com.corp.module", "module" + i, parent.getOriginalModel(), 3 + i % 5), parent));
+    }
+    return result;
+  }
+
+  private UPomMojo makeMojo(final MavenProject project, final MavenSession session, final File folder) {
+    final UPomMojo result = new UPomMojo();
+    result.setLog(new SilentLog());
+    result.project = project;
+    result.session = session;
+    result.folder = folder;
+    result.name = "uber-pom.xml";
+    result.deleteOnExit = false;
+    result.depth = -1;
+    result.removeSiblingDuplications = true;
+    result.cacheMergedParents = session != null;
+    result.remove = new String[]{"parent", "modules", "developers/developer/email"};
+    result.keep = new String[]{"description"};
+    result.set = new Properties();
+    result.set.setProperty("properties/generated", "true");
+
+    final DependencyPattern pattern = new DependencyPattern();
+    pattern.setScope("test");
+    result.removeDependencies = Collections.singletonList(pattern);
+    return result;
+  }
+
+  private Map<String, String> generateSequentially() throws Exception {
+    final Map<String, String> result = new HashMap<String, String>();
+    final File folder = this.tempFolder.newFolder("sequential");
+    for (final MavenProject module : makeModules()) {
+      final File moduleFolder = new File(folder, module.getArtifactId());
+      makeMojo(module, null, moduleFolder).execute();
+      result.put(module.getArtifactId(), FileUtils.readFileToString(new File(moduleFolder, "uber-pom.xml"), "UTF-8"));
+    }
+    return result;
+  }
+
+  @SuppressWarnings("deprecation")
+  private Map<String, String> generateConcurrently(final String name, final boolean internModels) throws Exception {
+    final List<MavenProject> modules = makeModules();
+    final MavenSession session = new MavenSession(null, new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult(), modules);
+    final File folder = this.tempFolder.newFolder(name);
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final Map<String, Future<String>> futures = new HashMap<String, Future<String>>();
+      for (final MavenProject module : modules) {
+        futures.put(module.getArtifactId(), executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            start.await();
+            final File moduleFolder = new File(folder, module.getArtifactId());
+            final UPomMojo mojo = makeMojo(module, session, moduleFolder);
+            mojo.internModels = internModels;
+            mojo.execute();
+            return FileUtils.readFileToString(new File(moduleFolder, "uber-pom.xml"), "UTF-8");
+          }
+        }));
+      }
+      start.countDown();
+
+      final Map<String, String> result = new HashMap<String, String>();
+      for (final Map.Entry<String, Future<String>> e : futures.entrySet()) {
+        result.put(e.getKey(), e.getValue().get(1, TimeUnit.MINUTES));
+      }
+
+      final int cachedPrefixes = MergedPrefixCache.forSession(session, MergeEngine.MODEL_MERGER).size();
+      assertTrue(cachedPrefixes > 0 && cachedPrefixes <= 1 + PLATFORMS * 2);
+      return result;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testConcurrentExecutionGivesSameResultAsSequential() throws Exception {
+    final Map<String, String> etalon = generateSequentially();
+    assertEquals(MODULES, etalon.size());
+
+    final String module = etalon.get("module1");
+    assertFalse(module.contains("<parent>"));
+    assertFalse(module.contains("@email"));
+    assertFalse(module.contains("<scope>test</scope>"));
+    assertTrue(module.contains("<description>Description of module1</description>"));
+    assertTrue(module.contains("<corporate-parent.property>"));
+    assertTrue(module.contains("<generated>true</generated>"));
+
+    for (int i = 0; i < ROUNDS; i++) {
+      assertEquals(etalon, generateConcurrently("concurrent" + i, i % 2 != 0));
+    }
+  }
+
+  private String generateParentAndChild(final String name, final boolean internModels) throws Exception {
+    final Model parentModel = makeModel("com.corp", "parent", null, 2);
+    // equal dependencies become the same canonical instance after interning
+    parentModel.addDependency(parentModel.getDependencies().get(0).clone());
+    final MavenProject parent = makeProject(parentModel, null);
+    final MavenProject child = makeProject(makeModel("com.corp.module", "child", parentModel, 1), parent);
+    final MavenSession session = new MavenSession(null, new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult(), Arrays.asList(parent, child));
+
+    final File folder = this.tempFolder.newFolder(name);
+    for (final MavenProject project : Arrays.asList(parent, child)) {
+      final UPomMojo mojo = makeMojo(project, session, new File(folder, project.getArtifactId()));
+      mojo.removeDependencies = Collections.<DependencyPattern>emptyList();
+      mojo.removeSiblingDuplications = false;
+      mojo.internModels = internModels;
+      mojo.execute();
+    }
+    return FileUtils.readFileToString(new File(new File(folder, "child"), "uber-pom.xml"), "UTF-8");
+  }
+
+  @Test
+  public void testInternedUberPomOfParentGivesSameResultForChild() throws Exception {
+    final String etalon = generateParentAndChild("notInterned", false);
+    assertEquals(4, etalon.split("<dependency>").length - 1);
+    assertEquals(etalon, generateParentAndChild("interned", true));
+  }
+}
@@ -71,6 +71,19 @@ public class UPomMojoConfigTest extends AbstractMojoTestCase {
     assertEquals("uber-pom.xml", myMojo.getName());
     assertEquals(-1, myMojo.getDepth());
     assertFalse(myMojo.isRemoveSiblingDuplications());
+    assertFalse(myMojo.isIncremental());
+    assertTrue(myMojo.isCacheMergedParents());
+    assertFalse(myMojo.isMetrics());
+    assertFalse(myMojo.isInjectOnlyChanged());
+    assertEquals(0, myMojo.getDaemonPort());
+    assertEquals(MergeEngine.MODEL_MERGER, myMojo.getMergeEngine());
+    assertFalse(myMojo.isParallelDependencyFiltering());
+    assertFalse(myMojo.isParallelSiblingJanitor());
+    assertEquals("stax", myMojo.getXmlEngine());
+    assertNull(myMojo.getPrefixCacheFolder());
+    assertEquals(65536, myMojo.getPrefixCacheSize());
+    assertFalse(myMojo.isInternModels());
+    assertFalse(myMojo.isModelSiblingJanitor());
   }
 
   @Test
@@ -95,5 +108,18 @@ public class UPomMojoConfigTest extends AbstractMojoTestCase {
     assertEquals("testName.xml", myMojo.getName());
     assertEquals(678, myMojo.getDepth());
     assertTrue(myMojo.isRemoveSiblingDuplications());
+    assertTrue(myMojo.isIncremental());
+    assertFalse(myMojo.isCacheMergedParents());
+    assertTrue(myMojo.isMetrics());
+    assertTrue(myMojo.isInjectOnlyChanged());
+    assertEquals("/test/metrics", myMojo.getMetricsFolder().getAbsolutePath());
+    assertEquals(MergeEngine.KEYED, myMojo.getMergeEngine());
+    assertTrue(myMojo.isParallelDependencyFiltering());
+    assertTrue(myMojo.isParallelSiblingJanitor());
+    assertEquals("dom", myMojo.getXmlEngine());
+    assertEquals("/test/prefixes", myMojo.getPrefixCacheFolder().getAbsolutePath());
+    assertEquals(1024, myMojo.getPrefixCacheSize());
+    assertTrue(myMojo.isInternModels());
+    assertTrue(myMojo.isModelSiblingJanitor());
   }
 }
@@ -0,0 +1,138 @@
+package com.igormaznitsa.upom;
+
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.File;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.project.MavenProject;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UPomMojoIncrementalTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static Model makeModel(final String artifactId, final Model parent) {
+    final Model result = new Model();
+    result.setModelVersion("4.0.0");
+    result.setGroupId("com.test");
+    result.setArtifactId(artifactId);
+    result.setVersion("1.0.0");
+    if (parent != null) {
+      final Parent p = new Parent();
+      p.setGroupId(parent.getGroupId());
+      p.setArtifactId(parent.getArtifactId());
+      p.setVersion(parent.getVersion());
+      result.setParent(p);
+    }
+    result.addProperty(artifactId + ".property", artifactId);
+
+    final Dependency dependency = new Dependency();
+    dependency.setGroupId("com.test");
+    dependency.setArtifactId("dependency-of-" + artifactId);
+    dependency.setVersion("1.0");
+    result.addDependency(dependency);
+    return result;
+  }
+
+  private static MavenProject makeProject(final String parentProperty) {
+    final Model parentModel = makeModel("parent", null);
+    // duplicated sibling is removed only from the saved uber-pom
+    parentModel.addDependency(parentModel.getDependencies().get(0).clone());
+    if (parentProperty != null) {
+      parentModel.addProperty("changed", parentProperty);
+    }
+    final MavenProject parent = new MavenProject(parentModel);
+    parent.setOriginalModel(parentModel);
+
+    final Model model = makeModel("child", parentModel);
+    final MavenProject result = new MavenProject(model);
+    result.setOriginalModel(model);
+    result.setParent(parent);
+    return result;
+  }
+
+  private UPomMojo makeMojo(final MavenProject project, final RecordingLog log) throws Exception {
+    final UPomMojo result = new UPomMojo();
+    result.setLog(log);
+    result.project = project;
+    result.folder = new File(this.tempFolder.getRoot(), "uber");
+    result.name = "uber-pom.xml";
+    result.deleteOnExit = false;
+    result.incremental = true;
+    result.depth = -1;
+    result.removeSiblingDuplications = true;
+    result.remove = new String[]{"parent"};
+    return result;
+  }
+
+  private static boolean contains(final RecordingLog log, final int level, final String text) {
+    for (int i = 0; i < log.size(); i++) {
+      if (log.level(i) == level && log.message(i).contains(text)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String execute(final UPomMojo mojo) throws Exception {
+    mojo.execute();
+    return UPomModel.wrap(mojo.project.getOriginalModel()).asXML(null, false);
+  }
+
+  @Test
+  public void testNotChangedUberPomIsReused() throws Exception {
+    final RecordingLog firstLog = new RecordingLog(false);
+    final String first = execute(makeMojo(makeProject(null), firstLog));
+    assertFalse(contains(firstLog, RecordingLog.INFO, "is up to date"));
+    assertEquals(2, first.split("<dependency>").length - 1);
+
+    final RecordingLog secondLog = new RecordingLog(false);
+    final String second = execute(makeMojo(makeProject(null), secondLog));
+    assertTrue(contains(secondLog, RecordingLog.INFO, "is up to date"));
+    assertFalse(contains(secondLog, RecordingLog.WARN, "deleteOnExit"));
+    assertEquals(first, second);
+  }
+
+  @Test
+  public void testChangedParentOrConfigurationMakesNewUberPom() throws Exception {
+    execute(makeMojo(makeProject(null), new RecordingLog(false)));
+
+    final RecordingLog changedParentLog = new RecordingLog(false);
+    assertTrue(execute(makeMojo(makeProject("value"), changedParentLog)).contains("<changed>value</changed>"));
+    assertFalse(contains(changedParentLog, RecordingLog.INFO, "is up to date"));
+
+    final RecordingLog changedConfigLog = new RecordingLog(false);
+    final UPomMojo mojo = makeMojo(makeProject("value"), changedConfigLog);
+    mojo.remove = new String[]{"parent", "properties/changed"};
+    assertFalse(execute(mojo).contains("<changed>"));
+    assertFalse(contains(changedConfigLog, RecordingLog.INFO, "is up to date"));
+  }
+
+  @Test
+  public void testWarningForRemovedUberPom() throws Exception {
+    final RecordingLog log = new RecordingLog(false);
+    final UPomMojo mojo = makeMojo(makeProject(null), log);
+    mojo.deleteOnExit = true;
+    mojo.execute();
+    assertTrue(contains(log, RecordingLog.WARN, "deleteOnExit"));
+  }
+}
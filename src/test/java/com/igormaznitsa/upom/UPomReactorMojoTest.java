@@ -0,0 +1,181 @@
+package com.igormaznitsa.upom;
+
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.File;
+import java.util.*;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.apache.maven.project.MavenProject;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UPomReactorMojoTest {
+
+  private static final int MODULES = 24;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static Model makeModel(final String artifactId, final Model parent) {
+    final Model result = new Model();
+    result.setModelVersion("4.0.0");
+    result.setGroupId("com.test");
+    result.setArtifactId(artifactId);
+    result.setVersion("1.0.0");
+    result.setPackaging(parent == null ? "pom" : "jar");
+    if (parent != null) {
+      final Parent p = new Parent();
+      p.setGroupId(parent.getGroupId());
+      p.setArtifactId(parent.getArtifactId());
+      p.setVersion(parent.getVersion());
+      result.setParent(p);
+    }
+    result.addProperty(artifactId + ".property", artifactId);
+
+    final Dependency dependency = new Dependency();
+    dependency.setGroupId("com.test");
+    dependency.setArtifactId("dependency-of-" + artifactId);
+    dependency.setVersion("1.0");
+    dependency.setScope("test");
+    result.addDependency(dependency);
+    return result;
+  }
+
+  private static MavenProject makeProject(final File root, final String artifactId, final MavenProject parent) {
+    final Model model = makeModel(artifactId, parent == null ? null : parent.getOriginalModel());
+    final MavenProject result = new MavenProject(model);
+    result.setOriginalModel(model);
+    result.setParent(parent);
+    result.setFile(new File(new File(root, artifactId), "pom.xml"));
+    return result;
+  }
+
+  private static List<MavenProject> makeReactor(final File root) {
+    final List<MavenProject> result = new ArrayList<MavenProject>();
+    final MavenProject corporate = makeProject(root, "corporate", null);
+    result.add(corporate);
+    final MavenProject[] platforms = new MavenProject[3];
+    for (int i = 0; i < platforms.length; i++) {
+      platforms[i] = makeProject(root, "platform" + i, corporate);
+      result.add(platforms[i]);
+    }
+    for (int i = 0; i < MODULES; i++) {
+      result.add(makeProject(root, "module" + i, platforms[i % platforms.length]));
+    }
+    return result;
+  }
+
+  private static void configure(final UPomMojo mojo, final MavenProject project, final MavenSession session) {
+    mojo.setLog(new SilentLog());
+    mojo.project = project;
+    mojo.session = session;
+    mojo.folder = project.getBasedir();
+    mojo.name = "uber-pom.xml";
+    mojo.deleteOnExit = false;
+    mojo.depth = -1;
+    mojo.cacheMergedParents = true;
+    mojo.remove = new String[]{"parent"};
+    final DependencyPattern pattern = new DependencyPattern();
+    pattern.setScope("test");
+    pattern.setArtifactId("dependency-of-corporate");
+    mojo.removeDependencies = Collections.singletonList(pattern);
+  }
+
+  @SuppressWarnings("deprecation")
+  private static MavenSession makeSession(final List<MavenProject> projects) {
+    return new MavenSession(null, new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult(), projects);
+  }
+
+  private File makeByReactorAndCompareWithModuleMojo(final int depth) throws Exception {
+    final File sequentialRoot = this.tempFolder.newFolder("sequential" + depth);
+    for (final MavenProject p : makeReactor(sequentialRoot)) {
+      final UPomMojo mojo = new UPomMojo();
+      configure(mojo, p, null);
+      mojo.depth = depth;
+      mojo.execute();
+    }
+
+    final File reactorRoot = this.tempFolder.newFolder("reactor" + depth);
+    final List<MavenProject> reactor = makeReactor(reactorRoot);
+    final UPomReactorMojo mojo = new UPomReactorMojo();
+    configure(mojo, reactor.get(0), makeSession(reactor));
+    mojo.depth = depth;
+    mojo.threads = 4;
+    mojo.execute();
+
+    for (final MavenProject p : reactor) {
+      final File uberPom = new File(new File(reactorRoot, p.getArtifactId()), "uber-pom.xml");
+      assertEquals(uberPom, p.getFile());
+      assertEquals(FileUtils.readFileToString(new File(new File(sequentialRoot, p.getArtifactId()), "uber-pom.xml"), "UTF-8"),
+              FileUtils.readFileToString(uberPom, "UTF-8"));
+    }
+    return reactorRoot;
+  }
+
+  @Test
+  public void testReactorGivesSameResultAsModuleMojo() throws Exception {
+    final File reactorRoot = makeByReactorAndCompareWithModuleMojo(-1);
+
+    final String module = FileUtils.readFileToString(new File(reactorRoot, "module5/uber-pom.xml"), "UTF-8");
+    assertTrue(module.contains("<corporate.property>"));
+    assertTrue(module.contains("<platform2.property>"));
+    assertFalse(module.contains("<parent>"));
+    assertFalse(module.contains("dependency-of-corporate"));
+    assertTrue(module.contains("dependency-of-module5"));
+  }
+
+  @Test
+  public void testChildrenMergeUberPomsOfParents() throws Exception {
+    // only the parent is merged, but it is the uber-pom of the parent
+    final File reactorRoot = makeByReactorAndCompareWithModuleMojo(1);
+
+    final String module = FileUtils.readFileToString(new File(reactorRoot, "module5/uber-pom.xml"), "UTF-8");
+    assertTrue(module.contains("<corporate.property>"));
+    assertTrue(module.contains("<platform2.property>"));
+    assertFalse(module.contains("dependency-of-corporate"));
+  }
+
+  @Test
+  public void testChildrenOfFailedProjectAreSkipped() throws Exception {
+    final File root = this.tempFolder.newFolder("reactor");
+    final List<MavenProject> reactor = makeReactor(root);
+    reactor.get(1).setFile(null);
+
+    final UPomReactorMojo mojo = new UPomReactorMojo();
+    configure(mojo, reactor.get(0), makeSession(reactor));
+    try {
+      mojo.execute();
+      fail("Must throw MojoExecutionException");
+    } catch (MojoExecutionException ex) {
+      assertTrue(ex.getCause() instanceof UPomException);
+    }
+
+    assertTrue(new File(root, "corporate/uber-pom.xml").isFile());
+    assertTrue(new File(root, "module1/uber-pom.xml").isFile());
+    assertFalse(new File(root, "module0/uber-pom.xml").exists());
+    assertFalse(new File(root, "module3/uber-pom.xml").exists());
+  }
+}
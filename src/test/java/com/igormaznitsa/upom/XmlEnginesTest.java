@@ -0,0 +1,55 @@
+package com.igormaznitsa.upom;
+
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import org.apache.maven.plugin.logging.Log;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class XmlEnginesTest {
+
+  private static final class NamedEngine implements XmlEngine {
+
+    private final String name;
+
+    NamedEngine(final String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String getName() {
+      return this.name;
+    }
+
+    @Override
+    public void removeDuplicatedSiblings(final Log log, final Reader in, final Writer out, final ExecutorService executor) throws Exception {
+    }
+  }
+
+  @Test
+  public void testEnginesAreKeptUnderNormalizedNames() throws Exception {
+    final XmlEngine woodstox = new NamedEngine(" Woodstox ");
+    final Map<String, XmlEngine> engines = XmlEngines.load(Arrays.<XmlEngine>asList(woodstox, new NamedEngine("WOODSTOX")));
+
+    assertEquals(Arrays.asList("woodstox", StaxXmlEngine.NAME), Arrays.asList(engines.keySet().toArray()));
+    assertSame(woodstox, engines.get("woodstox"));
+  }
+}
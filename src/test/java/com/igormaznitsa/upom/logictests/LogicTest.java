@@ -1,11 +1,33 @@
 package com.igormaznitsa.upom.logictests;
 
 import com.igormaznitsa.upom.DependencyPattern;
+import com.igormaznitsa.upom.DependencyPatternMatcher;
+import com.igormaznitsa.upom.DependencyRemovalReport;
+import com.igormaznitsa.upom.DomXmlEngine;
+import com.igormaznitsa.upom.MergeEngine;
+import com.igormaznitsa.upom.PathEdit;
+import com.igormaznitsa.upom.StaxXmlEngine;
 import com.igormaznitsa.upom.UPomException;
 import com.igormaznitsa.upom.UPomModel;
+import com.igormaznitsa.upom.XmlEngines;
 import java.io.File;
+import java.io.FilenameFilter;
+import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Build;
 import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -85,6 +107,381 @@ public class LogicTest extends AbstractLogicTest {
 
   }
   
+  @Test
+  public void testThreeLevel_RemoveDependenciesForGroupIdGlobs() throws Exception {
+    final File base = getFolder("threeLevels");
+
+    final UPomModel result = new UPomModel(new File(base, "pom1.xml")).merge(new UPomModel(new File(base, "pom2.xml"))).merge(new UPomModel(new File(base, "pom3.xml")));
+
+    final DependencyPattern notMatching = new DependencyPattern();
+    notMatching.setGroupId("org.*");
+    final DependencyPattern systemGroup = new DependencyPattern();
+    systemGroup.setGroupId("com.te?t.sys*");
+    final DependencyPattern empty = new DependencyPattern();
+
+    final List<Dependency> removed = result.removeDependencies(Arrays.asList(notMatching, empty, systemGroup));
+    assertEquals(3, removed.size());
+    for (final Dependency d : removed) {
+      assertEquals("com.test.system", d.getGroupId());
+    }
+
+    final DependencyPattern exactGroup = new DependencyPattern();
+    exactGroup.setGroupId("com.test");
+    assertEquals(4, result.removeDependencies(Collections.singletonList(exactGroup)).size());
+    assertTrue(result.getModel().getDependencies().isEmpty());
+  }
+
+  @Test
+  public void testThreeLevel_CopyOnWriteGivesSameResultAndKeepsSources() throws Exception {
+    final File base = getFolder("threeLevels");
+
+    final Model pom1 = new UPomModel(new File(base, "pom1.xml")).getModel();
+    final Model pom2 = new UPomModel(new File(base, "pom2.xml")).getModel();
+    final Model pom3 = new UPomModel(new File(base, "pom3.xml")).getModel();
+
+    final String[] originals = new String[]{new UPomModel(pom1).asXML(null, false), new UPomModel(pom2).asXML(null, false), new UPomModel(pom3).asXML(null, false)};
+
+    final UPomModel cloned = new UPomModel(pom1).merge(new UPomModel(pom2));
+    final UPomModel wrapped = UPomModel.wrap(pom1).merge(UPomModel.wrap(pom2));
+
+    final UPomModel last = UPomModel.wrap(pom3);
+    last.saveState("developers/developer/email");
+    wrapped.merge(last);
+    wrapped.restoreStateFrom(last);
+    cloned.merge(new UPomModel(pom3));
+    cloned.restoreStateFrom(last);
+
+    for (final UPomModel m : new UPomModel[]{cloned, wrapped}) {
+      m.remove("parent");
+      m.remove("developers/developer/name");
+      m.set("properties/generated", "true");
+    }
+
+    assertEquals(cloned.asXML(null, true), wrapped.asXML(null, true));
+    assertEquals(originals[0], new UPomModel(pom1).asXML(null, false));
+    assertEquals(originals[1], new UPomModel(pom2).asXML(null, false));
+    assertEquals(originals[2], new UPomModel(pom3).asXML(null, false));
+
+    wrapped.getModel().getDevelopers().clear();
+    assertEquals(originals[2], new UPomModel(pom3).asXML(null, false));
+  }
+
+  @Test
+  public void testInjectIntoProject() throws Exception {
+    final File base = getFolder("threeLevels");
+    final UPomModel model = new UPomModel(new File(base, "pom1.xml")).merge(new UPomModel(new File(base, "pom2.xml")));
+
+    final MavenProject project = new MavenProject(new Model());
+    model.injectIntoProject(new SilentLog(), project);
+    assertEquals(model.getModel().getGroupId(), project.getGroupId());
+    assertEquals(model.getModel().getDependencies(), project.getDependencies());
+
+    final List<Dependency> injectedDependencies = project.getDependencies();
+    model.set("description", "changed");
+    model.injectIntoProject(new SilentLog(), project, true);
+    assertEquals("changed", project.getDescription());
+    assertSame(injectedDependencies, project.getDependencies());
+  }
+
+  @Test
+  public void testThreeLevel_BatchEditsSameAsSequential() throws Exception {
+    final File base = getFolder("threeLevels");
+
+    final UPomModel sequential = new UPomModel(new File(base, "pom1.xml")).merge(new UPomModel(new File(base, "pom2.xml")));
+    final UPomModel batched = new UPomModel(sequential.getModel());
+
+    final String[] removes = new String[]{"developers/developer/email", "build/finalName", "developers", "properties/property.number1", "parent/version"};
+    final boolean[] found = new boolean[removes.length];
+    for (int i = 0; i < removes.length; i++) {
+      found[i] = sequential.remove(removes[i]);
+    }
+    sequential.set("properties/property.number2", "changed");
+    sequential.set("description", "batched");
+
+    final List<PathEdit> edits = new ArrayList<PathEdit>();
+    for (final String r : removes) {
+      edits.add(PathEdit.remove(r));
+    }
+    edits.add(PathEdit.set("properties/property.number2", "changed"));
+    edits.add(PathEdit.set("description", "batched"));
+    edits.add(PathEdit.get("properties/property.number2"));
+    edits.add(PathEdit.set("unknown/field", "value"));
+    batched.apply(edits);
+
+    for (int i = 0; i < removes.length; i++) {
+      assertNull(edits.get(i).getError());
+      assertEquals(removes[i], found[i], edits.get(i).isFound());
+    }
+    assertTrue(found[0]);
+    assertFalse(found[1]);
+    assertEquals("changed", edits.get(removes.length + 2).getValue());
+    assertTrue(edits.get(removes.length + 3).getError() instanceof UPomException);
+
+    assertEquals(sequential.asXML(null, false), batched.asXML(null, false));
+  }
+
+  @Test
+  public void testThreeLevel_KeyedMergerGivesSameResult() throws Exception {
+    final File base = getFolder("threeLevels");
+
+    final UPomModel generic = new UPomModel(new File(base, "pom1.xml"))
+            .merge(new UPomModel(new File(base, "pom2.xml")))
+            .merge(new UPomModel(new File(base, "pom3.xml")));
+    final UPomModel keyed = new UPomModel(new File(base, "pom1.xml"))
+            .merge(new UPomModel(new File(base, "pom2.xml")), MergeEngine.KEYED)
+            .merge(new UPomModel(new File(base, "pom3.xml")), MergeEngine.KEYED);
+
+    assertEquals(7, keyed.getModel().getDependencies().size());
+    assertEquals(generic.asXML(null, false), keyed.asXML(null, false));
+  }
+
+  @Test
+  public void testMergeAll_ThreeLevelsGivesSameResultAsChain() throws Exception {
+    final File base = getFolder("threeLevels");
+    final UPomModel pom1 = new UPomModel(new File(base, "pom1.xml"));
+    final UPomModel pom2 = new UPomModel(new File(base, "pom2.xml"));
+    final UPomModel pom3 = new UPomModel(new File(base, "pom3.xml"));
+    final String pom1Xml = pom1.asXML(null, false);
+
+    final String chain = new UPomModel(new File(base, "pom1.xml")).merge(pom2).merge(pom3).asXML(null, false);
+
+    assertEquals(chain, UPomModel.mergeAll(Arrays.asList(pom1, pom2, pom3)).asXML(null, false));
+    assertEquals(pom1Xml, pom1.asXML(null, false));
+  }
+
+  @Test
+  public void testMergeAll_ManyModelsGivesSameResultAsChain() throws Exception {
+    final List<UPomModel> models = new ArrayList<UPomModel>();
+    for (int i = 0; i < 21; i++) {
+      final Model model = new Model();
+      model.setGroupId("com.test");
+      model.setArtifactId("module" + i);
+      model.setVersion("1." + i);
+      model.addProperty("common", "value" + i);
+      model.addProperty("own" + i, Integer.toString(i));
+      model.addDependency(makeDependency("common", "1." + i));
+      model.addDependency(makeDependency("lib" + i, "1.0"));
+      final Build build = new Build();
+      build.addPlugin(makePlugin("1." + i, "exec" + (i % 3)));
+      model.setBuild(build);
+      models.add(UPomModel.wrap(model));
+    }
+
+    for (final MergeEngine engine : MergeEngine.values()) {
+      final UPomModel chain = UPomModel.wrap(models.get(0).getModel());
+      for (int i = 1; i < models.size(); i++) {
+        chain.merge(models.get(i), engine);
+      }
+      assertSameModels(chain, UPomModel.mergeAll(models, engine, null));
+
+      final ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+        assertSameModels(chain, UPomModel.mergeAll(models, engine, executor));
+      } finally {
+        executor.shutdown();
+      }
+    }
+    assertEquals(2, models.get(0).getModel().getDependencies().size());
+  }
+
+  @Test(expected = UPomException.class)
+  public void testMergeAll_ErrorForEmptyList() throws Exception {
+    UPomModel.mergeAll(Collections.<UPomModel>emptyList());
+  }
+
+  private static void assertSameModels(final UPomModel expected, final UPomModel actual) throws Exception {
+    // order of written properties depends on history of their hash table
+    assertEquals(expected.getModel().getProperties(), actual.getModel().getProperties());
+    final Model expectedModel = expected.getModel().clone();
+    final Model actualModel = actual.getModel().clone();
+    expectedModel.getProperties().clear();
+    actualModel.getProperties().clear();
+    assertEquals(UPomModel.wrap(expectedModel).asXML(null, false), UPomModel.wrap(actualModel).asXML(null, false));
+  }
+
+  private static Dependency makeDependency(final String artifactId, final String version) {
+    final Dependency result = new Dependency();
+    result.setGroupId("com.test");
+    result.setArtifactId(artifactId);
+    result.setVersion(version);
+    return result;
+  }
+
+  private static Plugin makePlugin(final String version, final String... executions) {
+    final Plugin result = new Plugin();
+    result.setArtifactId("some-plugin");
+    result.setVersion(version);
+    for (final String e : executions) {
+      final PluginExecution execution = new PluginExecution();
+      execution.setId(e);
+      execution.addGoal("run");
+      result.addExecution(execution);
+    }
+    return result;
+  }
+
+  @Test
+  public void testKeyedMerger_SameKeys() throws Exception {
+    final Model parent = new Model();
+    parent.addDependency(makeDependency("artifact1", "1.0"));
+    parent.addDependency(makeDependency("artifact2", "1.0"));
+    parent.setBuild(new Build());
+    parent.getBuild().addPlugin(makePlugin("1.0", "exec1"));
+
+    final Model child = new Model();
+    child.addDependency(makeDependency("artifact2", "1.0"));
+    child.addDependency(makeDependency("artifact1", "2.0"));
+    child.addDependency(makeDependency("artifact3", "1.0"));
+    child.setBuild(new Build());
+    child.getBuild().addPlugin(makePlugin("2.0", "exec1", "exec2"));
+
+    final Model generic = UPomModel.wrap(parent).merge(UPomModel.wrap(child)).getModel();
+    final Model keyed = UPomModel.wrap(parent).merge(UPomModel.wrap(child), MergeEngine.KEYED).getModel();
+
+    assertEquals(5, generic.getDependencies().size());
+    assertEquals(4, keyed.getDependencies().size());
+    final String[] expected = new String[]{"artifact1:1.0", "artifact2:1.0", "artifact1:2.0", "artifact3:1.0"};
+    for (int i = 0; i < expected.length; i++) {
+      final Dependency d = keyed.getDependencies().get(i);
+      assertEquals(expected[i], d.getArtifactId() + ':' + d.getVersion());
+    }
+
+    assertEquals(1, generic.getBuild().getPlugins().size());
+    assertEquals(1, keyed.getBuild().getPlugins().size());
+    assertEquals("2.0", keyed.getBuild().getPlugins().get(0).getVersion());
+    assertEquals(2, keyed.getBuild().getPlugins().get(0).getExecutions().size());
+
+    assertEquals(2, parent.getDependencies().size());
+    assertEquals("1.0", parent.getBuild().getPlugins().get(0).getVersion());
+  }
+
+  @Test
+  public void testRemoveDependenciesFromAllContainers() throws Exception {
+    final Model pom = new Model();
+    for (int i = 0; i < 3000; i++) {
+      pom.addDependency(makeDependency("artifact" + i, "1.0"));
+    }
+    pom.setDependencyManagement(new DependencyManagement());
+    pom.getDependencyManagement().addDependency(makeDependency("managed", "1.0"));
+    pom.getDependencyManagement().addDependency(makeDependency("artifact5", "1.0"));
+    pom.setBuild(new Build());
+    final Plugin plugin = makePlugin("1.0");
+    plugin.addDependency(makeDependency("artifact7", "1.0"));
+    plugin.addDependency(makeDependency("tool", "1.0"));
+    pom.getBuild().addPlugin(plugin);
+    final Profile profile = new Profile();
+    profile.setId("prof");
+    profile.addDependency(makeDependency("artifact9", "1.0"));
+    pom.addProfile(profile);
+
+    final DependencyPattern pattern = new DependencyPattern();
+    pattern.setArtifactId("artifact?");
+    final DependencyPatternMatcher matcher = new DependencyPatternMatcher(Collections.singletonList(pattern));
+
+    final UPomModel sequential = UPomModel.wrap(pom);
+    final DependencyRemovalReport report = sequential.removeDependencies(matcher, null);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final UPomModel parallel = UPomModel.wrap(pom);
+    final DependencyRemovalReport parallelReport;
+    try {
+      parallelReport = parallel.removeDependencies(matcher, executor);
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(Arrays.asList("dependencies", "dependencyManagement/dependencies",
+            "build/plugins/plugin[org.apache.maven.plugins:some-plugin]/dependencies", "profiles/profile[prof]/dependencies"),
+            new ArrayList<String>(report.getContainers()));
+    assertEquals(10, report.getRemoved("dependencies").size());
+    assertEquals("artifact5", report.getRemoved("dependencyManagement/dependencies").get(0).getArtifactId());
+    assertEquals(13, report.getAllRemoved().size());
+    assertEquals(report.getContainers(), parallelReport.getContainers());
+    assertEquals(report.getAllRemoved(), parallelReport.getAllRemoved());
+
+    assertEquals(2990, sequential.getModel().getDependencies().size());
+    assertEquals(1, sequential.getModel().getDependencyManagement().getDependencies().size());
+    assertEquals("tool", sequential.getModel().getBuild().getPlugins().get(0).getDependencies().get(0).getArtifactId());
+    assertTrue(sequential.getModel().getProfiles().get(0).getDependencies().isEmpty());
+    assertEquals(sequential.asXML(null, false), parallel.asXML(null, false));
+
+    assertEquals(3000, pom.getDependencies().size());
+    assertEquals(2, pom.getDependencyManagement().getDependencies().size());
+    assertEquals(2, plugin.getDependencies().size());
+    assertEquals(1, profile.getDependencies().size());
+  }
+
+  @Test
+  public void testThreeLevel_PathPredicatesAndWildcards() throws Exception {
+    final File base = getFolder("threeLevels");
+
+    final UPomModel result = new UPomModel(new File(base, "pom1.xml"))
+            .merge(new UPomModel(new File(base, "pom2.xml")))
+            .merge(new UPomModel(new File(base, "pom3.xml")));
+
+    assertEquals("2.0.0", result.get("dependencies/dependency[groupId=com.test][artifactId=artifact2]/version"));
+    assertEquals("1.0.1", result.get("dependencies/dependency[systemPath=some/system/path2]/version"));
+
+    final List<PathEdit> edits = Arrays.asList(
+            PathEdit.remove("dependencies/dependency[groupId=com.test.system]"),
+            PathEdit.set("dependencies/dependency[artifactId=artifact?]/scope", "provided"),
+            PathEdit.remove("dependencies/dependency[artifactId=artifact2][version=1.*]"),
+            PathEdit.remove("developers/*[id=developer2]"),
+            PathEdit.remove("modules/module[.=modul1]"),
+            PathEdit.remove("properties/*"),
+            PathEdit.remove("dependencies/dependency[groupId=unknown]"),
+            PathEdit.remove("description[id=some]"),
+            PathEdit.remove("dependencies/dependency[groupId]"),
+            PathEdit.remove("developers/developer[unknownField=some]"));
+    result.apply(edits);
+
+    for (int i = 0; i < 6; i++) {
+      assertNull(edits.get(i).getError());
+      assertTrue(edits.get(i).isFound());
+    }
+    assertNull(edits.get(6).getError());
+    assertFalse(edits.get(6).isFound());
+    for (int i = 7; i < edits.size(); i++) {
+      assertTrue(edits.get(i).getError() instanceof UPomException);
+    }
+
+    final List<Dependency> dependencies = result.getModel().getDependencies();
+    assertEquals(3, dependencies.size());
+    for (final Dependency d : dependencies) {
+      assertEquals("com.test", d.getGroupId());
+      assertEquals("provided", d.getScope());
+      assertFalse("1.0.0".equals(d.getVersion()) && "artifact2".equals(d.getArtifactId()));
+    }
+    assertEquals(2, result.getModel().getDevelopers().size());
+    assertEquals(8, result.getModel().getModules().size());
+    assertFalse(result.getModel().getModules().contains("modul1"));
+    assertTrue(result.getModel().getProperties().isEmpty());
+  }
+
+  @Test
+  public void testRemovePluginConfigurationThroughPredicate() throws Exception {
+    final Model pom = new Model();
+    pom.setBuild(new Build());
+    for (final String name : new String[]{"maven-compiler-plugin", "maven-shade-plugin", "maven-jar-plugin"}) {
+      final Plugin plugin = makePlugin("1.0", "exec");
+      plugin.setArtifactId(name);
+      plugin.setConfiguration(new Xpp3Dom("configuration"));
+      pom.getBuild().addPlugin(plugin);
+    }
+
+    final UPomModel model = UPomModel.wrap(pom);
+    assertTrue(model.remove("build/plugins/plugin[artifactId=maven-shade-*]/configuration"));
+    assertTrue(model.remove("build/plugins/*[artifactId=maven-jar-plugin]/executions/execution[id=exec]"));
+
+    final List<Plugin> plugins = model.getModel().getBuild().getPlugins();
+    assertNotNull(plugins.get(0).getConfiguration());
+    assertNull(plugins.get(1).getConfiguration());
+    assertNotNull(plugins.get(2).getConfiguration());
+    assertEquals(1, plugins.get(1).getExecutions().size());
+    assertTrue(plugins.get(2).getExecutions().isEmpty());
+    assertNotNull(pom.getBuild().getPlugins().get(1).getConfiguration());
+  }
+
   @Test
   public void testThreeLevel_SaveAndRestoreState() throws Exception {
     final File base = getFolder("threeLevels");
@@ -131,6 +528,114 @@ public class LogicTest extends AbstractLogicTest {
     assertTrue(xml.contains("</project>"));
   }
   
+  @Test
+  public void testAsXML_RemoveDuplicatedSiblings() throws Exception {
+    final File base = getFolder("threeLevels");
+
+    final UPomModel model1 = new UPomModel(new File(base, "pom1.xml"));
+    final UPomModel model2 = new UPomModel(new File(base, "pom1.xml"));
+    final UPomModel result = model1.merge(model2);
+    assertEquals(6, result.getModel().getModules().size());
+
+    final String withDuplications = result.asXML(null, false);
+    final String xml = result.asXML(null, true);
+
+    assertEquals(2, countOccurrences(withDuplications, "<module>modul1</module>"));
+    assertEquals(1, countOccurrences(xml, "<module>modul1</module>"));
+    assertEquals(1, countOccurrences(xml, "<id>developer1</id>"));
+    assertEquals(3, countOccurrences(xml, "<dependency>"));
+    assertTrue(xml.contains("xmlns=\"http://maven.apache.org/POM/4.0.0\""));
+    assertTrue(xml.contains("</project>"));
+  }
+
+  @Test
+  public void testAsXML_DomEngineRemovesSameElements() throws Exception {
+    final File base = getFolder("threeLevels");
+    final UPomModel result = new UPomModel(new File(base, "pom1.xml")).merge(new UPomModel(new File(base, "pom1.xml")));
+
+    assertEquals(Arrays.asList(StaxXmlEngine.NAME, DomXmlEngine.NAME), XmlEngines.getNames());
+    assertSame(XmlEngines.getDefault(), XmlEngines.find(null));
+    assertEquals(DomXmlEngine.NAME, XmlEngines.find(" DOM ").getName());
+    try {
+      XmlEngines.find("unknown");
+      fail("Must throw UPomException");
+    } catch (UPomException ex) {
+    }
+
+    final String stax = result.asXML(null, true, XmlEngines.find(StaxXmlEngine.NAME));
+    final String dom = result.asXML(null, true, XmlEngines.find(DomXmlEngine.NAME));
+    assertEquals(1, countOccurrences(dom, "<module>modul1</module>"));
+
+    final UPomModel fromStax = UPomModel.wrap(new MavenXpp3Reader().read(new StringReader(stax)));
+    final UPomModel fromDom = UPomModel.wrap(new MavenXpp3Reader().read(new StringReader(dom)));
+    assertEquals(fromStax.asXML(null, false), fromDom.asXML(null, false));
+  }
+
+  @Test
+  public void testRemoveDuplicatedSiblings_ModelJanitorGivesSameResultAsXmlJanitor() throws Exception {
+    final File base = getFolder("threeLevels");
+    final UPomModel result = new UPomModel(new File(base, "pom1.xml")).merge(new UPomModel(new File(base, "pom1.xml")));
+
+    final Xpp3Dom configuration = new Xpp3Dom("configuration");
+    for (int i = 0; i < 3; i++) {
+      final Xpp3Dom item = new Xpp3Dom("item");
+      item.setValue("value" + (i % 2));
+      configuration.addChild(item);
+    }
+    final Plugin plugin = makePlugin("1.0", "exec", "exec");
+    plugin.setConfiguration(configuration);
+    final Model model = result.getModel();
+    if (model.getBuild() == null) {
+      model.setBuild(new Build());
+    }
+    model.getBuild().addPlugin(plugin);
+    model.getBuild().addPlugin(plugin.clone());
+
+    final String stax = result.asXML(null, true, XmlEngines.find(StaxXmlEngine.NAME));
+    final UPomModel fromStax = UPomModel.wrap(new MavenXpp3Reader().read(new StringReader(stax)));
+
+    assertTrue(result.removeDuplicatedSiblings(null) > 0);
+    assertEquals(1, countOccurrences(result.asXML(null, false), "<module>modul1</module>"));
+    final UPomModel fromModel = UPomModel.wrap(new MavenXpp3Reader().read(new StringReader(result.asXML(null, false))));
+    // the streaming janitor writes own XML declaration
+    fromModel.getModel().setModelEncoding(fromStax.getModel().getModelEncoding());
+    assertEquals(fromStax.asXML(null, false), fromModel.asXML(null, false));
+    assertEquals(0, result.removeDuplicatedSiblings(null));
+  }
+
+  private static int countOccurrences(final String text, final String str) {
+    int result = 0;
+    int index = text.indexOf(str);
+    while (index >= 0) {
+      result++;
+      index = text.indexOf(str, index + str.length());
+    }
+    return result;
+  }
+
+  @Test
+  public void testWrite_SameAsAsXML() throws Exception {
+    final File base = getFolder("threeLevels");
+    final UPomModel model = new UPomModel(new File(base, "pom1.xml")).merge(new UPomModel(new File(base, "pom1.xml")));
+
+    final File file = File.createTempFile("upom", ".xml");
+    file.deleteOnExit();
+    try {
+      model.write(file, null, false);
+      assertEquals(model.asXML(null, false), FileUtils.readFileToString(file, "UTF-8"));
+      model.write(file, null, true);
+      assertEquals(model.asXML(null, true), FileUtils.readFileToString(file, "UTF-8"));
+      assertEquals(1, file.getParentFile().listFiles(new FilenameFilter() {
+        @Override
+        public boolean accept(final File dir, final String name) {
+          return name.startsWith(file.getName());
+        }
+      }).length);
+    } finally {
+      file.delete();
+    }
+  }
+
   @Test
   public void testThreeLevel_RemoveEmailOfDevelopers() throws Exception {
     final File base = getFolder("threeLevels");